@@ -506,7 +506,12 @@ public class ConfigurationWindow extends javax.swing.JDialog {
                         options[0]); //default button title
 
                 if (n == 0){
-                    ppt.SetMultipleSettings(changes);
+                    if (!ppt.SetMultipleSettings(changes)) {
+                        JOptionPane.showMessageDialog(this, "Some settings could not be written to the PINPoint.\nPlease check its settings and try again.", "Write Error", JOptionPane.ERROR_MESSAGE);
+                        ppt.disconnect();
+                        this.dispose();
+                        return;
+                    }
                     //ppt.clearDataFromPinpoint();
                     ppt.resetPinpoint();
                     ppt.disconnect();
@@ -29,17 +29,13 @@
 package goldeneye_v1;
 
 
+import com.pinpoint.api.CsvWriter;
 import com.pinpoint.api.PinpointConverter;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Date;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
@@ -57,20 +53,15 @@ public class FileSaver {
     }
 
     public boolean saveFile(ArrayList<String[]> data) {
-        
-        Calendar cal = Calendar.getInstance();
-        
-        String fheaders = "";
-        String[] headers = PinpointConverter.fileHeaders;
-        for(int i = 0; i < headers.length; i++){
-            if(i < headers.length - 1){
-                fheaders += headers[i] + ",";
-            } else {
-                fheaders += headers[i] + "\n";
-            }        
-        }
+        return saveFile(data, PinpointConverter.getDefaultFileHeaders());
+    }
 
-        String notes = "#DOU:" + cal.getTime() + "\n";
+    /**
+     * Saves data under the given column names, normally those of the
+     * converter that produced it.
+     */
+    public boolean saveFile(ArrayList<String[]> data, String[] headers) {
+        
         int yesOrNo = 1;
         File selectedFile = new File("tmp.txt");
         try {
@@ -88,36 +79,14 @@ public class FileSaver {
                             "File Exists",
                             JOptionPane.YES_NO_OPTION);
                     if (yesOrNo == 1) {
-                        saveFile(data);
+                        saveFile(data, headers);
                     } else {
-                        BufferedWriter out = new BufferedWriter(new FileWriter(selectedFile, false));
-
-                        //Write the notes and headers to the file first.
-                        out.write(notes);
-                        out.write(fheaders);
-
-                        //Write the data to the file.
-                        for (int i = 0; i < data.size(); i++) {
-                            out.write(fmtData(data.get(i)));
-                        }
-
-                        //Cleanup
-                        out.close();
+                        writeFile(selectedFile, data, headers);
                         return true;
                     }
 
                 } else {
-                    BufferedWriter out = new BufferedWriter(new FileWriter(selectedFile, false));
-                    //Write the notes and headers to the file first.
-                    out.write(notes);
-                    out.write(fheaders);
-
-                    //Write the data to the file.
-                    for (int i = 0; i < data.size(); i++) {
-                        out.write(fmtData(data.get(i)));
-                    }
-                    //Clean up
-                    out.close();
+                    writeFile(selectedFile, data, headers);
                     return true;
                 }
             } else if (ret == JFileChooser.CANCEL_OPTION) {
@@ -129,34 +98,25 @@ public class FileSaver {
         return true;
     }
 
-    private String fmtData(String temp[]) {
-        String dataString = "";
-
-        long unixts = 0;
-        DateFormat format = new SimpleDateFormat("MM/dd/yyyy HH:mm:ss:SSS");
-        Date parsed;
+    /**
+     * Writes the notes, the headers and then the data, streaming each row
+     * straight into the file.
+     */
+    private void writeFile(File file, ArrayList<String[]> data, String[] headers) throws IOException {
+        CsvWriter out = new CsvWriter(new FileWriter(file, false));
 
         try {
-            parsed = format.parse(temp[0]);
-            unixts = parsed.getTime();
-
-            dataString += unixts + ",";
+            out.writeComment("DOU:" + Calendar.getInstance().getTime());
+            out.writeHeader(headers);
 
-            for (int i = 1; i < temp.length; i++) {
-                if (i == temp.length - 1) {
-                    dataString += temp[i] + "\n";
-                } else {
-                    dataString += temp[i] + ",";
+            for (int i = 0; i < data.size(); i++) {
+                if (!out.writeRow(data.get(i))) {
+                    System.err.println("Error while parsing date.");
                 }
-
             }
-
-            return dataString;
-        } catch (ParseException e) {
-            System.err.println("Error while parsing date.");
+        } finally {
+            out.close();
         }
-
-        return "";
     }
 
     /**
@@ -27,17 +27,24 @@
  */
 package goldeneye_v1;
 
+import com.pinpoint.api.ConnectionManager;
+import com.pinpoint.api.FleetUpdater;
+import com.pinpoint.api.HexImage;
 import com.pinpoint.api.PinComm;
 import com.pinpoint.api.PinpointConverter;
+import com.pinpoint.api.RecordSink;
+import com.pinpoint.api.SessionFile;
 import com.pinpoint.api.bootloaderInterface;
 import com.pinpoint.api.pinpointInterface;
 import com.pinpoint.exceptions.IncompatibleConversionException;
+import com.pinpoint.exceptions.IncorrectDeviceException;
 import com.pinpoint.exceptions.InvalidHexException;
 import com.pinpoint.exceptions.MissingLogFileException;
 import com.pinpoint.exceptions.NoConnectionException;
 import com.pinpoint.exceptions.NoDataException;
 import java.awt.Cursor;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
@@ -45,12 +52,14 @@ import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.prefs.BackingStoreException;
 import javax.swing.JFileChooser;
 import org.jdesktop.application.SingleFrameApplication;
 import org.jdesktop.application.FrameView;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 import javax.swing.table.DefaultTableModel;
 
 /**
@@ -59,21 +68,25 @@ import javax.swing.table.DefaultTableModel;
 public class GoldenEye_v1View extends FrameView {
 
     private DefaultTableModel tmodel;
-    private String[] headers;
+    private String[] headers = PinpointConverter.getDefaultTableHeaders();
+    private String[] fileHeaders = PinpointConverter.getDefaultFileHeaders();
     private AboutBox aboutBox;
     private ConfigurationWindow configure;
     private pinpointInterface pinpoint = null;
     ArrayList<String[]> data;
+    // Raw records of what is in the table, for Save Session.
+    private SessionFile session = null;
 
     public GoldenEye_v1View(SingleFrameApplication app) {
         super(app);
 
         initComponents();
 
-        tmodel.setColumnIdentifiers(PinpointConverter.tableHeaders);
+        tmodel.setColumnIdentifiers(PinpointConverter.getDefaultTableHeaders());
         checkMultipleSessions.setEnabled(false);
         saveDataButton.setEnabled(false);
         saveMenuItem.setEnabled(false);
+        saveSessionMenuItem.setEnabled(false);
         this.getFrame().setTitle("PINCushion - Goldeneye (5.1)");
     }
 
@@ -107,7 +120,9 @@ public class GoldenEye_v1View extends FrameView {
         dataTable = new javax.swing.JTable();
         menuBar = new javax.swing.JMenuBar();
         javax.swing.JMenu fileMenu = new javax.swing.JMenu();
+        openSessionMenuItem = new javax.swing.JMenuItem();
         saveMenuItem = new javax.swing.JMenuItem();
+        saveSessionMenuItem = new javax.swing.JMenuItem();
         javax.swing.JMenuItem exitMenuItem = new javax.swing.JMenuItem();
         toolsMenu = new javax.swing.JMenu();
         updateConversionsMenuItem = new javax.swing.JMenuItem();
@@ -122,6 +137,7 @@ public class GoldenEye_v1View extends FrameView {
         jSeparator3 = new javax.swing.JPopupMenu.Separator();
         jSeparator7 = new javax.swing.JPopupMenu.Separator();
         updateBootloaderMenuItem = new javax.swing.JMenuItem();
+        updateAllMenuItem = new javax.swing.JMenuItem();
         configureMenuItem = new javax.swing.JMenuItem();
         javax.swing.JMenu helpMenu = new javax.swing.JMenu();
         aboutMenuItem = new javax.swing.JMenuItem();
@@ -233,6 +249,16 @@ public class GoldenEye_v1View extends FrameView {
         fileMenu.setText(resourceMap.getString("fileMenu.text")); // NOI18N
         fileMenu.setName("fileMenu"); // NOI18N
 
+        openSessionMenuItem.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_O, java.awt.event.InputEvent.CTRL_MASK));
+        openSessionMenuItem.setText(resourceMap.getString("openSessionMenuItem.text")); // NOI18N
+        openSessionMenuItem.setName("openSessionMenuItem"); // NOI18N
+        openSessionMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                openSessionMenuItemActionPerformed(evt);
+            }
+        });
+        fileMenu.add(openSessionMenuItem);
+
         saveMenuItem.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_S, java.awt.event.InputEvent.CTRL_MASK));
         saveMenuItem.setText(resourceMap.getString("saveMenuItem.text")); // NOI18N
         saveMenuItem.setName("saveMenuItem"); // NOI18N
@@ -243,6 +269,15 @@ public class GoldenEye_v1View extends FrameView {
         });
         fileMenu.add(saveMenuItem);
 
+        saveSessionMenuItem.setText(resourceMap.getString("saveSessionMenuItem.text")); // NOI18N
+        saveSessionMenuItem.setName("saveSessionMenuItem"); // NOI18N
+        saveSessionMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                saveSessionMenuItemActionPerformed(evt);
+            }
+        });
+        fileMenu.add(saveSessionMenuItem);
+
         javax.swing.ActionMap actionMap = org.jdesktop.application.Application.getInstance(goldeneye_v1.GoldenEye_v1App.class).getContext().getActionMap(GoldenEye_v1View.class, this);
         exitMenuItem.setAction(actionMap.get("quit")); // NOI18N
         exitMenuItem.setName("exitMenuItem"); // NOI18N
@@ -313,6 +348,15 @@ public class GoldenEye_v1View extends FrameView {
         });
         toolsMenu.add(updateBootloaderMenuItem);
 
+        updateAllMenuItem.setText(resourceMap.getString("updateAllMenuItem.text")); // NOI18N
+        updateAllMenuItem.setName("updateAllMenuItem"); // NOI18N
+        updateAllMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                updateAllMenuItemActionPerformed(evt);
+            }
+        });
+        toolsMenu.add(updateAllMenuItem);
+
         configureMenuItem.setText(resourceMap.getString("configureMenuItem.text")); // NOI18N
         configureMenuItem.setName("configureMenuItem"); // NOI18N
         configureMenuItem.addActionListener(new java.awt.event.ActionListener() {
@@ -352,11 +396,13 @@ public class GoldenEye_v1View extends FrameView {
 
         if (pptIsAvailable()) {
             JFrame mainFrame = GoldenEye_v1App.getApplication().getMainFrame();
+            boolean opened = false;
             try {
                 configure = new ConfigurationWindow(mainFrame, pinpoint);
                 configure.setLocationRelativeTo(mainFrame);
 
                 GoldenEye_v1App.getApplication().show(configure);
+                opened = true;
             } catch (BackingStoreException ex) {
                 JOptionPane.showMessageDialog(this.getFrame(), "Could not open Java Preferences.", "Conversions error", JOptionPane.ERROR_MESSAGE);
             } catch (IOException ex) {
@@ -364,47 +410,29 @@ public class GoldenEye_v1View extends FrameView {
             } catch (MissingLogFileException ex) {
                 JOptionPane.showMessageDialog(this.getFrame(), "Conversions file could not be found.\nTry \"Tools/Update Conversions\"", "Conversions error", JOptionPane.ERROR_MESSAGE);
             }
-            tmodel.setColumnIdentifiers(PinpointConverter.tableHeaders);
+            //The window gives the PINPoint back when it closes.
+            if (!opened) {
+                pinpoint.disconnect();
+            }
+            tmodel.setColumnIdentifiers(headers);
 
         }
     }//GEN-LAST:event_configureMenuItemActionPerformed
 
     private void uploadDataButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_uploadDataButtonActionPerformed
 
-        try {
-            if (pptIsAvailable()) {
-
-                //Set the cursor to busy, upload/convert data, then set to default.
-                GoldenEye_v1App.getApplication().getMainFrame().setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-                data = pinpoint.getData();
-                GoldenEye_v1App.getApplication().getMainFrame().setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
-
-                tmodel.setRowCount(0);
-                tmodel.setColumnIdentifiers(PinpointConverter.tableHeaders);
-                if (data != null) {
-                    for (int i = 0; i < data.size(); i++) {
-                        tmodel.addRow(data.get(i));
-                    }
+        if (pptIsAvailable()) {
 
-                    checkMultipleSessions.setEnabled(true);
-                    saveDataButton.setEnabled(true);
-                    saveMenuItem.setEnabled(true);
-                }
+            //Rows are added to the table by the uploader as they arrive.
+            tmodel.setRowCount(0);
+            uploadDataButton.setEnabled(false);
+            openSessionMenuItem.setEnabled(false);
+            saveSessionMenuItem.setEnabled(false);
+            updateAllMenuItem.setEnabled(false);
 
-                pinpoint.disconnect();
-            }
-      
-        } catch (BackingStoreException ex) {
-            GoldenEye_v1App.getApplication().getMainFrame().setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
-            JOptionPane.showMessageDialog(this.getFrame(), "Could not open Java Preferences.", "Conversions error", JOptionPane.ERROR_MESSAGE);
-        } catch (NoDataException ex) {
-            GoldenEye_v1App.getApplication().getMainFrame().setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
-            JOptionPane.showMessageDialog(this.getFrame(), "No data was found on the connected PINpoint.");            
-        } catch (IncompatibleConversionException ex) {
-            GoldenEye_v1App.getApplication().getMainFrame().setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
-            JOptionPane.showMessageDialog(this.getFrame(), "Conversions file mismatch, please go to \"Tools -> Update Conversions\"");          
+            DataUploader uploader = new DataUploader(this.getFrame(), pinpoint, null);
+            uploader.start();
         }
-        pinpoint.disconnect();
     }//GEN-LAST:event_uploadDataButtonActionPerformed
 
     private void clearPPTDataButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_clearPPTDataButtonActionPerformed
@@ -412,6 +440,8 @@ public class GoldenEye_v1View extends FrameView {
         tmodel.setRowCount(0);
         checkMultipleSessions.setEnabled(false);
         saveDataButton.setEnabled(false);
+        saveSessionMenuItem.setEnabled(false);
+        session = null;
 
     }//GEN-LAST:event_clearPPTDataButtonActionPerformed
 
@@ -496,7 +526,7 @@ public class GoldenEye_v1View extends FrameView {
             if (x == JOptionPane.YES_OPTION) {
                 FileSaver saver = new FileSaver(this.getFrame());
                 for (ArrayList<String[]> temp : multiSessions) {
-                    saver.saveFile(temp);
+                    saver.saveFile(temp, fileHeaders);
                 }
             }
         } else {
@@ -521,11 +551,62 @@ public class GoldenEye_v1View extends FrameView {
         viewToMemory();
         FileSaver fs = new FileSaver(this.getFrame());
 
-        if (!fs.saveFile(data)) {
+        if (!fs.saveFile(data, fileHeaders)) {
             JOptionPane.showMessageDialog(this.getFrame(), "Could not save the file! Please check permissions.", "Error Saving File", JOptionPane.ERROR_MESSAGE);
         }
     }//GEN-LAST:event_saveMenuItemActionPerformed
 
+    private void openSessionMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_openSessionMenuItemActionPerformed
+        JFileChooser fc = new JFileChooser();
+        fc.setFileFilter(new SessionFilter());
+
+        if (fc.showOpenDialog(this.getFrame()) == JFileChooser.APPROVE_OPTION) {
+            pinpointInterface reader;
+            try {
+                reader = new pinpointInterface(false);
+            } catch (NoConnectionException ex) {
+                return;
+            }
+
+            //Rows are added to the table by the loader as they are converted.
+            tmodel.setRowCount(0);
+            uploadDataButton.setEnabled(false);
+            openSessionMenuItem.setEnabled(false);
+            saveSessionMenuItem.setEnabled(false);
+            updateAllMenuItem.setEnabled(false);
+
+            DataUploader loader = new DataUploader(this.getFrame(), reader, fc.getSelectedFile());
+            loader.start();
+        }
+    }//GEN-LAST:event_openSessionMenuItemActionPerformed
+
+    private void saveSessionMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_saveSessionMenuItemActionPerformed
+        JFileChooser fc = new JFileChooser();
+        fc.setFileFilter(new SessionFilter());
+        fc.setSelectedFile(new File("session." + SessionFile.EXTENSION));
+
+        if (fc.showSaveDialog(this.getFrame()) == JFileChooser.APPROVE_OPTION) {
+            File file = fc.getSelectedFile();
+            if (!file.getName().contains(".")) {
+                file = new File(file.getPath() + "." + SessionFile.EXTENSION);
+            }
+
+            if (file.exists() && JOptionPane.showConfirmDialog(
+                    this.getFrame(),
+                    "The file already exists would you like to replace it?",
+                    "File Exists",
+                    JOptionPane.YES_NO_OPTION) != JOptionPane.YES_OPTION) {
+                return;
+            }
+
+            try {
+                session.save(file);
+            } catch (IOException ex) {
+                JOptionPane.showMessageDialog(this.getFrame(), "Could not save the session! Please check permissions.", "Error Saving File", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }//GEN-LAST:event_saveSessionMenuItemActionPerformed
+
     private void updateBootloaderMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_updateBootloaderMenuItemActionPerformed
         try {
             final JFileChooser jfc = new JFileChooser();
@@ -561,6 +642,26 @@ public class GoldenEye_v1View extends FrameView {
         }
 
     }//GEN-LAST:event_updateBootloaderMenuItemActionPerformed
+
+    private void updateAllMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_updateAllMenuItemActionPerformed
+        JFileChooser jfc = new JFileChooser();
+        if (jfc.showOpenDialog(this.getFrame()) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        String version = JOptionPane.showInputDialog(this.getFrame(),
+                "Firmware version the PINPoints should report once updated, such as 6.5:");
+        if (version == null || version.trim().length() == 0) {
+            return;
+        }
+
+        uploadDataButton.setEnabled(false);
+        openSessionMenuItem.setEnabled(false);
+        updateAllMenuItem.setEnabled(false);
+
+        FleetUpdate update = new FleetUpdate(this.getFrame(), jfc.getSelectedFile().toString(), version.trim());
+        update.start();
+    }//GEN-LAST:event_updateAllMenuItemActionPerformed
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JMenuItem aboutMenuItem;
     private javax.swing.JPanel buttonPanel;
@@ -582,11 +683,14 @@ public class GoldenEye_v1View extends FrameView {
     private javax.swing.JPopupMenu.Separator jSeparator8;
     private javax.swing.JPanel mainPanel;
     private javax.swing.JMenuBar menuBar;
+    private javax.swing.JMenuItem openSessionMenuItem;
     private javax.swing.JButton saveDataButton;
     private javax.swing.JMenuItem saveMenuItem;
+    private javax.swing.JMenuItem saveSessionMenuItem;
     private javax.swing.JButton startRecordingButton;
     private javax.swing.JMenuItem syncTimeMenuItem;
     private javax.swing.JMenu toolsMenu;
+    private javax.swing.JMenuItem updateAllMenuItem;
     private javax.swing.JMenuItem updateBootloaderMenuItem;
     private javax.swing.JMenuItem updateConversionsMenuItem;
     private javax.swing.JButton uploadDataButton;
@@ -594,7 +698,7 @@ public class GoldenEye_v1View extends FrameView {
 
     private boolean pptIsAvailable() {
         try {
-            pinpoint = new pinpointInterface(true);
+            pinpoint = new pinpointInterface(ConnectionManager.getInstance());
         } catch (NoConnectionException ex) {
 
             JOptionPane.showMessageDialog(GoldenEye_v1App.getApplication().getMainFrame(),
@@ -620,7 +724,7 @@ public class GoldenEye_v1View extends FrameView {
         ArrayList<String[]> tempList = new ArrayList<String[]>();
         String[] tempArray;
         for (i = 0; i < tmodel.getRowCount(); i++) {
-            tempArray = new String[PinpointConverter.tableHeaders.length];
+            tempArray = new String[headers.length];
             for (j = 0; j < tmodel.getColumnCount(); j++) {
                 tempArray[j] = (String) tmodel.getValueAt(i, j);
             }
@@ -629,6 +733,142 @@ public class GoldenEye_v1View extends FrameView {
         data = tempList;
     }
 
+    /**
+     * Downloads the data from the connected PINPoint, or opens a saved
+     * session, in the background, adding rows to the table in batches as
+     * they are converted.
+     */
+    private class DataUploader extends Thread implements RecordSink {
+
+        private static final int BATCH_SIZE = 256;
+        JFrame parent;
+        // The interface this uploader reads from, whatever the view opens meanwhile.
+        final pinpointInterface device;
+        File sessionFile;
+        ArrayList<String[]> received = new ArrayList<String[]>();
+        ArrayList<String[]> batch = new ArrayList<String[]>();
+        boolean headersSet = false;
+
+        /**
+         * @param device the connected PINPoint, or an unconnected interface
+         * when opening a session
+         * @param sessionFile a saved session to open instead of downloading,
+         * or null
+         */
+        public DataUploader(JFrame parent, pinpointInterface device, File sessionFile) {
+            this.parent = parent;
+            this.device = device;
+            this.sessionFile = sessionFile;
+        }
+
+        @Override
+        public void run() {
+            GoldenEye_v1App.getApplication().getMainFrame().setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+            boolean valid = false;
+
+            try {
+                if (sessionFile != null) {
+                    device.openSession(sessionFile, this);
+                    valid = true;
+                } else {
+                    valid = device.getDataResumable(this);
+
+                    if (!valid) {
+                        JOptionPane.showMessageDialog(parent, "The data was corrupted during the upload, please try again.", "Upload Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                }
+            } catch (BackingStoreException ex) {
+                JOptionPane.showMessageDialog(parent, "Could not open Java Preferences.", "Conversions error", JOptionPane.ERROR_MESSAGE);
+            } catch (NoDataException ex) {
+                JOptionPane.showMessageDialog(parent, "No data was found on the connected PINpoint.");
+            } catch (IncompatibleConversionException ex) {
+                JOptionPane.showMessageDialog(parent, "Conversions file mismatch, please go to \"Tools -> Update Conversions\"");
+            } catch (IOException ex) {
+                JOptionPane.showMessageDialog(parent, "Could not open " + sessionFile.getName() + ".\n" + ex.getMessage(), "Open Error", JOptionPane.ERROR_MESSAGE);
+            } finally {
+                //Give the PINPoint back however the download ended.
+                if (sessionFile == null) {
+                    device.disconnect();
+                }
+                finished(valid);
+            }
+        }
+
+        /**
+         * Shows the outcome and re-enables the controls.
+         */
+        private void finished(boolean valid) {
+            final boolean success = valid;
+            final SessionFile loaded = device.getLastSession();
+            SwingUtilities.invokeLater(new Runnable() {
+
+                public void run() {
+                    if (success) {
+                        data = received;
+                        session = loaded;
+                        checkMultipleSessions.setEnabled(true);
+                        saveDataButton.setEnabled(true);
+                        saveMenuItem.setEnabled(true);
+                        saveSessionMenuItem.setEnabled(session != null);
+                    } else {
+                        tmodel.setRowCount(0);
+                        session = null;
+                    }
+                    uploadDataButton.setEnabled(true);
+                    openSessionMenuItem.setEnabled(true);
+                    updateAllMenuItem.setEnabled(true);
+                    GoldenEye_v1App.getApplication().getMainFrame().setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
+                }
+            });
+        }
+
+        public void rowConverted(String[] values) {
+            received.add(values);
+            batch.add(values);
+
+            if (batch.size() == BATCH_SIZE) {
+                showRows(batch);
+                batch = new ArrayList<String[]>();
+            }
+        }
+
+        public void conversionFinished(boolean checksumValid) {
+            showRows(batch);
+            batch = new ArrayList<String[]>();
+        }
+
+        private void showRows(final ArrayList<String[]> rows) {
+            SwingUtilities.invokeLater(new Runnable() {
+
+                public void run() {
+                    if (!headersSet) {
+                        headers = device.getTableHeaders();
+                        fileHeaders = device.getFileHeaders();
+                        tmodel.setColumnIdentifiers(headers);
+                        headersSet = true;
+                    }
+                    for (String[] row : rows) {
+                        tmodel.addRow(row);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Shows only saved sessions in a file chooser.
+     */
+    private static class SessionFilter extends javax.swing.filechooser.FileFilter {
+
+        public boolean accept(File f) {
+            return f.isDirectory() || f.getName().toLowerCase().endsWith("." + SessionFile.EXTENSION);
+        }
+
+        public String getDescription() {
+            return "PINPoint sessions (*." + SessionFile.EXTENSION + ")";
+        }
+    }
+
     private class BootloaderUpdater extends Thread {
 
         JFrame parent;
@@ -671,6 +911,73 @@ public class GoldenEye_v1View extends FrameView {
         }
     }
 
+    /**
+     * Switches every PINPoint plugged in over to its bootloader, flashes
+     * them all with one HEX file and shows how each one went.
+     */
+    private class FleetUpdate extends Thread {
+
+        private final JFrame parent;
+        private final String file;
+        private final String version;
+
+        FleetUpdate(JFrame parent, String file, String version) {
+            this.parent = parent;
+            this.file = file;
+            this.version = version;
+        }
+
+        @Override
+        public void run() {
+            String message = null;
+            String title = "Update All PINPoints";
+            int type = JOptionPane.INFORMATION_MESSAGE;
+
+            parent.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+            try {
+                FleetUpdater updater = new FleetUpdater(HexImage.load(file), version);
+
+                //The manager's connection would keep its PINPoint out of the scan.
+                ConnectionManager.getInstance().close();
+                List<FleetUpdater.Result> skipped = FleetUpdater.enterBootloaders();
+
+                List<FleetUpdater.Result> results = updater.updateAll(null);
+                results.addAll(skipped);
+                message = FleetUpdater.report(results);
+            } catch (InvalidHexException ex) {
+                message = ex.GetErrorType();
+                title = "Bootloader Error";
+                type = JOptionPane.ERROR_MESSAGE;
+            } catch (IncorrectDeviceException ex) {
+                message = "Could not connect to the PINPoints";
+                type = JOptionPane.ERROR_MESSAGE;
+            } catch (IOException ex) {
+                message = "Could not read " + file + " or reach the PINPoints";
+                type = JOptionPane.ERROR_MESSAGE;
+            } catch (InterruptedException ex) {
+                message = "The update was interrupted";
+                type = JOptionPane.ERROR_MESSAGE;
+            } finally {
+                finished(message, title, type);
+            }
+        }
+
+        private void finished(final String message, final String title, final int type) {
+            SwingUtilities.invokeLater(new Runnable() {
+
+                public void run() {
+                    parent.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
+                    uploadDataButton.setEnabled(true);
+                    openSessionMenuItem.setEnabled(true);
+                    updateAllMenuItem.setEnabled(true);
+                    if (message != null) {
+                        JOptionPane.showMessageDialog(parent, message, title, type);
+                    }
+                }
+            });
+        }
+    }
+
     public class startProgressBar extends Thread {
 
         private int count, time;
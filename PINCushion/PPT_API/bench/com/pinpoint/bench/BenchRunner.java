@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the benchmarks from the command line.
+ *
+ * Each benchmark is warmed up for a number of timed iterations whose results
+ * are thrown away, then measured for a number more. An iteration calls op()
+ * until its time is up. The mean and standard deviation over the measured
+ * iterations are reported per operation.
+ *
+ * Results can be saved with -o and compared against a saved run with -b, so
+ * that two commits can be measured on the same machine and compared:
+ *
+ *   ant bench -Dbench.args="-o before.txt"
+ *   (check out the other commit)
+ *   ant bench -Dbench.args="-b before.txt"
+ */
+public class BenchRunner {
+
+    private static final String USAGE =
+            "Options:\n"
+            + "  -f <text>  only run benchmarks whose names contain text\n"
+            + "  -w <n>     warmup iterations (default 5)\n"
+            + "  -i <n>     measured iterations (default 10)\n"
+            + "  -t <ms>    length of each iteration (default 1000)\n"
+            + "  -o <file>  save the results\n"
+            + "  -b <file>  compare with results saved by -o\n"
+            + "  -l         list the benchmarks and exit\n";
+    private int warmups = 5;
+    private int iterations = 10;
+    private long iterationMillis = 1000;
+    private String filter = null;
+    private File output = null;
+    private File baseline = null;
+    private boolean list = false;
+    // Where each op()'s result goes so the JIT can't discard the work.
+    private Object sink;
+
+    public static void main(String[] args) throws Exception {
+        BenchRunner runner = new BenchRunner();
+        if (!runner.parse(args)) {
+            System.err.print(USAGE);
+            System.exit(1);
+        }
+        runner.run(PinpointBenchmarks.all());
+    }
+
+    private boolean parse(String[] args) {
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("-l")) {
+                    list = true;
+                } else if (i + 1 >= args.length) {
+                    return false;
+                } else if (arg.equals("-f")) {
+                    filter = args[++i];
+                } else if (arg.equals("-w")) {
+                    warmups = Integer.parseInt(args[++i]);
+                } else if (arg.equals("-i")) {
+                    iterations = Integer.parseInt(args[++i]);
+                } else if (arg.equals("-t")) {
+                    iterationMillis = Long.parseLong(args[++i]);
+                } else if (arg.equals("-o")) {
+                    output = new File(args[++i]);
+                } else if (arg.equals("-b")) {
+                    baseline = new File(args[++i]);
+                } else {
+                    return false;
+                }
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return iterations > 0 && warmups >= 0 && iterationMillis > 0;
+    }
+
+    private void run(List<Benchmark> benchmarks) throws Exception {
+        Map<String, double[]> previous = baseline == null ? null : load(baseline);
+        List<String> lines = new ArrayList<String>();
+
+        if (!list) {
+            System.out.println("# " + describeEnvironment());
+            System.out.println("# " + warmups + " warmup and " + iterations + " measured iterations of " + iterationMillis + " ms");
+            System.out.println(String.format("%-36s %14s %12s %10s", "Benchmark", "Mean", "Std dev", previous == null ? "" : "Change"));
+        }
+
+        for (Benchmark benchmark : benchmarks) {
+            if (filter != null && !benchmark.getName().contains(filter)) {
+                continue;
+            }
+            if (list) {
+                System.out.println(benchmark.getName());
+                continue;
+            }
+
+            double[] samples = new double[iterations];
+            benchmark.setUp();
+            try {
+                for (int i = 0; i < warmups; i++) {
+                    iteration(benchmark);
+                }
+                for (int i = 0; i < iterations; i++) {
+                    samples[i] = iteration(benchmark);
+                }
+            } finally {
+                benchmark.tearDown();
+            }
+
+            double mean = mean(samples);
+            double deviation = deviation(samples, mean);
+            String change = "";
+            if (previous != null && previous.containsKey(benchmark.getName())) {
+                double before = previous.get(benchmark.getName())[0];
+                change = String.format("%+9.1f%%", (mean - before) * 100 / before);
+            }
+
+            System.out.println(String.format("%-36s %14s %12s %10s", benchmark.getName(),
+                    formatNanos(mean) + "/op", "+/- " + formatNanos(deviation), change));
+            lines.add(benchmark.getName() + "\t" + mean + "\t" + deviation);
+        }
+
+        if (output != null && !list) {
+            save(output, lines);
+            System.out.println("# Saved to " + output);
+        }
+    }
+
+    /**
+     * Runs op() until the iteration's time is up.
+     *
+     * @return nanoseconds per operation
+     */
+    private double iteration(Benchmark benchmark) throws Exception {
+        long deadline = System.nanoTime() + iterationMillis * 1000000L;
+        long calls = 0;
+        long start = System.nanoTime();
+        long now;
+
+        do {
+            sink = benchmark.op();
+            calls++;
+            now = System.nanoTime();
+        } while (now < deadline);
+
+        return (now - start) / ((double) calls * benchmark.getBatch());
+    }
+
+    private static double mean(double[] samples) {
+        double sum = 0;
+        for (double sample : samples) {
+            sum += sample;
+        }
+        return sum / samples.length;
+    }
+
+    private static double deviation(double[] samples, double mean) {
+        if (samples.length < 2) {
+            return 0;
+        }
+        double sum = 0;
+        for (double sample : samples) {
+            sum += (sample - mean) * (sample - mean);
+        }
+        return Math.sqrt(sum / (samples.length - 1));
+    }
+
+    private static String formatNanos(double nanos) {
+        if (nanos >= 1000000) {
+            return String.format("%.3f ms", nanos / 1000000);
+        } else if (nanos >= 1000) {
+            return String.format("%.3f us", nanos / 1000);
+        }
+        return String.format("%.1f ns", nanos);
+    }
+
+    static String describeEnvironment() {
+        return "Java " + System.getProperty("java.version") + " (" + System.getProperty("java.vm.name") + "), "
+                + System.getProperty("os.name") + " " + System.getProperty("os.arch") + ", "
+                + Runtime.getRuntime().availableProcessors() + " processors";
+    }
+
+    static void save(File file, List<String> lines) throws IOException {
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+        try {
+            out.println("# " + new Date());
+            out.println("# " + describeEnvironment());
+            out.println("# name\tmean ns/op\tstd dev ns/op");
+            for (String line : lines) {
+                out.println(line);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    static Map<String, double[]> load(File file) throws IOException {
+        Map<String, double[]> results = new HashMap<String, double[]>();
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("#") || line.trim().length() == 0) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                results.put(fields[0], new double[]{Double.parseDouble(fields[1]), Double.parseDouble(fields[2])});
+            }
+        } finally {
+            in.close();
+        }
+        return results;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.bench;
+
+/**
+ * One thing to time. The runner calls op() over and over, keeping whatever
+ * it returns so that the work can't be optimised away, and divides the time
+ * taken by the number of calls and the batch size.
+ */
+public abstract class Benchmark {
+
+    private final String name;
+    private final int batch;
+
+    /**
+     * @param name how the benchmark is listed and matched by -f
+     * @param batch how many operations each call to op() performs, so that
+     * results are reported per record rather than per batch
+     */
+    protected Benchmark(String name, int batch) {
+        this.name = name;
+        this.batch = batch;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getBatch() {
+        return batch;
+    }
+
+    /**
+     * Builds whatever op() works on. Called once, before warming up, and not
+     * timed.
+     */
+    public void setUp() throws Exception {
+    }
+
+    /**
+     * Releases whatever setUp() took hold of. Called once the benchmark has
+     * been measured, or has failed.
+     */
+    public void tearDown() throws Exception {
+    }
+
+    /**
+     * Performs one batch of operations.
+     *
+     * @return anything derived from the work done
+     */
+    public abstract Object op() throws Exception;
+}
@@ -0,0 +1,489 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.bench;
+
+import com.pinpoint.api.CsvWriter;
+import com.pinpoint.api.ParallelConverter;
+import com.pinpoint.api.PinComm;
+import com.pinpoint.api.PinpointConverter;
+import com.pinpoint.api.RecordDecoder;
+import com.pinpoint.api.RecordFormatter;
+import com.pinpoint.api.RecordListener;
+import com.pinpoint.eval.CompiledExpression;
+import com.pinpoint.eval.Expression;
+import com.pinpoint.sim.SimulatedPINPoint;
+import com.pinpoint.sim.SyntheticFlash;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The benchmarks, all run against the same synthetic flash image so that
+ * results can be compared between runs and between commits.
+ */
+public class PinpointBenchmarks {
+
+    // 2010-11-10 at 00:00:00 GMT, one record a second.
+    private static final long START_MILLIS = 1289347200000L;
+    private static final int SAMPLE_RATE = 1000;
+    private static final long SEED = 20101110L;
+    private static final int RECORDS = 10000;
+    private static final int FIX_TIME_RECORDS = 100000;
+    private static final int SERIAL_NUMBER = 4242;
+    private static final int SIM_RECORDS = 4096;
+    // About one flipped bit in every download of SIM_RECORDS.
+    private static final double NOISY_BIT_ERROR_RATE = 1e-6;
+    // Typical sensor equations from the conversion sheet: the identity, a
+    // straight line, a polynomial with a division and two heavy on brackets.
+    private static final String[][] CONVERSIONS = {
+        {"0", "BTA", "Counter Type", "Counts", "x"},
+        {"1", "BTA", "Voltage", "Voltage", "x*3.3/1023"},
+        {"2", "BTA", "PINPoint Temperature Probe", "Temperature Probe", "(1587.787/x) - (0.00008071358 * x * x) + 45.75087"},
+        {"7", "Mini", "Vernier pH Sensor", "PH", "7+(-1*(x-375))/52.5"},
+        {"8", "Mini", "Vernier Salinity Sensor", "ppt", "0.0224*((x*3.3)/1023)+1.51"}
+    };
+
+    private PinpointBenchmarks() {
+    }
+
+    /**
+     * A flash image of count records, always the same for the same count.
+     */
+    static byte[] flashImage(int count) {
+        return SyntheticFlash.records(count, START_MILLIS, SAMPLE_RATE, SEED);
+    }
+
+    static HashMap<Integer, Integer> settings() {
+        HashMap<Integer, Integer> settings = new HashMap<Integer, Integer>();
+        settings.put(PinComm.SAMPLE_RATE, SAMPLE_RATE);
+        // Sensors whose equations are defined for every reading, as the
+        // noise in the synthetic records includes readings of 0.
+        settings.put(PinComm.BTA1, 1);
+        settings.put(PinComm.BTA2, 0);
+        settings.put(PinComm.MINI1, 7);
+        settings.put(PinComm.MINI2, 8);
+        return settings;
+    }
+
+    static ArrayList<String[]> conversions() {
+        ArrayList<String[]> conversions = new ArrayList<String[]>();
+        for (String[] conversion : CONVERSIONS) {
+            conversions.add(conversion.clone());
+        }
+        return conversions;
+    }
+
+    static PinpointConverter converter() throws Exception {
+        return new PinpointConverter(settings(), conversions());
+    }
+
+    static ArrayList<String[]> convert(PinpointConverter converter, byte[] flash) {
+        ArrayList<String[]> rows = new ArrayList<String[]>();
+        for (int offset = 0; offset < flash.length; offset += RecordDecoder.RECORD_SIZE) {
+            rows.add(converter.convertAll(flash, offset));
+        }
+        return rows;
+    }
+
+    public static List<Benchmark> all() {
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+
+        benchmarks.add(new Benchmark("convert.convertAll", RECORDS) {
+
+            private PinpointConverter converter;
+            private byte[] flash;
+
+            public void setUp() throws Exception {
+                converter = converter();
+                flash = flashImage(RECORDS);
+            }
+
+            public Object op() {
+                String[] last = null;
+                for (int offset = 0; offset < flash.length; offset += RecordDecoder.RECORD_SIZE) {
+                    last = converter.convertAll(flash, offset);
+                }
+                return last;
+            }
+        });
+
+        benchmarks.add(new Benchmark("convert.parallel", RECORDS) {
+
+            private ParallelConverter converter;
+            private byte[] flash;
+
+            public void setUp() throws Exception {
+                converter = new ParallelConverter(settings(), conversions());
+                flash = flashImage(RECORDS);
+            }
+
+            public Object op() throws Exception {
+                return converter.convert(flash, RECORDS);
+            }
+        });
+
+        benchmarks.add(new Benchmark("decode.record", RECORDS) {
+
+            private RecordDecoder decoder;
+            private byte[] flash;
+            private final double[] values = new double[RecordDecoder.CHANNELS];
+
+            public void setUp() throws Exception {
+                decoder = converter().getDecoder();
+                flash = flashImage(RECORDS);
+            }
+
+            public Object op() {
+                for (int offset = 0; offset < flash.length; offset += RecordDecoder.RECORD_SIZE) {
+                    decoder.decode(flash, offset, values);
+                }
+                return values;
+            }
+        });
+
+        for (int channel = 0; channel < RecordDecoder.CHANNELS; channel++) {
+            benchmarks.add(channel(channel));
+        }
+
+        for (final String[] conversion : CONVERSIONS) {
+            final String equation = conversion[PinpointConverter.EQUATION];
+            final String name = conversion[PinpointConverter.VALUE];
+
+            benchmarks.add(new Benchmark("eval.compile." + name, 1) {
+
+                public Object op() {
+                    return new Expression(equation).compile("x");
+                }
+            });
+
+            benchmarks.add(new Benchmark("eval.compiled." + name, RecordDecoder.ANALOG_RANGE - 1) {
+
+                private CompiledExpression compiled;
+
+                public void setUp() {
+                    compiled = new Expression(equation).compile("x");
+                }
+
+                public Object op() {
+                    double sum = 0;
+                    // From 1, as some equations divide by x.
+                    for (int x = 1; x < RecordDecoder.ANALOG_RANGE; x++) {
+                        sum += compiled.eval(x);
+                    }
+                    return sum;
+                }
+            });
+
+            benchmarks.add(new Benchmark("eval.exact." + name, RecordDecoder.ANALOG_RANGE - 1) {
+
+                private Expression expression;
+                private final HashMap<String, BigDecimal> variables = new HashMap<String, BigDecimal>();
+
+                public void setUp() {
+                    expression = new Expression(equation);
+                }
+
+                public Object op() {
+                    BigDecimal last = null;
+                    // From 1, as some equations divide by x.
+                    for (int x = 1; x < RecordDecoder.ANALOG_RANGE; x++) {
+                        variables.put("x", BigDecimal.valueOf(x));
+                        last = expression.eval(variables);
+                    }
+                    return last;
+                }
+            });
+        }
+
+        benchmarks.add(new Benchmark("fixTime.100k", 1) {
+
+            private PinpointConverter converter;
+            private ArrayList<String[]> rows;
+            private String[] times;
+
+            public void setUp() throws Exception {
+                converter = converter();
+                rows = convert(converter, flashImage(FIX_TIME_RECORDS));
+                times = new String[rows.size()];
+                for (int i = 0; i < times.length; i++) {
+                    times[i] = rows.get(i)[0];
+                }
+            }
+
+            public Object op() {
+                // fixTime rewrites the times, so put the originals back first.
+                for (int i = 0; i < times.length; i++) {
+                    rows.get(i)[0] = times[i];
+                }
+                converter.fixTime(rows, SAMPLE_RATE);
+                return rows;
+            }
+        });
+
+        benchmarks.add(new Benchmark("export.csv.legacy", RECORDS) {
+
+            private ArrayList<String[]> rows;
+            private final CountingWriter counter = new CountingWriter();
+
+            public void setUp() throws Exception {
+                PinpointConverter converter = converter();
+                rows = convert(converter, flashImage(RECORDS));
+                converter.fixTime(rows, SAMPLE_RATE);
+            }
+
+            public Object op() throws IOException {
+                BufferedWriter out = new BufferedWriter(counter);
+                for (String[] row : rows) {
+                    out.write(fmtData(row));
+                }
+                out.flush();
+                return counter;
+            }
+        });
+
+        benchmarks.add(new Benchmark("export.csv", RECORDS) {
+
+            private ArrayList<String[]> rows;
+            private final CountingWriter counter = new CountingWriter();
+
+            public void setUp() throws Exception {
+                PinpointConverter converter = converter();
+                rows = convert(converter, flashImage(RECORDS));
+                converter.fixTime(rows, SAMPLE_RATE);
+            }
+
+            public Object op() throws IOException {
+                CsvWriter out = new CsvWriter(counter);
+                for (String[] row : rows) {
+                    out.writeRow(row);
+                }
+                out.flush();
+                return counter;
+            }
+        });
+
+        benchmarks.add(new Benchmark("export.records", RECORDS) {
+
+            private PinpointConverter converter;
+            private byte[] flash;
+            private final CountingWriter counter = new CountingWriter();
+
+            public void setUp() throws Exception {
+                converter = converter();
+                flash = flashImage(RECORDS);
+            }
+
+            public Object op() throws IOException {
+                CsvWriter out = new CsvWriter(counter, converter, SAMPLE_RATE);
+                for (int i = 0; i < RECORDS; i++) {
+                    out.writeRecord(flash, i * RecordDecoder.RECORD_SIZE);
+                }
+                out.flush();
+                return counter;
+            }
+        });
+
+        benchmarks.add(new Simulated("sim.handshake", 1) {
+
+            public Object op() throws IOException {
+                if (!device.isResponding()) {
+                    throw new IOException("No reply to the handshake");
+                }
+                return device;
+            }
+        });
+
+        benchmarks.add(new Simulated("sim.eeprom.read", 1) {
+
+            public Object op() throws Exception {
+                if (device.getSerialNumber() != SERIAL_NUMBER) {
+                    throw new IOException("Wrong serial number");
+                }
+                return device;
+            }
+        });
+
+        benchmarks.add(new Simulated("sim.eeprom.settings", 1) {
+
+            private final HashMap<Integer, Integer> changes = settings();
+
+            public Object op() throws Exception {
+                if (!device.SetMultipleSettings(changes)) {
+                    throw new IOException("The settings didn't read back as written");
+                }
+                return device;
+            }
+        });
+
+        benchmarks.add(download("sim.download", 0));
+        benchmarks.add(download("sim.download.noisy", NOISY_BIT_ERROR_RATE));
+
+        return benchmarks;
+    }
+
+    /**
+     * Downloads the whole of a simulated PINPoint's flash, with bits flipped
+     * in its replies at the given rate.
+     */
+    private static Benchmark download(String name, final double bitErrorRate) {
+        return new Simulated(name, SIM_RECORDS) {
+
+            private final int[] received = new int[1];
+            private final RecordListener counter = new RecordListener() {
+
+                public void recordReceived(byte[] record) {
+                    received[0]++;
+                }
+
+                public void downloadFinished(boolean checksumValid) {
+                }
+            };
+
+            protected void configure(SimulatedPINPoint pinpoint) {
+                pinpoint.setFlash(flashImage(SIM_RECORDS));
+                pinpoint.setBitErrorRate(bitErrorRate, SEED);
+            }
+
+            public Object op() throws Exception {
+                received[0] = 0;
+                if (!device.requestRange(0, SIM_RECORDS, counter) || received[0] != SIM_RECORDS) {
+                    throw new IOException("Download failed after " + received[0] + " records");
+                }
+                return device.getLastTransferStats();
+            }
+        };
+    }
+
+    /**
+     * Formats one channel of already decoded records.
+     */
+    private static Benchmark channel(final int channel) {
+        return new Benchmark("channel." + PinpointConverter.getDefaultFileHeaders()[channel].replace(' ', '_'), RECORDS) {
+
+            private double[] values;
+
+            public void setUp() throws Exception {
+                RecordDecoder decoder = converter().getDecoder();
+                byte[] flash = flashImage(RECORDS);
+                double[] record = new double[RecordDecoder.CHANNELS];
+
+                values = new double[RECORDS];
+                for (int i = 0; i < RECORDS; i++) {
+                    decoder.decode(flash, i * RecordDecoder.RECORD_SIZE, record);
+                    values[i] = record[channel];
+                }
+            }
+
+            public Object op() {
+                String last = null;
+                for (double value : values) {
+                    last = RecordFormatter.format(channel, value);
+                }
+                return last;
+            }
+        };
+    }
+
+    /**
+     * Talks to a SimulatedPINPoint plugged into a port of the benchmark's
+     * own name. The simulator isn't paced, so these time PinComm's side of
+     * the protocol rather than the serial line.
+     */
+    private static abstract class Simulated extends Benchmark {
+
+        private SimulatedPINPoint pinpoint;
+        protected PinComm device;
+
+        Simulated(String name, int batch) {
+            super(name, batch);
+        }
+
+        /**
+         * Prepares the simulator before it is connected to.
+         */
+        protected void configure(SimulatedPINPoint pinpoint) {
+        }
+
+        public void setUp() throws Exception {
+            pinpoint = new SimulatedPINPoint(SERIAL_NUMBER);
+            configure(pinpoint);
+            pinpoint.plugIn(getName());
+            device = PinComm.instantiate(getName());
+        }
+
+        public void tearDown() throws IOException {
+            if (device != null) {
+                device.close();
+            }
+            pinpoint.unplug();
+        }
+    }
+
+    /**
+     * Formats a row the way GoldenEye's FileSaver did before CsvWriter.
+     */
+    private static String fmtData(String[] temp) {
+        String dataString = "";
+        DateFormat format = new SimpleDateFormat("MM/dd/yyyy HH:mm:ss:SSS");
+
+        try {
+            dataString += format.parse(temp[0]).getTime() + ",";
+            for (int i = 1; i < temp.length; i++) {
+                dataString += temp[i] + (i == temp.length - 1 ? "\n" : ",");
+            }
+            return dataString;
+        } catch (ParseException e) {
+            return "";
+        }
+    }
+
+    /**
+     * Throws away what is written to it, keeping count.
+     */
+    private static class CountingWriter extends Writer {
+
+        private long count;
+
+        public void write(char[] buffer, int offset, int length) {
+            count += length;
+        }
+
+        public void flush() {
+        }
+
+        public void close() {
+        }
+    }
+}
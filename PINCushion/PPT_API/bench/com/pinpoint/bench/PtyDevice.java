@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.bench;
+
+import com.pinpoint.api.Transport;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Connects a simulated device to one end of a pseudo-terminal, so that
+ * whatever opens the other end talks to it through the kernel's tty layer
+ * just as it would to a USB serial adapter.
+ *
+ * The pty is read by one thread for the life of the object; a read blocked
+ * on a tty isn't woken by closing the stream, so devices are swapped with
+ * attach() rather than by opening the pty again.
+ */
+class PtyDevice {
+
+    private final FileInputStream in;
+    private final FileOutputStream out;
+    private volatile Transport device;
+    private volatile boolean closed = false;
+
+    /**
+     * @param path the device's end of the pair, already in raw mode
+     */
+    PtyDevice(String path) throws IOException {
+        this.in = new FileInputStream(path);
+        this.out = new FileOutputStream(path);
+
+        Thread pump = new Thread(new Runnable() {
+
+            public void run() {
+                pump();
+            }
+        }, "Pseudo-terminal " + path);
+        pump.setDaemon(true);
+        pump.start();
+    }
+
+    /**
+     * Puts a device on the line, disconnecting the one before it.
+     *
+     * @param next an open transport into the simulated device
+     */
+    synchronized void attach(Transport next) throws IOException {
+        detach();
+        next.start(new Transport.Receiver() {
+
+            public void received(byte[] bytes, int offset, int length) {
+                try {
+                    out.write(bytes, offset, length);
+                } catch (IOException e) {
+                    if (!closed) {
+                        System.err.println("Couldn't write to the pseudo-terminal: " + e.getMessage());
+                    }
+                }
+            }
+        });
+        device = next;
+    }
+
+    synchronized void detach() {
+        if (device != null) {
+            device.close();
+            device = null;
+        }
+    }
+
+    private void pump() {
+        byte[] buffer = new byte[4096];
+        try {
+            int count;
+            while (!closed && (count = in.read(buffer)) >= 0) {
+                Transport current = device;
+                if (count > 0 && current != null) {
+                    try {
+                        current.write(buffer, 0, count);
+                    } catch (IOException e) {
+                        //Detached while writing; the bytes are lost as on a real line.
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                System.err.println("Couldn't read from the pseudo-terminal: " + e.getMessage());
+            }
+        }
+    }
+
+    void close() {
+        closed = true;
+        detach();
+        try {
+            in.close();
+        } catch (IOException e) {
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+        }
+    }
+}
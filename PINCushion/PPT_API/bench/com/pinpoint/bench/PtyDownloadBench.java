@@ -0,0 +1,334 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.bench;
+
+import com.pinpoint.api.PinComm;
+import com.pinpoint.api.RecordListener;
+import com.pinpoint.api.TransferStats;
+import com.pinpoint.sim.SimulatedPINPoint;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Times the whole serial path, RXTX included, against a simulated PINPoint
+ * on the far end of a Linux pseudo-terminal pair:
+ *
+ *   SerialChannel/PinComm <-> RXTX <-> pty <-> pty <-> SimulatedPINPoint
+ *
+ * For each baud rate it measures connecting (open and handshake), the
+ * handshake round trip, an EEPROM round trip (reading the serial number)
+ * and full downloads. The simulated PINPoint is paced at the baud rate,
+ * since the rate set on a pty doesn't slow it down.
+ *
+ * The pair is made with socat unless one is given with -pty. RXTX only
+ * lists ports it knows the names of, so the host end is passed to it in the
+ * gnu.io.rxtx.SerialPorts property, and its native library must be on
+ * java.library.path.
+ *
+ *   ant bench-pty -Dbench.args="-b 115200,57600 -r 8192"
+ */
+public class PtyDownloadBench {
+
+    private static final String USAGE =
+            "Options:\n"
+            + "  -b <rates>       comma separated baud rates (default 115200,57600)\n"
+            + "  -r <records>     records in flash (default 4096)\n"
+            + "  -n <downloads>   downloads at each rate (default 3)\n"
+            + "  -p <round trips> handshakes and EEPROM reads at each rate (default 50)\n"
+            + "  -l <ms>          extra latency before each reply (default 0)\n"
+            + "  -pty <dev,host>  use an existing pty pair instead of starting socat\n"
+            + "  -socat <path>    the socat to run (default socat)\n"
+            + "  -o <file>        save the results\n"
+            + "  -c <file>        compare with results saved by -o\n";
+    private static final int SERIAL_NUMBER = 4242;
+    private static final int BITS_PER_BYTE = 10;
+    private static final long PTY_WAIT_MS = 5000;
+    private int[] baudRates = {115200, 57600};
+    private int records = 4096;
+    private int downloads = 3;
+    private int roundTrips = 50;
+    private int latencyMillis = 0;
+    private String devicePty = null;
+    private String hostPty = null;
+    private String socat = "socat";
+    private File output = null;
+    private File baseline = null;
+    private final List<String> lines = new ArrayList<String>();
+    private Map<String, double[]> previous = null;
+
+    public static void main(String[] args) throws Exception {
+        PtyDownloadBench bench = new PtyDownloadBench();
+        if (!bench.parse(args)) {
+            System.err.print(USAGE);
+            System.exit(1);
+        }
+        bench.run();
+        System.exit(0);
+    }
+
+    private boolean parse(String[] args) {
+        try {
+            for (int i = 0; i + 1 < args.length; i += 2) {
+                String arg = args[i];
+                String value = args[i + 1];
+                if (arg.equals("-b")) {
+                    String[] rates = value.split(",");
+                    baudRates = new int[rates.length];
+                    for (int j = 0; j < rates.length; j++) {
+                        baudRates[j] = Integer.parseInt(rates[j].trim());
+                    }
+                } else if (arg.equals("-r")) {
+                    records = Integer.parseInt(value);
+                } else if (arg.equals("-n")) {
+                    downloads = Integer.parseInt(value);
+                } else if (arg.equals("-p")) {
+                    roundTrips = Integer.parseInt(value);
+                } else if (arg.equals("-l")) {
+                    latencyMillis = Integer.parseInt(value);
+                } else if (arg.equals("-pty")) {
+                    String[] pair = value.split(",");
+                    if (pair.length != 2) {
+                        return false;
+                    }
+                    devicePty = pair[0];
+                    hostPty = pair[1];
+                } else if (arg.equals("-socat")) {
+                    socat = value;
+                } else if (arg.equals("-o")) {
+                    output = new File(value);
+                } else if (arg.equals("-c")) {
+                    baseline = new File(value);
+                } else {
+                    return false;
+                }
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return args.length % 2 == 0 && records > 0 && downloads > 0 && roundTrips > 0;
+    }
+
+    private void run() throws Exception {
+        Process relay = null;
+        if (devicePty == null) {
+            relay = startSocat();
+        }
+
+        try {
+            // Must be set before RXTX first looks for ports.
+            if (System.getProperty("gnu.io.rxtx.SerialPorts") == null) {
+                System.setProperty("gnu.io.rxtx.SerialPorts", hostPty);
+            }
+            if (baseline != null) {
+                previous = BenchRunner.load(baseline);
+            }
+
+            System.out.println("# " + BenchRunner.describeEnvironment());
+            System.out.println("# Device on " + devicePty + ", host on " + hostPty + ", "
+                    + records + " records, " + latencyMillis + " ms latency");
+
+            SimulatedPINPoint pinpoint = new SimulatedPINPoint(SERIAL_NUMBER);
+            pinpoint.setFlash(PinpointBenchmarks.flashImage(records));
+            pinpoint.setLatency(latencyMillis);
+
+            PtyDevice line = new PtyDevice(devicePty);
+            try {
+                for (int baudRate : baudRates) {
+                    pinpoint.setBaudPacing(baudRate);
+                    line.attach(pinpoint.open(devicePty, PinComm.BAUD_RATE, PinComm.FLOW_CONTROL));
+                    try {
+                        measure(baudRate);
+                    } finally {
+                        line.detach();
+                    }
+                }
+            } finally {
+                line.close();
+            }
+
+            if (output != null) {
+                BenchRunner.save(output, lines);
+                System.out.println("# Saved to " + output);
+            }
+        } finally {
+            if (relay != null) {
+                relay.destroy();
+            }
+        }
+    }
+
+    private void measure(int baudRate) throws Exception {
+        System.out.println();
+        System.out.println(baudRate + " baud");
+
+        long start = System.nanoTime();
+        PinComm pinpoint = PinComm.instantiate(hostPty, baudRate);
+        report(baudRate, "connect", new double[]{System.nanoTime() - start}, "");
+
+        try {
+            double[] handshakes = new double[roundTrips];
+            for (int i = 0; i < roundTrips; i++) {
+                start = System.nanoTime();
+                if (!pinpoint.isResponding()) {
+                    throw new IOException("No reply to handshake " + i);
+                }
+                handshakes[i] = System.nanoTime() - start;
+            }
+            report(baudRate, "handshake", handshakes, "");
+
+            double[] eeprom = new double[roundTrips];
+            for (int i = 0; i < roundTrips; i++) {
+                start = System.nanoTime();
+                if (pinpoint.getSerialNumber() != SERIAL_NUMBER) {
+                    throw new IOException("Wrong serial number on EEPROM read " + i);
+                }
+                eeprom[i] = System.nanoTime() - start;
+            }
+            report(baudRate, "eeprom", eeprom, "4 bytes");
+
+            double[] dumps = new double[downloads];
+            TransferStats stats = null;
+            for (int i = 0; i < downloads; i++) {
+                final int[] received = new int[1];
+                start = System.nanoTime();
+                boolean valid = pinpoint.requestRange(0, records, new RecordListener() {
+
+                    public void recordReceived(byte[] record) {
+                        received[0]++;
+                    }
+
+                    public void downloadFinished(boolean checksumValid) {
+                    }
+                });
+                dumps[i] = System.nanoTime() - start;
+                stats = pinpoint.getLastTransferStats();
+
+                if (!valid || received[0] != records) {
+                    throw new IOException("Download " + i + " failed after " + received[0] + " records");
+                }
+            }
+
+            double bytes = records * 32.0;
+            double lineSeconds = bytes * BITS_PER_BYTE / baudRate;
+            double seconds = mean(dumps) / 1e9;
+            report(baudRate, "dump", dumps, String.format("%.0f bytes/s, %.0f%% of the line, %d requests",
+                    bytes / seconds, lineSeconds * 100 / seconds, stats == null ? 0 : stats.getRequests()));
+        } finally {
+            pinpoint.close();
+        }
+    }
+
+    private void report(int baudRate, String what, double[] samples, String note) {
+        String name = "pty." + baudRate + "." + what;
+        double mean = mean(samples);
+        double min = samples[0];
+        double max = samples[0];
+        for (double sample : samples) {
+            min = Math.min(min, sample);
+            max = Math.max(max, sample);
+        }
+
+        String change = "";
+        if (previous != null && previous.containsKey(name)) {
+            double before = previous.get(name)[0];
+            change = String.format("%+.1f%%", (mean - before) * 100 / before);
+        }
+
+        System.out.println(String.format("  %-10s mean %10.3f ms  min %10.3f ms  max %10.3f ms  %8s  %s",
+                what, mean / 1e6, min / 1e6, max / 1e6, change, note));
+        lines.add(name + "\t" + mean + "\t" + (max - min));
+    }
+
+    private static double mean(double[] samples) {
+        double sum = 0;
+        for (double sample : samples) {
+            sum += sample;
+        }
+        return sum / samples.length;
+    }
+
+    /**
+     * Starts socat with two raw ptys joined together and waits for it to say
+     * what they are called.
+     */
+    private Process startSocat() throws IOException, InterruptedException {
+        ProcessBuilder builder = new ProcessBuilder(Arrays.asList(
+                socat, "-d", "-d", "pty,raw,echo=0", "pty,raw,echo=0"));
+        builder.redirectErrorStream(true);
+
+        final Process process;
+        try {
+            process = builder.start();
+        } catch (IOException e) {
+            throw new IOException("Couldn't start " + socat + "; install socat or pass a pty pair with -pty");
+        }
+
+        final List<String> names = new ArrayList<String>();
+        final BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        Thread reader = new Thread(new Runnable() {
+
+            public void run() {
+                try {
+                    String message;
+                    while ((message = in.readLine()) != null) {
+                        int at = message.indexOf("PTY is ");
+                        if (at >= 0) {
+                            synchronized (names) {
+                                names.add(message.substring(at + 7).trim());
+                                names.notifyAll();
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                }
+            }
+        }, "socat");
+        reader.setDaemon(true);
+        reader.start();
+
+        long deadline = System.currentTimeMillis() + PTY_WAIT_MS;
+        synchronized (names) {
+            while (names.size() < 2 && System.currentTimeMillis() < deadline) {
+                names.wait(deadline - System.currentTimeMillis());
+            }
+            if (names.size() < 2) {
+                process.destroy();
+                throw new IOException("socat didn't report two ptys");
+            }
+            devicePty = names.get(0);
+            hostPty = names.get(1);
+        }
+        return process;
+    }
+}
@@ -41,44 +41,59 @@ import java.util.ArrayList;
  */
 public class AutoDetectBootloader {
 
-    public static ArrayList<BootComm> detect() throws IncorrectDeviceException, IOException {
+    //Longest a scan waits for ports to answer, in milliseconds.
+    public static final long DETECT_DEADLINE_MS = 5000;
 
-        /* Holds PinComm objects representing the detected devices */
-        ArrayList<BootComm> devices = new ArrayList<BootComm>();
+    private static final PortScan.Probe<BootComm> PROBE = new PortScan.Probe<BootComm>() {
 
-        /* Get all available serial ports */
-        ArrayList<String> serialPorts = SPI.enumeratePortNames();
-     
-        /* Try to instantiate a device on each serial port */
-        for(String port : serialPorts) {         
+        public BootComm open(String port) throws IOException, IncorrectDeviceException {
+            return BootComm.instantiate(port);
+        }
 
-            /* Fix for Mac to only connect to usbserial ports. This will decrease
-             * connection time and reduce error with opening Bluetooth ports.
-             */
-            if (System.getProperty("os.name").contains("Mac") && !port.contains("usbserial")) {
-                continue;
+        public void close(BootComm device) {
+            try {
+                device.close();
+            } catch (IOException ex) {
+                System.err.println("Error closing an extra BootPoint");
             }
+        }
+    };
 
+    public static ArrayList<BootComm> detect() throws IncorrectDeviceException, IOException {
+        return scan(1, DETECT_DEADLINE_MS).getDevices();                         //Fred only wants to connect to 1
+    }
 
-            /* Fix for Linux to only connect to USB ports since we will never
-             * connect to a Serial port
-             */
-            if (System.getProperty("os.name").contains("Linux") && port.contains("ttyS0")) {
-                continue;
-            }
+    /**
+     * Finds every BootPoint plugged in, for updating many at once. Each one
+     * is left open.
+     *
+     * @return ArrayList<BootComm>
+     * @throws IncorrectDeviceException
+     * @throws IOException
+     */
+    public static ArrayList<BootComm> detectAll() throws IncorrectDeviceException, IOException {
+        return scan(Integer.MAX_VALUE, DETECT_DEADLINE_MS).getDevices();
+    }
 
-            try {
-                System.out.println("-----------------------------------");
-                System.out.println("Searching for a BootPoint on: " + port);
-                BootComm bootPoint = BootComm.instantiate(port);                    //Figure out if the port has a PINPoint
-                System.out.println("Found a BootPoint");
-                devices.add(bootPoint);
-               
-                break;                                                           //Fred only wants to connect to 1
-            } catch (IOException e) {
-                System.out.println("Not a BootPoint");
-            }
+    /**
+     * Probes every serial port for BootPoints at once, returning as soon as
+     * enough have answered or the deadline passes.
+     *
+     * @param wanted how many BootPoints to find
+     * @param deadlineMs the longest to wait, in milliseconds
+     * @return the BootPoints found, left open, and how long each port took
+     */
+    public static PortScan<BootComm> scan(int wanted, long deadlineMs) {
+        System.out.println("-----------------------------------");
+        System.out.println("Searching for a BootPoint");
+
+        PortScan<BootComm> scan = PortScan.scan(PortScan.candidatePorts(), PROBE, wanted, deadlineMs);
+
+        for (PortScan.Port port : scan.getPorts()) {
+            System.out.println(port);
         }
-        return devices;
+        System.out.println("Found " + scan.getDevices().size() + " BootPoint(s) in " + scan.getElapsedMillis() + " ms");
+
+        return scan;
     }
 }
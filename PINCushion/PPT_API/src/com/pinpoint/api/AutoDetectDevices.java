@@ -29,6 +29,7 @@
 package com.pinpoint.api;
 
 import com.pinpoint.exceptions.IncorrectDeviceException;
+import com.pinpoint.exceptions.NoConnectionException;
 import java.io.IOException;
 import java.util.ArrayList;
 
@@ -38,43 +39,139 @@ import java.util.ArrayList;
  */
 public class AutoDetectDevices {
 
+    //Longest a scan waits for ports to answer, in milliseconds.
+    public static final long DETECT_DEADLINE_MS = 5000;
+
+    private static final PortScan.Probe<PinComm> PROBE = new PortScan.Probe<PinComm>() {
+
+        public PinComm open(String port) throws IOException, IncorrectDeviceException {
+            return PinComm.instantiate(port);
+        }
+
+        public void close(PinComm device) {
+            try {
+                device.close();
+            } catch (IOException ex) {
+                System.err.println("Error closing an extra PINPoint");
+            }
+        }
+    };
+
+    /**
+     * Finds a PINPoint, trying the ports PINPoints were last seen on before
+     * sweeping the rest.
+     *
+     * @return ArrayList<PinComm> holding at most one PINPoint
+     * @throws IncorrectDeviceException
+     * @throws IOException
+     */
     public static ArrayList<PinComm> detect() throws IncorrectDeviceException, IOException {
+        ArrayList<String> candidates = PortScan.candidatePorts();
+        ArrayList<String> known = DeviceCache.getKnownPorts();
+        known.retainAll(candidates);
 
-        /* Holds PinComm objects representing the detected devices */
-        ArrayList<PinComm> devices = new ArrayList<PinComm>();
-
-        /* Get all available serial ports */
-        ArrayList<String> serialPorts = SPI.enumeratePortNames();
-       
-        /* Try to instantiate a device on each serial port */
-        for(String port : serialPorts) {
-            
-            /* Fix for Mac to only connect to usbserial ports. This will decrease
-             * connection time and reduce error with opening Bluetooth ports.
-             */
-            if (System.getProperty("os.name").contains("Mac") && !port.contains("usbserial")) {
-                continue;
+        if (!known.isEmpty()) {
+            ArrayList<PinComm> devices = scan(known, 1, DETECT_DEADLINE_MS).getDevices();
+            if (!devices.isEmpty()) {
+                serialNumberOf(devices.get(0));
+                return devices;
             }
+            candidates.removeAll(known);
+        }
+
+        ArrayList<PinComm> devices = scan(candidates, 1, DETECT_DEADLINE_MS).getDevices();  //Fred only wants to connect to 1
+        for (PinComm device : devices) {
+            serialNumberOf(device);
+        }
+        return devices;
+    }
+
+    /**
+     * Finds a particular PINPoint, trying the port it was last seen on
+     * first.
+     *
+     * @param serialNumber the PINPoint's serial number
+     * @return the PINPoint, open, or null if it isn't plugged in
+     */
+    public static PinComm find(int serialNumber) {
+        String port = DeviceCache.getPort(serialNumber);
 
-            /* Fix for Linux to only connect to USB ports since we will never
-             * connect to a Serial port
-             */
-            if (System.getProperty("os.name").contains("Linux") && port.contains("ttyS0")) {
-                continue;
+        if (port != null && PortScan.candidatePorts().contains(port)) {
+            ArrayList<String> ports = new ArrayList<String>();
+            ports.add(port);
+            for (PinComm device : scan(ports, 1, DETECT_DEADLINE_MS).getDevices()) {
+                if (serialNumberOf(device) == serialNumber) {
+                    return device;
+                }
+                PROBE.close(device);
             }
+        }
 
-            try {
-                System.out.println("-----------------------------------");
-                System.out.println("Searching for a PINPoint on: " + port);
-                PinComm pinPoint = PinComm.instantiate(port);                    //Figure out if the port has a PINPoint
-                System.out.println("Found a PINPoint");
-                devices.add(pinPoint);
-               
-                break;                                                           //Fred only wants to connect to 1
-            } catch (IOException e) {
-                System.out.println("Not a PINPoint");
+        PinComm match = null;
+        for (PinComm device : scan(PortScan.candidatePorts(), Integer.MAX_VALUE, DETECT_DEADLINE_MS).getDevices()) {
+            if (match == null && serialNumberOf(device) == serialNumber) {
+                match = device;
+            } else {
+                PROBE.close(device);
             }
         }
-        return devices;
+        return match;
+    }
+
+    /**
+     * Finds every PINPoint plugged in, for docking stations that download
+     * many at once. Each one is left open.
+     *
+     * @return ArrayList<PinComm>
+     * @throws IncorrectDeviceException
+     * @throws IOException
+     */
+    public static ArrayList<PinComm> detectAll() throws IncorrectDeviceException, IOException {
+        return scan(Integer.MAX_VALUE, DETECT_DEADLINE_MS).getDevices();
+    }
+
+    /**
+     * Probes every serial port for PINPoints at once, returning as soon as
+     * enough have answered or the deadline passes. Every PINPoint found is
+     * remembered in the DeviceCache.
+     *
+     * @param wanted how many PINPoints to find
+     * @param deadlineMs the longest to wait, in milliseconds
+     * @return the PINPoints found, left open, and how long each port took
+     */
+    public static PortScan<PinComm> scan(int wanted, long deadlineMs) {
+        PortScan<PinComm> scan = scan(PortScan.candidatePorts(), wanted, deadlineMs);
+
+        for (PinComm device : scan.getDevices()) {
+            serialNumberOf(device);
+        }
+        return scan;
+    }
+
+    private static PortScan<PinComm> scan(ArrayList<String> ports, int wanted, long deadlineMs) {
+        System.out.println("-----------------------------------");
+        System.out.println("Searching for a PINPoint on " + ports);
+
+        PortScan<PinComm> scan = PortScan.scan(ports, PROBE, wanted, deadlineMs);
+
+        for (PortScan.Port port : scan.getPorts()) {
+            System.out.println(port);
+        }
+        System.out.println("Found " + scan.getDevices().size() + " PINPoint(s) in " + scan.getElapsedMillis() + " ms");
+
+        return scan;
+    }
+
+    /**
+     * Reads a PINPoint's serial number and remembers where it was found.
+     */
+    private static int serialNumberOf(PinComm device) {
+        try {
+            int serialNumber = device.getSerialNumber();
+            DeviceCache.remember(serialNumber, device.getPort(), device.getFirmwareVersion());
+            return serialNumber;
+        } catch (NoConnectionException ex) {
+            return -1;
+        }
     }
 }
@@ -44,6 +44,10 @@ public class BootComm {
 
     public static final int BAUD_RATE = 19200;
     public static final boolean FLOW_CONTROL = false;
+    //HEX records sent ahead of the bootloader's 'R'. It sends 'R' only once
+    //a line has been written to flash and it has room for no more, so this
+    //has to stay at one until the bootloader buffers lines.
+    private static final int LINES_IN_FLIGHT = 1;
     private SerialChannel spi;
 
     private BootComm(SerialChannel spi) {
@@ -185,6 +189,53 @@ public class BootComm {
 
     }
 
+    /**
+     * Sends a whole firmware image, one prepared frame per write. Records
+     * are sent LINES_IN_FLIGHT ahead of the bootloader's replies. The
+     * bootloader starts the new firmware on the end of file record and
+     * doesn't answer it, so that reply isn't waited for.
+     *
+     * @param image the parsed firmware
+     * @param listener told after each accepted record, or null
+     * @return true if every record was accepted
+     * @throws InvalidHexException if the bootloader rejects a record
+     * @throws IOException if the bootloader stops answering
+     */
+    public boolean flash(HexImage image, FlashListener listener) throws InvalidHexException, IOException {
+        int records = image.getRecordCount();
+        int sent = 0;
+        long start = System.currentTimeMillis();
+
+        if (!spi.isOpen()) {
+            return false;
+        }
+
+        for (int accepted = 0; accepted < records; accepted++) {
+            int window = Math.min(accepted + LINES_IN_FLIGHT, records);
+            while (sent < window) {
+                spi.writeBytes(image.getRecord(sent++).frame);
+            }
+
+            if (image.getRecord(accepted).type != HexImage.END_OF_FILE) {
+                byte reply = spi.readByte();
+
+                if (reply == 'E') {
+                    throw new InvalidHexException(spi.readByte() & 255);
+                } else if (reply != 'R') {
+                    System.err.println("Unexpected reply from the bootloader: " + reply);
+                    return false;
+                }
+            }
+
+            if (listener != null) {
+                int done = accepted + 1;
+                long elapsed = System.currentTimeMillis() - start;
+                listener.flashProgress(done, records, elapsed * (records - done) / done);
+            }
+        }
+        return true;
+    }
+
     public void QuitFlashing() {
         if (spi.isOpen()) {
             try {
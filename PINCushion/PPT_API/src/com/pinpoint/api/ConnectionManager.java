@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+import com.pinpoint.exceptions.IncorrectDeviceException;
+import com.pinpoint.exceptions.NoConnectionException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * Keeps one PINPoint connection open between GUI actions instead of
+ * detecting the PINPoint again for every button press. The connection is
+ * checked with a handshake each time it is handed out and replaced if the
+ * PINPoint has gone away. Its clock is set the first time it is seen.
+ *
+ * Only one caller holds the connection at a time; give it back with
+ * release() when done, or discard() if the PINPoint was reset.
+ */
+public class ConnectionManager {
+
+    //Longest to wait for another action to give the connection back.
+    private static final long ACQUIRE_TIMEOUT_MS = 2000;
+    private static ConnectionManager instance = null;
+    private PinComm device = null;
+    private boolean leased = false;
+    //Serial numbers whose clocks have been set by this manager.
+    private final HashSet<Integer> clocksSet = new HashSet<Integer>();
+
+    /**
+     * The connection manager shared by the whole application. Its
+     * connection is closed when the JVM exits.
+     *
+     * @return ConnectionManager
+     */
+    public static synchronized ConnectionManager getInstance() {
+        if (instance == null) {
+            instance = new ConnectionManager();
+
+            final ConnectionManager manager = instance;
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+
+                @Override
+                public void run() {
+                    manager.close();
+                }
+            });
+        }
+        return instance;
+    }
+
+    /**
+     * Hands out the open PINPoint, connecting first if there isn't one or
+     * the last one has stopped answering. The lease is taken before the
+     * handshake and any detection, which happen outside the lock so that
+     * other callers can still release, discard or give up waiting.
+     *
+     * @return an open PINPoint
+     * @throws NoConnectionException if no PINPoint could be found, or another
+     * action is still using it
+     */
+    public PinComm acquire() throws NoConnectionException {
+        PinComm pinpoint = reserve();
+        boolean published = false;
+
+        try {
+            if (pinpoint != null && !pinpoint.isResponding()) {
+                System.out.println("Lost the PINPoint on " + pinpoint.getPort() + ", reconnecting");
+                close(pinpoint);
+                pinpoint = null;
+            }
+
+            if (pinpoint == null) {
+                pinpoint = connect();
+            }
+
+            synchronized (this) {
+                device = pinpoint;
+                published = true;
+            }
+            return pinpoint;
+        } finally {
+            if (!published) {
+                synchronized (this) {
+                    device = null;
+                    leased = false;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for the lease and takes it.
+     *
+     * @return the connection to check, or null if there isn't one
+     */
+    private synchronized PinComm reserve() throws NoConnectionException {
+        long deadline = System.currentTimeMillis() + ACQUIRE_TIMEOUT_MS;
+        long now;
+
+        while (leased && (now = System.currentTimeMillis()) < deadline) {
+            try {
+                wait(deadline - now);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new NoConnectionException();
+            }
+        }
+        if (leased) {
+            System.err.println("The PINPoint is busy");
+            throw new NoConnectionException();
+        }
+
+        leased = true;
+        return device;
+    }
+
+    /**
+     * Gives the PINPoint back, leaving it open for the next action.
+     *
+     * @param pinpoint the PINPoint returned by acquire
+     */
+    public synchronized void release(PinComm pinpoint) {
+        if (pinpoint == device) {
+            leased = false;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Gives the PINPoint back and closes it, for when it has been reset or
+     * sent to its bootloader and its port must be freed.
+     *
+     * @param pinpoint the PINPoint returned by acquire
+     */
+    public synchronized void discard(PinComm pinpoint) {
+        if (pinpoint == device) {
+            closeDevice();
+            leased = false;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Closes the connection, if one is open and not in use.
+     */
+    public synchronized void close() {
+        if (!leased) {
+            closeDevice();
+        }
+    }
+
+    private PinComm connect() throws NoConnectionException {
+        ArrayList<PinComm> devices;
+
+        try {
+            devices = AutoDetectDevices.detect();
+        } catch (IncorrectDeviceException ex) {
+            throw new NoConnectionException();
+        } catch (IOException ex) {
+            throw new NoConnectionException();
+        }
+
+        if (devices.isEmpty()) {
+            throw new NoConnectionException();
+        }
+
+        PinComm pinpoint = devices.get(0);
+        boolean first = true;
+
+        //Fred wants the time set, but once per PINPoint is enough. A
+        //PINPoint whose serial number couldn't be read can't be told apart
+        //from any other, so its clock is always set.
+        int serialNumber = pinpoint.getSerialNumber();
+        if (serialNumber != -1) {
+            synchronized (this) {
+                first = clocksSet.add(serialNumber);
+            }
+        }
+        if (first) {
+            pinpoint.setRealTimeClock();
+        }
+
+        return pinpoint;
+    }
+
+    private void closeDevice() {
+        close(device);
+        device = null;
+    }
+
+    private static void close(PinComm pinpoint) {
+        if (pinpoint != null) {
+            try {
+                pinpoint.close();
+            } catch (IOException ex) {
+                System.err.println("Error closing the PINPoint");
+            }
+        }
+    }
+}
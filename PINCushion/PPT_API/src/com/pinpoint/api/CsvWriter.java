@@ -0,0 +1,534 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * Writes iSENSE data files: comment lines, a header line, then one line per
+ * record with the time in milliseconds followed by the other columns.
+ *
+ * Everything goes through one reusable character buffer. Rows can be given
+ * as strings, as the table holds them, or the writer can be handed straight
+ * to PinComm as a RecordListener, in which case it formats each raw record
+ * as it arrives without building any strings for it and holds at most one
+ * second of records, so a download of any size is exported in constant
+ * memory.
+ *
+ * The PINPoint's clock keeps GMT, but data files have always been written
+ * with that wall clock time read in the local time zone. Both kinds of row
+ * follow that rule, in the zone given to the constructor.
+ */
+public class CsvWriter implements RecordListener {
+
+    private static final int BUFFER_SIZE = 8192;
+    // Room left before each field that is written without a bounds check.
+    private static final int FIELD_ROOM = 32;
+    private static final long MILLIS_PER_HOUR = 3600000L;
+    // Values this large are printed by Double.toString in E notation.
+    private static final double PLAIN_LIMIT = 1e7;
+    // Well above the error in value * 1000 for anything under PLAIN_LIMIT.
+    private static final double TIE_MARGIN = 1e-4;
+    private final Writer out;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int length = 0;
+    private final TimeZone zone;
+    private final Calendar gmt = new GregorianCalendar(TimeZone.getTimeZone("GMT"));
+    private final Calendar local;
+    private long cachedHour = Long.MIN_VALUE;
+    private long cachedOffset = 0;
+    private DateFormat dateParser = null;
+    private final PinpointConverter converter;
+    private final int samplesPerSecond;
+    private final double[] values = new double[RecordDecoder.CHANNELS];
+    // Records of the current second, held until its times can be spread.
+    private byte[] held = new byte[0];
+    private int heldCount = 0;
+    private long heldSecond = Long.MIN_VALUE;
+    private IOException error = null;
+
+    /**
+     * Creates a writer for rows given as strings, reading times in the local
+     * time zone.
+     *
+     * @param out where the file goes
+     */
+    public CsvWriter(Writer out) {
+        this(out, null, 0, TimeZone.getDefault());
+    }
+
+    /**
+     * Creates a writer that can also take raw records from a download.
+     *
+     * @param out where the file goes
+     * @param converter the converter for the PINPoint being downloaded
+     * @param sampleRate the PINPoint's sample rate in milliseconds; rates
+     * under a second have their time stamps spread within each second
+     */
+    public CsvWriter(Writer out, PinpointConverter converter, int sampleRate) {
+        this(out, converter, sampleRate, TimeZone.getDefault());
+    }
+
+    /**
+     * @param out where the file goes
+     * @param converter the converter for the PINPoint being downloaded, or
+     * null if only string rows will be written
+     * @param sampleRate the PINPoint's sample rate in milliseconds
+     * @param zone the zone the PINPoint's clock is read in
+     */
+    public CsvWriter(Writer out, PinpointConverter converter, int sampleRate, TimeZone zone) {
+        this.out = out;
+        this.converter = converter;
+        this.samplesPerSecond = sampleRate > 0 && sampleRate < 1000 ? 1000 / sampleRate : 0;
+        this.zone = zone;
+        this.local = new GregorianCalendar(zone);
+    }
+
+    /**
+     * Writes a comment line, which starts with '#'.
+     *
+     * @param text the comment, without the '#'
+     * @throws IOException
+     */
+    public void writeComment(String text) throws IOException {
+        append('#');
+        append(text);
+        append('\n');
+    }
+
+    /**
+     * Writes the column names.
+     *
+     * @param headers
+     * @throws IOException
+     */
+    public void writeHeader(String[] headers) throws IOException {
+        for (int i = 0; i < headers.length; i++) {
+            if (i > 0) {
+                append(',');
+            }
+            append(headers[i]);
+        }
+        append('\n');
+    }
+
+    /**
+     * Writes a row laid out as PinpointConverter.getDefaultTableHeaders(), with
+     * the time as the converter formats it (MM/dd/yyyy HH:mm:ss:SSS).
+     *
+     * @param row
+     * @return false if the time couldn't be read, in which case nothing was
+     * written
+     * @throws IOException
+     */
+    public boolean writeRow(String[] row) throws IOException {
+        long time = parseTime(row[0]);
+        if (time == Long.MIN_VALUE) {
+            return false;
+        }
+
+        room();
+        appendLong(time);
+        for (int i = 1; i < row.length; i++) {
+            append(',');
+            append(row[i]);
+        }
+        append('\n');
+        return true;
+    }
+
+    /**
+     * Converts and writes one raw record, holding it first if times are
+     * being spread within each second.
+     *
+     * @param record
+     * @param offset where the record starts in the array
+     * @throws IOException
+     */
+    public void writeRecord(byte[] record, int offset) throws IOException {
+        if (converter == null) {
+            throw new IllegalStateException("No converter to write records with");
+        }
+
+        long time = RecordDecoder.time(record, offset);
+        if (samplesPerSecond == 0) {
+            appendRecord(record, offset, time);
+            return;
+        }
+
+        long second = floorDiv(time, 1000);
+        if (heldCount > 0 && second != heldSecond) {
+            flushHeld();
+        }
+
+        int size = RecordDecoder.RECORD_SIZE;
+        if ((heldCount + 1) * size > held.length) {
+            byte[] grown = new byte[Math.max(held.length * 2, samplesPerSecond * size)];
+            System.arraycopy(held, 0, grown, 0, heldCount * size);
+            held = grown;
+        }
+        System.arraycopy(record, offset, held, heldCount * size, size);
+        heldCount++;
+        heldSecond = second;
+    }
+
+    public void recordReceived(byte[] record) {
+        if (error == null) {
+            try {
+                writeRecord(record, 0);
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+    }
+
+    public void downloadFinished(boolean checksumValid) {
+        if (error == null) {
+            try {
+                flush();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+    }
+
+    /**
+     * @return the first error met while writing records passed in as a
+     * RecordListener, or null if there was none
+     */
+    public IOException getError() {
+        return error;
+    }
+
+    /**
+     * Writes out any held records and everything buffered, and flushes the
+     * underlying writer.
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        flushHeld();
+        drain();
+        out.flush();
+    }
+
+    /**
+     * Flushes and closes the underlying writer.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Spreads the held records across their second the way
+     * PinpointConverter.fixTime does, the last record taking the last slot.
+     * A second holding more records than it has slots writes the extra ones
+     * at the start of the second, as their times have always been read back
+     * from the table.
+     */
+    private void flushHeld() throws IOException {
+        if (heldCount == 0) {
+            return;
+        }
+
+        int step = 100 / samplesPerSecond * 10;
+        int first = samplesPerSecond - heldCount;
+
+        for (int k = 0; k < heldCount; k++) {
+            int slot = Math.max(first + k, 0);
+            appendRecord(held, k * RecordDecoder.RECORD_SIZE, heldSecond * 1000 + (long) step * slot);
+        }
+        heldCount = 0;
+    }
+
+    private void appendRecord(byte[] record, int offset, long time) throws IOException {
+        RecordDecoder.decodeFixed(record, offset, values);
+
+        room();
+        appendLong(fileTime(time));
+
+        for (int channel = RecordDecoder.LATITUDE; channel < RecordDecoder.BTA1; channel++) {
+            double value = values[channel];
+            room();
+            buffer[length++] = ',';
+
+            switch (channel) {
+                case RecordDecoder.LATITUDE:
+                case RecordDecoder.LONGITUDE:
+                    if (!Double.isNaN(value)) {
+                        append(Float.toString((float) value));
+                    }
+                    break;
+                case RecordDecoder.ALTITUDE_GPS:
+                    if (Double.isNaN(value)) {
+                        buffer[length++] = ' ';
+                    } else {
+                        appendLong((int) value);
+                    }
+                    break;
+                case RecordDecoder.TEMPERATURE:
+                    appendTenths(value);
+                    break;
+                case RecordDecoder.ACCEL_X:
+                case RecordDecoder.ACCEL_Y:
+                case RecordDecoder.ACCEL_Z:
+                    append(Double.toString(value));
+                    break;
+                default:
+                    appendThousandths(value);
+            }
+        }
+
+        for (int channel = RecordDecoder.BTA1; channel <= RecordDecoder.MINI2; channel++) {
+            append(',');
+            append(converter.analogConversion(channel, RecordDecoder.analogReading(record, offset, channel)));
+        }
+        append('\n');
+    }
+
+    /**
+     * Writes a value rounded to three places exactly as
+     * Double.toString(RecordFormatter.roundThreeDecimals(value)) would.
+     */
+    private void appendThousandths(double value) throws IOException {
+        double scaled = value * 1000;
+        double fraction = scaled - Math.floor(scaled);
+
+        //Near a tie, or too big for plain notation, the slow way is exact.
+        if (Double.isNaN(value) || Math.abs(value) >= PLAIN_LIMIT || Math.abs(fraction - 0.5) < TIE_MARGIN) {
+            append(Double.toString(RecordFormatter.roundThreeDecimals(value)));
+            return;
+        }
+
+        long thousandths = Math.round(scaled);
+        if (thousandths < 0) {
+            buffer[length++] = '-';
+            thousandths = -thousandths;
+        }
+        appendLong(thousandths / 1000);
+        buffer[length++] = '.';
+
+        int digits = (int) (thousandths % 1000);
+        if (digits == 0) {
+            buffer[length++] = '0';
+            return;
+        }
+        buffer[length++] = (char) ('0' + digits / 100);
+        if (digits % 100 != 0) {
+            buffer[length++] = (char) ('0' + digits / 10 % 10);
+            if (digits % 10 != 0) {
+                buffer[length++] = (char) ('0' + digits % 10);
+            }
+        }
+    }
+
+    /**
+     * Writes a temperature in tenths of a degree exactly as
+     * Float.toString((float) value) would.
+     */
+    private void appendTenths(double value) throws IOException {
+        long tenths = Math.round(value * 10);
+        if (Double.isNaN(value) || Math.abs(tenths) > Short.MAX_VALUE + 1 || tenths / 10.0 != value) {
+            append(Float.toString((float) value));
+            return;
+        }
+
+        if (tenths < 0) {
+            buffer[length++] = '-';
+            tenths = -tenths;
+        }
+        appendLong(tenths / 10);
+        buffer[length++] = '.';
+        buffer[length++] = (char) ('0' + tenths % 10);
+    }
+
+    /**
+     * Writes a whole number. Callers make sure there is room.
+     */
+    private void appendLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            String text = Long.toString(value);
+            text.getChars(0, text.length(), buffer, length);
+            length += text.length();
+            return;
+        }
+        if (value < 0) {
+            buffer[length++] = '-';
+            value = -value;
+        }
+
+        int start = length;
+        do {
+            buffer[length++] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            char c = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = c;
+        }
+    }
+
+    private void append(char c) throws IOException {
+        if (length == buffer.length) {
+            drain();
+        }
+        buffer[length++] = c;
+    }
+
+    private void append(String text) throws IOException {
+        int start = 0;
+        int remaining = text.length();
+
+        while (remaining > 0) {
+            if (length == buffer.length) {
+                drain();
+            }
+            int count = Math.min(remaining, buffer.length - length);
+            text.getChars(start, start + count, buffer, length);
+            length += count;
+            start += count;
+            remaining -= count;
+        }
+    }
+
+    /**
+     * Makes sure a field of up to FIELD_ROOM characters fits.
+     */
+    private void room() throws IOException {
+        if (buffer.length - length < FIELD_ROOM) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        if (length > 0) {
+            out.write(buffer, 0, length);
+            length = 0;
+        }
+    }
+
+    /**
+     * Converts a GMT wall clock time to the time written to the file: the
+     * same wall clock time in the writer's zone. Zone offsets only change on
+     * the hour, so the offset is worked out once an hour.
+     */
+    private long fileTime(long wallMillis) {
+        long hour = floorDiv(wallMillis, MILLIS_PER_HOUR);
+
+        if (hour != cachedHour) {
+            gmt.setTimeInMillis(hour * MILLIS_PER_HOUR);
+            local.clear();
+            local.set(gmt.get(Calendar.YEAR), gmt.get(Calendar.MONTH), gmt.get(Calendar.DATE),
+                    gmt.get(Calendar.HOUR_OF_DAY), 0, 0);
+            if (gmt.get(Calendar.ERA) == GregorianCalendar.BC) {
+                local.set(Calendar.ERA, GregorianCalendar.BC);
+            }
+            cachedOffset = hour * MILLIS_PER_HOUR - local.getTimeInMillis();
+            cachedHour = hour;
+        }
+        return wallMillis - cachedOffset;
+    }
+
+    /**
+     * Reads a time as formatted by the converter. Well formed times are read
+     * by hand; anything else, such as a time edited in the table, goes
+     * through the same lenient parse FileSaver always used.
+     *
+     * @return the time to write, or Long.MIN_VALUE if it can't be read
+     */
+    private long parseTime(String text) {
+        if (text.length() >= 21 && text.charAt(2) == '/' && text.charAt(5) == '/' && text.charAt(10) == ' '
+                && text.charAt(13) == ':' && text.charAt(16) == ':' && text.charAt(19) == ':') {
+            int month = digits(text, 0, 2);
+            int day = digits(text, 3, 2);
+            int year = digits(text, 6, 4);
+            int hours = digits(text, 11, 2);
+            int minutes = digits(text, 14, 2);
+            int seconds = digits(text, 17, 2);
+
+            int end = 20;
+            while (end < text.length() && end < 23 && Character.isDigit(text.charAt(end))) {
+                end++;
+            }
+            int millis = end > 20 ? digits(text, 20, end - 20) : -1;
+
+            if (month >= 1 && month <= 12 && day >= 1 && day <= 31 && year >= 0 && hours >= 0 && hours < 24
+                    && minutes >= 0 && minutes < 60 && seconds >= 0 && seconds < 60
+                    && millis >= 0 && end == text.length()) {
+                long wall = ((RecordDecoder.daysFromCivil(year, month, day) * 24 + hours) * 60 + minutes) * 60000L
+                        + seconds * 1000L + millis;
+                return fileTime(wall);
+            }
+        }
+
+        if (dateParser == null) {
+            dateParser = new SimpleDateFormat("MM/dd/yyyy HH:mm:ss:SSS");
+            dateParser.setTimeZone(zone);
+        }
+        try {
+            return dateParser.parse(text).getTime();
+        } catch (ParseException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * @return the value of count decimal digits, or -1 if any isn't a digit
+     */
+    private static int digits(String text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y != 0 && (x < 0) != (y < 0)) ? q - 1 : q;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+/**
+ * Remembers which port each PINPoint was last found on, and its firmware
+ * version, so that reconnecting to a known device takes one handshake
+ * instead of a sweep of every port. Kept in the Java preferences next to
+ * the conversions, in a node of its own.
+ */
+public class DeviceCache {
+
+    private static final String NODE = "devices";
+    private static final String SEPARATOR = "|";
+
+    private DeviceCache() {
+    }
+
+    private static Preferences node() {
+        return Preferences.userNodeForPackage(DeviceCache.class).node(NODE);
+    }
+
+    /**
+     * Records where a PINPoint was just found.
+     *
+     * @param serialNumber the PINPoint's serial number
+     * @param port the port it answered on
+     * @param firmwareVersion the version it reported in its handshake
+     */
+    public static void remember(int serialNumber, String port, String firmwareVersion) {
+        if (serialNumber == -1 || port == null || port.length() == 0) {
+            return;
+        }
+
+        node().put(Integer.toString(serialNumber), port + SEPARATOR + firmwareVersion + SEPARATOR + System.currentTimeMillis());
+    }
+
+    /**
+     * Forgets a PINPoint, for instance once its port has been taken by
+     * something else.
+     *
+     * @param serialNumber the PINPoint's serial number
+     */
+    public static void forget(int serialNumber) {
+        node().remove(Integer.toString(serialNumber));
+    }
+
+    /**
+     * @param serialNumber the PINPoint's serial number
+     * @return the port it was last found on, or null if it isn't known
+     */
+    public static String getPort(int serialNumber) {
+        String[] entry = entry(Integer.toString(serialNumber));
+        return entry == null ? null : entry[0];
+    }
+
+    /**
+     * @param serialNumber the PINPoint's serial number
+     * @return the firmware version it last reported, or null if it isn't known
+     */
+    public static String getFirmwareVersion(int serialNumber) {
+        String[] entry = entry(Integer.toString(serialNumber));
+        return entry == null ? null : entry[1];
+    }
+
+    /**
+     * @param port a port name
+     * @return the serial number of the PINPoint most recently found on the
+     * port, or -1 if none is known
+     */
+    public static int getSerialNumber(String port) {
+        int serialNumber = -1;
+        long lastSeen = Long.MIN_VALUE;
+
+        try {
+            for (String key : node().keys()) {
+                String[] entry = entry(key);
+                if (entry != null && entry[0].equals(port) && Long.parseLong(entry[2]) > lastSeen
+                        && key.matches("\\d+")) {
+                    serialNumber = Integer.parseInt(key);
+                    lastSeen = Long.parseLong(entry[2]);
+                }
+            }
+        } catch (BackingStoreException ex) {
+            System.err.println("Could not read the device cache");
+        }
+        return serialNumber;
+    }
+
+    /**
+     * Every port a PINPoint has been found on, most recently used first and
+     * without duplicates.
+     *
+     * @return ArrayList<String>
+     */
+    public static ArrayList<String> getKnownPorts() {
+        final ArrayList<String[]> entries = new ArrayList<String[]>();
+
+        try {
+            for (String key : node().keys()) {
+                String[] entry = entry(key);
+                if (entry != null) {
+                    entries.add(entry);
+                }
+            }
+        } catch (BackingStoreException ex) {
+            System.err.println("Could not read the device cache");
+        }
+
+        Collections.sort(entries, new Comparator<String[]>() {
+
+            public int compare(String[] a, String[] b) {
+                long x = Long.parseLong(a[2]);
+                long y = Long.parseLong(b[2]);
+                return x > y ? -1 : (x == y ? 0 : 1);
+            }
+        });
+
+        ArrayList<String> ports = new ArrayList<String>();
+        for (String[] entry : entries) {
+            if (!ports.contains(entry[0])) {
+                ports.add(entry[0]);
+            }
+        }
+        return ports;
+    }
+
+    /**
+     * @return port, firmware version and time last seen, or null if the
+     * entry is missing or unreadable
+     */
+    private static String[] entry(String key) {
+        String value = node().get(key, null);
+        if (value == null) {
+            return null;
+        }
+
+        String[] entry = value.split("\\" + SEPARATOR);
+        if (entry.length != 3) {
+            return null;
+        }
+        try {
+            Long.parseLong(entry[2]);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+        return entry;
+    }
+}
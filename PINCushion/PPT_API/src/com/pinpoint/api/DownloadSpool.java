@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Raw records already downloaded from one PINPoint, kept on disk so an
+ * interrupted download can pick up where it stopped and a later one only
+ * has to fetch what was recorded since. Only records whose checksum
+ * matched are ever added, so everything in the spool can be trusted.
+ *
+ * The file is nothing but the PINPoint's 32 byte records in order, named
+ * after its serial number.
+ */
+public class DownloadSpool {
+
+    private static final int RECORD_SIZE = RecordDecoder.RECORD_SIZE;
+    private final File file;
+    private int records;
+
+    private DownloadSpool(File file, int records) {
+        this.file = file;
+        this.records = records;
+    }
+
+    /**
+     * Where spools are kept unless told otherwise.
+     *
+     * @return ~/.pinpoint/spool
+     */
+    public static File getDefaultDirectory() {
+        return new File(new File(System.getProperty("user.home"), ".pinpoint"), "spool");
+    }
+
+    /**
+     * Opens the spool for a PINPoint, creating it if there isn't one. Any
+     * partial record left by an interrupted write is dropped.
+     *
+     * @param directory where spools are kept
+     * @param serialNumber the PINPoint's serial number
+     * @return DownloadSpool
+     * @throws IOException if the spool can't be created
+     */
+    public static DownloadSpool open(File directory, int serialNumber) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+
+        File file = new File(directory, serialNumber + ".spool");
+        long length = file.length();
+        if (length % RECORD_SIZE != 0) {
+            truncate(file, length - length % RECORD_SIZE);
+        }
+
+        return new DownloadSpool(file, (int) (length / RECORD_SIZE));
+    }
+
+    /**
+     * @return how many records are spooled, which is also the first record
+     * still to be downloaded
+     */
+    public int getRecordCount() {
+        return records;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * The first record spooled, used to tell whether the PINPoint still
+     * holds the same session or has been cleared since.
+     *
+     * @return the record, or null if the spool is empty
+     * @throws IOException
+     */
+    public byte[] getFirstRecord() throws IOException {
+        if (records == 0) {
+            return null;
+        }
+
+        byte[] record = new byte[RECORD_SIZE];
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            in.readFully(record);
+        } finally {
+            in.close();
+        }
+        return record;
+    }
+
+    /**
+     * Adds checked records to the end of the spool and flushes them to disk
+     * before returning, so they survive a crash.
+     *
+     * @param data the records, back to back
+     * @param count how many records to take from data
+     * @throws IOException
+     */
+    public void append(byte[] data, int count) throws IOException {
+        FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            out.write(data, 0, count * RECORD_SIZE);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        records += count;
+    }
+
+    /**
+     * Empties the spool, for when the PINPoint has been cleared.
+     *
+     * @throws IOException
+     */
+    public void reset() throws IOException {
+        truncate(file, 0);
+        records = 0;
+    }
+
+    /**
+     * Reads every spooled record.
+     *
+     * @return the records, back to back
+     * @throws IOException
+     */
+    public byte[] readAll() throws IOException {
+        byte[] data = new byte[records * RECORD_SIZE];
+        //Nothing may have been written yet, not even the file.
+        if (records == 0) {
+            return data;
+        }
+
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            in.readFully(data);
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+
+    /**
+     * Feeds every spooled record to a listener as if it had just been
+     * downloaded.
+     *
+     * @param listener gets each record, then downloadFinished(true)
+     * @throws IOException
+     */
+    public void replay(RecordListener listener) throws IOException {
+        byte[] data = readAll();
+
+        for (int i = 0; i < records; i++) {
+            byte[] record = new byte[RECORD_SIZE];
+            System.arraycopy(data, i * RECORD_SIZE, record, 0, RECORD_SIZE);
+            listener.recordReceived(record);
+        }
+        listener.downloadFinished(true);
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+import com.pinpoint.exceptions.IncompatibleConversionException;
+import com.pinpoint.exceptions.IncorrectDeviceException;
+import com.pinpoint.exceptions.NoConnectionException;
+import com.pinpoint.exceptions.NoDataException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Downloads every PINPoint docked at a station at the same time, one thread
+ * per device, so a full dock takes as long as its slowest PINPoint rather
+ * than the sum of them all. Each device is closed once its download is done.
+ */
+public class DownloadStation {
+
+    //Records between progress reports.
+    private static final int PROGRESS_RECORDS = 64;
+    private final ArrayList<String[]> conversions;
+
+    /**
+     * @param conversions the sensor conversions, from
+     * pinpointInterface.GetConversions()
+     */
+    public DownloadStation(ArrayList<String[]> conversions) {
+        this.conversions = conversions;
+    }
+
+    /**
+     * Finds every PINPoint plugged in and downloads them all. The
+     * ConnectionManager's connection is closed first so that its PINPoint is
+     * found too. A port that still can't be opened gets a failed result,
+     * named by the serial number last seen on it, instead of being left out.
+     *
+     * @param listener told about each device as it goes, or null
+     * @return one result per device, ordered by serial number, then one for
+     * each port that couldn't be opened
+     * @throws IncorrectDeviceException
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public List<Result> downloadAll(StationListener listener) throws IncorrectDeviceException, IOException, InterruptedException {
+        ConnectionManager.getInstance().close();
+
+        PortScan<PinComm> scan = AutoDetectDevices.scan(Integer.MAX_VALUE, AutoDetectDevices.DETECT_DEADLINE_MS);
+        List<Result> results = download(scan.getDevices(), listener);
+
+        for (PortScan.Port port : scan.getPorts()) {
+            if (port.getStatus().equals(PortScan.Port.UNAVAILABLE)
+                    || port.getStatus().equals(PortScan.Port.UNFINISHED)) {
+                Result result = new Result(port.getPort());
+                result.serialNumber = DeviceCache.getSerialNumber(port.getPort());
+                result.error = "Could not open the port, it may be in use";
+                results.add(result);
+                if (listener != null) {
+                    listener.downloadFinished(result);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Downloads the given PINPoints, all at once.
+     *
+     * @param devices open PINPoints, which are closed when done
+     * @param listener told about each device as it goes, or null
+     * @return one result per device, ordered by serial number
+     * @throws InterruptedException
+     */
+    public List<Result> download(List<PinComm> devices, StationListener listener) throws InterruptedException {
+        List<Result> results = new ArrayList<Result>();
+
+        if (devices.isEmpty()) {
+            return results;
+        }
+
+        List<Worker> workers = new ArrayList<Worker>();
+        for (PinComm device : devices) {
+            workers.add(new Worker(device, listener));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers.size());
+        try {
+            for (Future<Result> result : pool.invokeAll(workers)) {
+                try {
+                    results.add(result.get());
+                } catch (ExecutionException ex) {
+                    //Workers catch everything themselves.
+                    throw new IllegalStateException(ex.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Collections.sort(results, new Comparator<Result>() {
+
+            public int compare(Result a, Result b) {
+                return a.serialNumber < b.serialNumber ? -1 : (a.serialNumber == b.serialNumber ? 0 : 1);
+            }
+        });
+
+        return results;
+    }
+
+    /**
+     * Downloads one PINPoint.
+     */
+    private class Worker implements Callable<Result> {
+
+        private final PinComm device;
+        private final StationListener listener;
+
+        Worker(PinComm device, StationListener listener) {
+            this.device = device;
+            this.listener = listener;
+        }
+
+        public Result call() {
+            final Result result = new Result(device.getPort());
+            long start = System.currentTimeMillis();
+
+            try {
+                result.serialNumber = device.getSerialNumber();
+
+                HashMap<Integer, Integer> settings = device.GetSettings();
+                PinpointConverter converter = new PinpointConverter(settings, conversions);
+                result.tableHeaders = converter.getTableHeaders();
+                result.fileHeaders = converter.getFileHeaders();
+
+                byte[] dh = device.getDataHeader();
+                final int numRecords = (((dh[0]) << 16) + ((dh[1] & 255) << 8) + (dh[2] & 255)) / 32;
+                result.rows = new ArrayList<String[]>(numRecords);
+
+                if (listener != null) {
+                    listener.downloadStarted(result.serialNumber, result.port, numRecords);
+                }
+
+                final RecordPipeline pipeline = new RecordPipeline(converter, settings.get(PinComm.SAMPLE_RATE), new RecordSink() {
+
+                    public void rowConverted(String[] values) {
+                        result.rows.add(values);
+                    }
+
+                    public void conversionFinished(boolean checksumValid) {
+                    }
+                });
+
+                result.valid = device.requestData(dh, numRecords, new RecordListener() {
+
+                    private int received = 0;
+
+                    public void recordReceived(byte[] record) {
+                        pipeline.recordReceived(record);
+                        received++;
+
+                        if (listener != null && (received % PROGRESS_RECORDS == 0 || received == numRecords)) {
+                            listener.downloadProgress(result.serialNumber, received, numRecords);
+                        }
+                    }
+
+                    public void downloadFinished(boolean checksumValid) {
+                        pipeline.downloadFinished(checksumValid);
+                    }
+                });
+
+                result.transferRate = device.getLastTransferRate();
+                result.transferStats = device.getLastTransferStats();
+                if (!result.valid) {
+                    result.error = "The data was corrupted during the upload";
+                }
+
+            } catch (NoDataException ex) {
+                result.valid = true;
+                result.error = "No data was found on the PINPoint";
+            } catch (IncompatibleConversionException ex) {
+                result.error = "Conversions file mismatch";
+            } catch (NoConnectionException ex) {
+                result.error = "Lost the connection to the PINPoint";
+            } catch (IOException ex) {
+                result.error = "The PINPoint stopped responding";
+            } catch (RuntimeException ex) {
+                result.error = ex.toString();
+            } finally {
+                try {
+                    device.close();
+                } catch (IOException ex) {
+                    System.err.println("Error closing the PINPoint on " + result.port);
+                }
+            }
+
+            result.elapsed = System.currentTimeMillis() - start;
+
+            if (listener != null) {
+                listener.downloadFinished(result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * What came off one PINPoint.
+     */
+    public static class Result {
+
+        private final String port;
+        private int serialNumber = -1;
+        private ArrayList<String[]> rows = new ArrayList<String[]>();
+        private String[] tableHeaders = PinpointConverter.getDefaultTableHeaders();
+        private String[] fileHeaders = PinpointConverter.getDefaultFileHeaders();
+        private boolean valid = false;
+        private String error = null;
+        private long elapsed = 0;
+        private double transferRate = 0.0;
+        private TransferStats transferStats = null;
+
+        Result(String port) {
+            this.port = port;
+        }
+
+        public String getPort() {
+            return port;
+        }
+
+        /**
+         * @return the serial number, the one last seen on the port if the
+         * port couldn't be opened, or -1 if it isn't known
+         */
+        public int getSerialNumber() {
+            return serialNumber;
+        }
+
+        /**
+         * @return the converted, time fixed rows, laid out as in
+         * PinpointConverter.getDefaultTableHeaders()
+         */
+        public ArrayList<String[]> getRows() {
+            return rows;
+        }
+
+        public String[] getTableHeaders() {
+            return tableHeaders;
+        }
+
+        public String[] getFileHeaders() {
+            return fileHeaders;
+        }
+
+        /**
+         * @return true if every record arrived intact, including when the
+         * PINPoint held no data
+         */
+        public boolean isValid() {
+            return valid;
+        }
+
+        /**
+         * @return why the download failed or came back empty, or null
+         */
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * @return milliseconds from start to finish for this device
+         */
+        public long getElapsedMillis() {
+            return elapsed;
+        }
+
+        /**
+         * @return the throughput of the transfer in bytes per second
+         */
+        public double getTransferRate() {
+            return transferRate;
+        }
+
+        /**
+         * @return how many chunks had to be fetched again, or null if the
+         * download never started
+         */
+        public TransferStats getTransferStats() {
+            return transferStats;
+        }
+
+        @Override
+        public String toString() {
+            return "PINPoint " + serialNumber + " on " + port + ": " + rows.size() + " records in "
+                    + (elapsed / 1000.0) + " s" + (error == null ? "" : " (" + error + ")");
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+import com.pinpoint.exceptions.InvalidHexException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Firmware as the bytes that end up in flash: whole pages, each with a
+ * CRC, and a map of which address ranges the HEX file meant to fill.
+ * It is about half the size of the HEX text, and once built it is kept
+ * next to the .hex file so later updates skip parsing the text.
+ *
+ * The bootloader ignores record addresses. It writes the data of every
+ * record it is sent one after another from address 0, and pads the last
+ * page with 0xFF at the end of file record, so the pages here are laid out
+ * the same way. A file whose records don't run on from address 0 will not
+ * end up where its addresses say; isContiguous() tells which files are safe.
+ *
+ * Bootloaders so far only take HEX lines, so this image is not what is
+ * sent; it is what the flash should hold once the HEX lines have been.
+ */
+public class FirmwareImage {
+
+    //SPM_PAGESIZE of the ATmega324P the PINPoint is built on.
+    public static final int PAGE_SIZE = 128;
+    //Added to the .hex file's name for the cached image.
+    public static final String CACHE_SUFFIX = ".img";
+    private static final int MAGIC = 0x50504657; //"PPFW"
+    //Version 1 caches laid pages out by address and are rebuilt.
+    private static final int VERSION = 2;
+    private final byte[][] pages;
+    private final int[] crcs;
+    private final long[][] ranges;
+    private final boolean contiguous;
+
+    private FirmwareImage(byte[][] pages, int[] crcs, long[][] ranges, boolean contiguous) {
+        this.pages = pages;
+        this.crcs = crcs;
+        this.ranges = ranges;
+        this.contiguous = contiguous;
+    }
+
+    /**
+     * Gets the image for a HEX file, from its cache if that is up to date,
+     * otherwise by converting the file and caching the result. A cache that
+     * can't be written is not an error.
+     *
+     * @param hexFile path to the .hex file
+     * @return FirmwareImage
+     * @throws IOException if the HEX file can't be read
+     * @throws InvalidHexException if the HEX file is invalid
+     */
+    public static FirmwareImage forHex(String hexFile) throws IOException, InvalidHexException {
+        File source = new File(hexFile);
+        File cache = new File(hexFile + CACHE_SUFFIX);
+
+        if (cache.exists()) {
+            try {
+                FirmwareImage image = read(cache, source);
+                if (image != null) {
+                    return image;
+                }
+            } catch (IOException ex) {
+                System.err.println("Ignoring unreadable firmware cache " + cache);
+            }
+        }
+
+        FirmwareImage image = fromHex(HexImage.load(hexFile));
+        try {
+            image.write(cache, source);
+        } catch (IOException ex) {
+            System.err.println("Could not cache firmware image in " + cache);
+        }
+        return image;
+    }
+
+    /**
+     * Lays the records of a HEX file out as pages, the way the bootloader
+     * writes them.
+     *
+     * @param hex a parsed HEX file
+     * @return FirmwareImage
+     */
+    public static FirmwareImage fromHex(HexImage hex) {
+        ArrayList<long[]> map = new ArrayList<long[]>();
+        ByteArrayOutputStream flash = new ByteArrayOutputStream();
+        long data = 0;
+
+        for (HexImage.Record r : hex.getRecords()) {
+            if (r.type == HexImage.END_OF_FILE) {
+                break;
+            }
+            //The bootloader writes the data of every record, whatever its type.
+            flash.write(r.data, 0, r.data.length);
+
+            if (r.type != HexImage.DATA || r.data.length == 0) {
+                continue;
+            }
+            data += r.data.length;
+            long[] last = map.isEmpty() ? null : map.get(map.size() - 1);
+            if (last != null && last[0] + last[1] == r.address) {
+                last[1] += r.data.length;
+            } else {
+                map.add(new long[]{r.address, r.data.length});
+            }
+        }
+
+        byte[] bytes = flash.toByteArray();
+        int count = Math.max(1, (bytes.length + PAGE_SIZE - 1) / PAGE_SIZE);
+        byte[][] pages = new byte[count][PAGE_SIZE];
+        int[] crcs = new int[count];
+        for (int i = 0; i < count; i++) {
+            int from = i * PAGE_SIZE;
+            int length = Math.max(0, Math.min(PAGE_SIZE, bytes.length - from));
+            System.arraycopy(bytes, from, pages[i], 0, length);
+            Arrays.fill(pages[i], length, PAGE_SIZE, (byte) 0xFF);
+            crcs[i] = crc16(pages[i]);
+        }
+
+        boolean contiguous = data == bytes.length
+                && (map.isEmpty() || (map.size() == 1 && map.get(0)[0] == 0));
+
+        return new FirmwareImage(pages, crcs, map.toArray(new long[map.size()][]), contiguous);
+    }
+
+    /**
+     * Reads a cached image. The header, source stamp and every page CRC are
+     * checked in one pass through the file.
+     *
+     * @return the image, or null if the cache is stale or damaged
+     */
+    private static FirmwareImage read(File cache, File source) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(HexImage.readFile(cache)));
+
+        if (in.readInt() != MAGIC || in.readByte() != VERSION || in.readShort() != PAGE_SIZE) {
+            return null;
+        }
+        if (in.readLong() != source.length() || in.readLong() != source.lastModified()) {
+            return null;
+        }
+        boolean contiguous = in.readBoolean();
+
+        long[][] ranges = new long[in.readUnsignedShort()][];
+        for (int i = 0; i < ranges.length; i++) {
+            ranges[i] = new long[]{in.readInt() & 0xFFFFFFFFL, in.readInt() & 0xFFFFFFFFL};
+        }
+
+        int count = in.readUnsignedShort();
+        byte[][] pages = new byte[count][PAGE_SIZE];
+        int[] crcs = new int[count];
+        for (int i = 0; i < count; i++) {
+            crcs[i] = in.readUnsignedShort();
+            in.readFully(pages[i]);
+            if (crc16(pages[i]) != crcs[i]) {
+                return null;
+            }
+        }
+
+        return new FirmwareImage(pages, crcs, ranges, contiguous);
+    }
+
+    private void write(File cache, File source) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + pages.length * (PAGE_SIZE + 2));
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeShort(PAGE_SIZE);
+        out.writeLong(source.length());
+        out.writeLong(source.lastModified());
+        out.writeBoolean(contiguous);
+        out.writeShort(ranges.length);
+        for (long[] range : ranges) {
+            out.writeInt((int) range[0]);
+            out.writeInt((int) range[1]);
+        }
+        out.writeShort(pages.length);
+        for (int i = 0; i < pages.length; i++) {
+            out.writeShort(crcs[i]);
+            out.write(pages[i]);
+        }
+
+        FileOutputStream file = new FileOutputStream(cache);
+        try {
+            bytes.writeTo(file);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * CRC-16/XMODEM, as avr-libc's _crc_xmodem_update computes it.
+     */
+    static int crc16(byte[] data) {
+        int crc = 0;
+
+        for (byte b : data) {
+            crc ^= (b & 255) << 8;
+            for (int i = 0; i < 8; i++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            crc &= 0xFFFF;
+        }
+        return crc;
+    }
+
+    /**
+     * Whether the bootloader will put every byte at the address the HEX
+     * file gives it: the file is one run of data records from address 0
+     * and has no other records with data.
+     *
+     * @return boolean
+     */
+    public boolean isContiguous() {
+        return contiguous;
+    }
+
+    /**
+     * @return the number of flash pages the firmware covers
+     */
+    public int getPageCount() {
+        return pages.length;
+    }
+
+    /**
+     * @param index page number
+     * @return a copy of the page as it will be written
+     */
+    public byte[] getPage(int index) {
+        return pages[index].clone();
+    }
+
+    /**
+     * @param index page number
+     * @return the page's CRC-16/XMODEM
+     */
+    public int getPageCrc(int index) {
+        return crcs[index];
+    }
+
+    /**
+     * The address ranges the HEX file filled, in file order.
+     *
+     * @return a {start, length} pair for each run of consecutive bytes
+     */
+    public List<long[]> getAddressMap() {
+        return Collections.unmodifiableList(Arrays.asList(ranges));
+    }
+
+    /**
+     * @return the number of bytes that will be written to flash
+     */
+    public int getSize() {
+        return pages.length * PAGE_SIZE;
+    }
+}
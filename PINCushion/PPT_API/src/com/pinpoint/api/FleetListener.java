@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+/**
+ * Hears about each BootPoint as a FleetUpdater works through it. Calls come
+ * from the flashing threads, several at once, so implementations must be
+ * thread safe and GUIs should hand the work to their own thread.
+ */
+public interface FleetListener {
+
+    /**
+     * Called when the bootloader on a port is ready and flashing starts.
+     *
+     * @param port the port the BootPoint is on
+     * @param records how many records the image has
+     */
+    void flashStarted(String port, int records);
+
+    /**
+     * Called after each record the bootloader accepts.
+     *
+     * @param port the port the BootPoint is on
+     * @param sent how many records have been accepted
+     * @param records how many records the image has
+     * @param etaMillis estimated time left for this device
+     */
+    void flashProgress(String port, int sent, int records, long etaMillis);
+
+    /**
+     * Called once for every device, whether or not its update worked.
+     *
+     * @param result how the update went
+     */
+    void flashFinished(FleetUpdater.Result result);
+}
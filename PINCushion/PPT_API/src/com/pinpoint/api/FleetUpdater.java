@@ -0,0 +1,415 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+import com.pinpoint.exceptions.IncorrectDeviceException;
+import com.pinpoint.exceptions.InvalidHexException;
+import com.pinpoint.exceptions.NoConnectionException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Updates the firmware on every BootPoint plugged in at the same time, one
+ * thread per device, all from one parsed image. After flashing, each device
+ * is opened again as a PINPoint, and it only counts as updated if it reports
+ * the firmware version the image was built as. Devices are named in the
+ * report by the serial number they read back, or failing that by the one
+ * the DeviceCache last saw on their port.
+ */
+public class FleetUpdater {
+
+    //Longest to wait for the new firmware to answer a handshake.
+    public static final long VERIFY_TIMEOUT_MS = 10000;
+    //Pause between handshakes while waiting for the new firmware.
+    private static final long VERIFY_RETRY_MS = 500;
+    private final HexImage image;
+    private final String expectedVersion;
+
+    /**
+     * @param image the firmware to send to every device
+     * @param expectedVersion the version the new firmware reports in its
+     * handshake, such as "6.7"
+     */
+    public FleetUpdater(HexImage image, String expectedVersion) {
+        this.image = image;
+        this.expectedVersion = expectedVersion;
+    }
+
+    /**
+     * Sets the bootloader flag on every PINPoint plugged in and resets them,
+     * so they come back up as BootPoints ready to be updated. A port that
+     * can't be opened, usually because something else holds it, may have a
+     * PINPoint on it that is left running its old firmware, so it is
+     * reported rather than skipped. Close any ConnectionManager first.
+     *
+     * @return a failed result for every port that couldn't be switched over
+     */
+    public static List<Result> enterBootloaders() {
+        List<Result> failures = new ArrayList<Result>();
+        int count = 0;
+
+        PortScan<PinComm> scan = AutoDetectDevices.scan(Integer.MAX_VALUE, AutoDetectDevices.DETECT_DEADLINE_MS);
+        for (PortScan.Port port : scan.getPorts()) {
+            if (port.getStatus().equals(PortScan.Port.UNAVAILABLE)
+                    || port.getStatus().equals(PortScan.Port.UNFINISHED)) {
+                failures.add(failure(port.getPort(), "Could not open the port to start the bootloader"));
+            }
+        }
+
+        for (PinComm device : scan.getDevices()) {
+            String port = device.getPort();
+            try {
+                device.initiateBootloader();
+                device.resetPinpoint();
+                count++;
+            } catch (NoConnectionException ex) {
+                failures.add(failure(port, "Lost the PINPoint before starting the bootloader"));
+            } finally {
+                try {
+                    device.close();
+                } catch (IOException ex) {
+                    System.err.println("Error closing the PINPoint on " + port);
+                }
+            }
+        }
+
+        System.out.println(count + " PINPoint(s) switched to the bootloader, " + failures.size() + " port(s) could not be");
+        return failures;
+    }
+
+    private static Result failure(String port, String error) {
+        Result result = new Result(port);
+        result.cachedSerialNumber = DeviceCache.getSerialNumber(port);
+        result.error = error;
+        return result;
+    }
+
+    /**
+     * Finds every BootPoint plugged in and updates them all.
+     *
+     * @param listener told about each device as it goes, or null
+     * @return one result per device, ordered by serial number
+     * @throws IncorrectDeviceException
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public List<Result> updateAll(FleetListener listener) throws IncorrectDeviceException, IOException, InterruptedException {
+        return update(AutoDetectBootloader.detectAll(), listener);
+    }
+
+    /**
+     * Updates the given BootPoints, all at once.
+     *
+     * @param devices open BootPoints, which are closed when done
+     * @param listener told about each device as it goes, or null
+     * @return one result per device, ordered by serial number, with devices
+     * that didn't come back last
+     * @throws InterruptedException
+     */
+    public List<Result> update(List<BootComm> devices, FleetListener listener) throws InterruptedException {
+        List<Result> results = new ArrayList<Result>();
+
+        if (devices.isEmpty()) {
+            return results;
+        }
+
+        List<Worker> workers = new ArrayList<Worker>();
+        for (BootComm device : devices) {
+            workers.add(new Worker(device, listener));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers.size());
+        try {
+            for (Future<Result> result : pool.invokeAll(workers)) {
+                try {
+                    results.add(result.get());
+                } catch (ExecutionException ex) {
+                    //Workers catch everything themselves.
+                    throw new IllegalStateException(ex.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Collections.sort(results, new Comparator<Result>() {
+
+            public int compare(Result a, Result b) {
+                long x = a.getKnownSerialNumber() < 0 ? Long.MAX_VALUE : a.getKnownSerialNumber();
+                long y = b.getKnownSerialNumber() < 0 ? Long.MAX_VALUE : b.getKnownSerialNumber();
+                return x < y ? -1 : (x == y ? a.port.compareTo(b.port) : 1);
+            }
+        });
+
+        return results;
+    }
+
+    /**
+     * Lays out results one device per line, for printing or saving.
+     *
+     * @param results from update or updateAll
+     * @return String
+     */
+    public static String report(List<Result> results) {
+        StringBuilder sb = new StringBuilder();
+        int updated = 0;
+
+        for (Result r : results) {
+            sb.append(r).append('\n');
+            if (r.isVerified()) {
+                updated++;
+            }
+        }
+        sb.append(updated).append(" of ").append(results.size()).append(" PINPoints updated\n");
+
+        return sb.toString();
+    }
+
+    /**
+     * Flashes and checks one device.
+     */
+    private class Worker implements Callable<Result> {
+
+        private final BootComm device;
+        private final FleetListener listener;
+
+        Worker(BootComm device, FleetListener listener) {
+            this.device = device;
+            this.listener = listener;
+        }
+
+        public Result call() {
+            final Result result = new Result(device.getPort());
+            result.cachedSerialNumber = DeviceCache.getSerialNumber(result.port);
+            long start = System.currentTimeMillis();
+
+            try {
+                if (!device.sendP()) {
+                    result.error = "The bootloader didn't start flashing";
+                } else {
+                    if (listener != null) {
+                        listener.flashStarted(result.port, image.getRecordCount());
+                    }
+
+                    result.flashed = device.flash(image, new FlashListener() {
+
+                        public void flashProgress(int sent, int records, long etaMillis) {
+                            if (listener != null) {
+                                listener.flashProgress(result.port, sent, records, etaMillis);
+                            }
+                        }
+                    });
+                    if (!result.flashed) {
+                        result.error = "The bootloader stopped accepting records";
+                    }
+                }
+            } catch (InvalidHexException ex) {
+                result.error = "Bootloader error: " + ex.GetErrorType();
+            } catch (IOException ex) {
+                result.error = "The bootloader stopped responding";
+            } catch (RuntimeException ex) {
+                result.error = ex.toString();
+            } finally {
+                try {
+                    device.close();
+                } catch (IOException ex) {
+                    System.err.println("Error closing the BootPoint on " + result.port);
+                }
+            }
+            result.flashMillis = System.currentTimeMillis() - start;
+
+            if (result.flashed) {
+                verify(result);
+            }
+            result.elapsed = System.currentTimeMillis() - start;
+
+            if (listener != null) {
+                listener.flashFinished(result);
+            }
+            return result;
+        }
+
+        /**
+         * Waits for the new firmware to answer on the same port and reads
+         * back who it is and which version it runs.
+         */
+        private void verify(Result result) {
+            long deadline = System.currentTimeMillis() + VERIFY_TIMEOUT_MS;
+
+            while (System.currentTimeMillis() < deadline) {
+                PinComm pinpoint;
+                try {
+                    pinpoint = PinComm.instantiate(result.port);
+                } catch (IncorrectDeviceException ex) {
+                    pinpoint = null;
+                } catch (IOException ex) {
+                    pinpoint = null;
+                }
+
+                if (pinpoint != null) {
+                    try {
+                        result.serialNumber = pinpoint.getSerialNumber();
+                        result.firmwareVersion = pinpoint.getFirmwareVersion();
+                        DeviceCache.remember(result.serialNumber, result.port, result.firmwareVersion);
+                        if (!expectedVersion.equals(result.firmwareVersion)) {
+                            result.error = "Firmware " + result.firmwareVersion + " answered, expected " + expectedVersion;
+                        } else if (result.serialNumber < 0) {
+                            result.error = "Couldn't read the serial number after updating";
+                        } else {
+                            result.verified = true;
+                        }
+                    } catch (NoConnectionException ex) {
+                        result.error = "Lost the PINPoint after updating";
+                    } finally {
+                        try {
+                            pinpoint.close();
+                        } catch (IOException ex) {
+                            System.err.println("Error closing the PINPoint on " + result.port);
+                        }
+                    }
+                    return;
+                }
+
+                try {
+                    Thread.sleep(VERIFY_RETRY_MS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            result.error = "The new firmware didn't answer";
+        }
+    }
+
+    /**
+     * How the update went on one device.
+     */
+    public static class Result {
+
+        private final String port;
+        private int serialNumber = -1;
+        private int cachedSerialNumber = -1;
+        private String firmwareVersion = "";
+        private boolean flashed = false;
+        private boolean verified = false;
+        private String error = null;
+        private long flashMillis = 0;
+        private long elapsed = 0;
+
+        Result(String port) {
+            this.port = port;
+        }
+
+        public String getPort() {
+            return port;
+        }
+
+        /**
+         * @return the serial number read back after updating, or -1 if the
+         * device didn't come back
+         */
+        public int getSerialNumber() {
+            return serialNumber;
+        }
+
+        /**
+         * @return the serial number read back after updating, or else the
+         * one the DeviceCache last saw on this port, or -1 if neither is known
+         */
+        public int getKnownSerialNumber() {
+            return serialNumber >= 0 ? serialNumber : cachedSerialNumber;
+        }
+
+        /**
+         * @return the firmware version the device reported after updating
+         */
+        public String getFirmwareVersion() {
+            return firmwareVersion;
+        }
+
+        /**
+         * @return true if every record was accepted by the bootloader
+         */
+        public boolean isFlashed() {
+            return flashed;
+        }
+
+        /**
+         * @return true if the device was flashed and then answered as a
+         * PINPoint running the expected firmware version
+         */
+        public boolean isVerified() {
+            return verified;
+        }
+
+        /**
+         * @return why the update failed, or null
+         */
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * @return milliseconds spent sending the firmware
+         */
+        public long getFlashMillis() {
+            return flashMillis;
+        }
+
+        /**
+         * @return milliseconds from start to finish, including the check
+         */
+        public long getElapsedMillis() {
+            return elapsed;
+        }
+
+        @Override
+        public String toString() {
+            String who;
+            if (serialNumber >= 0) {
+                who = "PINPoint " + serialNumber;
+            } else if (cachedSerialNumber >= 0) {
+                who = "PINPoint " + cachedSerialNumber + " (last seen here)";
+            } else {
+                who = "Unknown PINPoint";
+            }
+            String status = verified ? "updated to firmware " + firmwareVersion : "FAILED";
+
+            return who + " on " + port + ": " + status + " in " + (elapsed / 1000.0) + " s"
+                    + (error == null ? "" : " (" + error + ")");
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+import com.pinpoint.exceptions.InvalidHexException;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A firmware image read from an Intel HEX file. The file is parsed and
+ * checked once, and every record is turned straight into the bytes the
+ * bootloader is sent for it, so flashing is just writing frames.
+ */
+public class HexImage {
+
+    public static final int DATA = 0x00;
+    public static final int END_OF_FILE = 0x01;
+    public static final int EXTENDED_SEGMENT_ADDRESS = 0x02;
+    public static final int EXTENDED_LINEAR_ADDRESS = 0x04;
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    private final ArrayList<Record> records;
+    private final long frameBytes;
+    private final int dataBytes;
+
+    private HexImage(ArrayList<Record> records) {
+        long frames = 0;
+        int data = 0;
+
+        for (Record r : records) {
+            frames += r.frame.length;
+            data += r.data.length;
+        }
+
+        this.records = records;
+        this.frameBytes = frames;
+        this.dataBytes = data;
+    }
+
+    /**
+     * Reads and checks a HEX file in one pass over its bytes. Blank lines
+     * are skipped, and so is anything after the end of file record.
+     *
+     * @param file path to the .hex file
+     * @return HexImage
+     * @throws IOException if the file can't be read
+     * @throws InvalidHexException if a line isn't a valid record
+     */
+    public static HexImage load(String file) throws IOException, InvalidHexException {
+        byte[] text = readFile(new File(file));
+        ArrayList<Record> records = new ArrayList<Record>();
+        //Largest record: count, two address bytes, type, 255 data, checksum.
+        byte[] raw = new byte[260];
+        long base = 0;
+        int pos = 0;
+
+        while (pos < text.length) {
+            byte c = text[pos];
+            if (c == '\r' || c == '\n' || c == ' ' || c == '\t') {
+                pos++;
+                continue;
+            }
+            if (c != ':') {
+                throw new InvalidHexException(InvalidHexException.NO_COLON);
+            }
+            pos++;
+
+            int length = 0;
+            int sum = 0;
+            while (pos < text.length && text[pos] != '\r' && text[pos] != '\n') {
+                int high = digit(text[pos]);
+                int low = pos + 1 < text.length ? digit(text[pos + 1]) : -1;
+                if (high < 0 || low < 0 || length == raw.length) {
+                    throw new InvalidHexException(InvalidHexException.BYTE_COUNT_ERROR);
+                }
+                raw[length] = (byte) ((high << 4) + low);
+                sum += raw[length++];
+                pos += 2;
+            }
+
+            if (length < 5 || (raw[0] & 255) + 5 != length) {
+                throw new InvalidHexException(InvalidHexException.BYTE_COUNT_ERROR);
+            }
+            if ((sum & 255) != 0) {
+                throw new InvalidHexException(InvalidHexException.INVALID_CHECKSUM);
+            }
+
+            Record r = record(raw, length, base);
+            records.add(r);
+
+            if (r.type == END_OF_FILE) {
+                break;
+            } else if (r.type == EXTENDED_SEGMENT_ADDRESS) {
+                base = (long) word(r.data) << 4;
+            } else if (r.type == EXTENDED_LINEAR_ADDRESS) {
+                base = (long) word(r.data) << 16;
+            }
+        }
+
+        return new HexImage(records);
+    }
+
+    private static Record record(byte[] raw, int length, long base) {
+        int offset = ((raw[1] & 255) << 8) + (raw[2] & 255);
+        byte[] data = new byte[length - 5];
+        byte[] bytes = new byte[length];
+
+        System.arraycopy(raw, 4, data, 0, data.length);
+        System.arraycopy(raw, 0, bytes, 0, length);
+
+        return new Record(raw[3] & 255, base + offset, data, encode(bytes));
+    }
+
+    private static int digit(byte c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return -1;
+    }
+
+    static byte[] readFile(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            int read = 0;
+            while (read < bytes.length) {
+                int n = in.read(bytes, read, bytes.length - read);
+                if (n < 0) {
+                    throw new EOFException();
+                }
+                read += n;
+            }
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * The record as sent to the bootloader: the line in upper case hex, as
+     * its hex decoding only knows upper case, ending in CR LF.
+     */
+    private static byte[] encode(byte[] raw) {
+        byte[] frame = new byte[raw.length * 2 + 3];
+        int i = 0;
+
+        frame[i++] = (byte) ':';
+        for (byte b : raw) {
+            frame[i++] = (byte) HEX_DIGITS[(b >> 4) & 15];
+            frame[i++] = (byte) HEX_DIGITS[b & 15];
+        }
+        frame[i++] = (byte) '\r';
+        frame[i] = (byte) '\n';
+
+        return frame;
+    }
+
+    private static int word(byte[] data) {
+        return data.length < 2 ? 0 : ((data[0] & 255) << 8) + (data[1] & 255);
+    }
+
+    /**
+     * @return the number of records, including the end of file record
+     */
+    public int getRecordCount() {
+        return records.size();
+    }
+
+    /**
+     * @return the number of bytes sent to flash the whole image
+     */
+    public long getFrameBytes() {
+        return frameBytes;
+    }
+
+    /**
+     * @return the number of firmware bytes in the image
+     */
+    public int getDataBytes() {
+        return dataBytes;
+    }
+
+    /**
+     * @return true if the image finishes with an end of file record
+     */
+    public boolean isComplete() {
+        return !records.isEmpty() && records.get(records.size() - 1).type == END_OF_FILE;
+    }
+
+    Record getRecord(int index) {
+        return records.get(index);
+    }
+
+    List<Record> getRecords() {
+        return Collections.unmodifiableList(records);
+    }
+
+    /**
+     * One record of the file.
+     */
+    static class Record {
+
+        final int type;
+        //Absolute address, with any extended address record applied.
+        final long address;
+        final byte[] data;
+        final byte[] frame;
+
+        Record(int type, long address, byte[] data, byte[] frame) {
+            this.type = type;
+            this.address = address;
+            this.data = data;
+            this.frame = frame;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+import com.pinpoint.exceptions.IncompatibleConversionException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Converts a raw dump of PINPoint records using every processor. The dump is
+ * cut into chunks which are converted and time fixed independently, then the
+ * seconds that straddle chunk boundaries are stamped again as a whole.
+ */
+public class ParallelConverter {
+
+    //Records per task. Small enough to balance across threads, large enough
+    //that a second never spans more than two chunks in practice.
+    private static final int CHUNK_RECORDS = 4096;
+    private final HashMap<Integer, Integer> settings;
+    private final int threads;
+    private final PinpointConverter converter;
+
+    /**
+     * @param settings the settings read from the PINPoint
+     * @param conversions the sensor conversions
+     * @throws IncompatibleConversionException
+     */
+    public ParallelConverter(HashMap<Integer, Integer> settings, ArrayList<String[]> conversions) throws IncompatibleConversionException {
+        this(settings, conversions, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param settings the settings read from the PINPoint
+     * @param conversions the sensor conversions
+     * @param threads how many threads to convert with
+     * @throws IncompatibleConversionException
+     */
+    public ParallelConverter(HashMap<Integer, Integer> settings, ArrayList<String[]> conversions, int threads) throws IncompatibleConversionException {
+        this.converter = new PinpointConverter(settings, conversions);
+        this.settings = settings;
+        this.threads = Math.max(threads, 1);
+    }
+
+    /**
+     * The converter shared by the workers.
+     *
+     * @return PinpointConverter
+     */
+    public PinpointConverter getConverter() {
+        return converter;
+    }
+
+    /**
+     * Converts a dump and fixes its time stamps.
+     *
+     * @param dump the records as read from the PINPoint, 32 bytes each
+     * @param numRecords how many records the dump holds
+     * @return the converted rows, in order
+     * @throws InterruptedException if interrupted while waiting for workers
+     */
+    public ArrayList<String[]> convert(final byte[] dump, final int numRecords) throws InterruptedException {
+        final String[][] rows = new String[numRecords][];
+        final int sampleRate = settings.get(PinComm.SAMPLE_RATE);
+        int chunks = (numRecords + CHUNK_RECORDS - 1) / CHUNK_RECORDS;
+
+        if (chunks <= 1 || threads == 1) {
+            new ChunkTask(dump, rows, 0, numRecords, sampleRate).call();
+            return new ArrayList<String[]>(Arrays.asList(rows));
+        }
+
+        List<ChunkTask> tasks = new ArrayList<ChunkTask>(chunks);
+        for (int start = 0; start < numRecords; start += CHUNK_RECORDS) {
+            tasks.add(new ChunkTask(dump, rows, start, Math.min(start + CHUNK_RECORDS, numRecords), sampleRate));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, chunks));
+        try {
+            for (Future<Object> result : pool.invokeAll(tasks)) {
+                try {
+                    result.get();
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) ex.getCause();
+                    }
+                    throw new RuntimeException(ex.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        if (sampleRate > 0 && sampleRate < 1000) {
+            for (int boundary = CHUNK_RECORDS; boundary < numRecords; boundary += CHUNK_RECORDS) {
+                restampBoundary(rows, boundary, sampleRate);
+            }
+        }
+
+        return new ArrayList<String[]>(Arrays.asList(rows));
+    }
+
+    /**
+     * Each chunk only saw its own half of a second that crosses its edge, so
+     * stamp that whole second again. Stamping only rewrites the
+     * milliseconds, so doing it twice is harmless.
+     */
+    private static void restampBoundary(String[][] rows, int boundary, int sampleRate) {
+        String second = rows[boundary - 1][0].substring(0, 19);
+        if (!rows[boundary][0].startsWith(second)) {
+            return;
+        }
+
+        int start = boundary - 1;
+        while (start > 0 && rows[start - 1][0].startsWith(second)) {
+            start--;
+        }
+        int end = boundary + 1;
+        while (end < rows.length && rows[end][0].startsWith(second)) {
+            end++;
+        }
+
+        TimeFixWindow window = new TimeFixWindow(sampleRate, null);
+        for (int i = start; i < end; i++) {
+            window.add(rows[i]);
+        }
+        window.flush();
+    }
+
+    /**
+     * Converts one slice of the dump into the matching slice of the rows.
+     */
+    private class ChunkTask implements Callable<Object> {
+
+        private final byte[] dump;
+        private final String[][] rows;
+        private final int start;
+        private final int end;
+        private final int sampleRate;
+
+        ChunkTask(byte[] dump, String[][] rows, int start, int end, int sampleRate) {
+            this.dump = dump;
+            this.rows = rows;
+            this.start = start;
+            this.end = end;
+            this.sampleRate = sampleRate;
+        }
+
+        public Object call() {
+            TimeFixWindow window = null;
+            if (sampleRate > 0 && sampleRate < 1000) {
+                window = new TimeFixWindow(sampleRate, null);
+            }
+
+            for (int i = start; i < end; i++) {
+                rows[i] = converter.convertAll(dump, i * RecordDecoder.RECORD_SIZE);
+
+                if (window != null) {
+                    window.add(rows[i]);
+                }
+            }
+
+            if (window != null) {
+                window.flush();
+            }
+            return null;
+        }
+    }
+}
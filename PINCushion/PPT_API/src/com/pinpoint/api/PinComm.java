@@ -82,22 +82,67 @@ public class PinComm {
     private static final byte EEPROM_SN_THREE = (byte) 0xFE;
     private static final byte EEPROM_SN_FOUR = (byte) 0xFF;
     private static final byte BOOTLOADER_FLAG = (byte) 0xFB;
+    private static final byte EEPROM_SETTINGS_PAGE = (byte) 0x00;
+    private static final byte EEPROM_ID_PAGE = (byte) 0x03;
+    //Settings that live in the EEPROM, in the order they are read.
+    private static final int SETTINGS = 6;
+    //Number of settings GetSettings has always reported.
+    private static final int SETTINGS_REPORTED = 14;
+    //EEPROM reads allowed in flight at once. Each is three bytes and the
+    //PINPoint's command buffer holds 20.
+    private static final int EEPROM_WINDOW = 6;
+    //EEPROM writes allowed in flight at once; each is four bytes.
+    private static final int EEPROM_WRITE_WINDOW = 4;
+    //Times a setting is written before giving up on it.
+    private static final int WRITE_ATTEMPTS = 3;
     //PINPoint record information
     private static final int RECORD_SIZE = 32;
+    //Number of records pulled off the serial line per bulk read.
+    private static final int BULK_RECORDS = 64;
+    //Bits on the wire per byte at 8N1 (start + 8 data + stop).
+    private static final int BITS_PER_BYTE = 10;
+    //Slack given to each bulk read on top of its time on the wire.
+    private static final int BULK_TIMEOUT_MS = 1500;
+    //Records per checked request. Each chunk has its own checksum, so one
+    //bad byte costs 8 KB, well under a second at 115200, not the whole dump.
+    static final int CHUNK_RECORDS = 256;
+    //Times a chunk is asked for before the download is given up.
+    private static final int CHUNK_ATTEMPTS = 5;
+    //Silence that shows the PINPoint has stopped sending a failed chunk.
+    private static final long DRAIN_QUIET_MS = 100;
     private SerialChannel spi;
-    private Double firmwareVersion = 0.0;
+    private String firmwareVersion = "";
+    private double lastTransferRate = 0.0;
+    private TransferStats lastTransferStats = null;
+    //Settings read from the EEPROM, or null until they are needed again.
+    private int[] settings = null;
 
     private PinComm(SerialChannel spi) {
         this.spi = spi;
     }
 
     public static PinComm instantiate(String port) throws IOException, IncorrectDeviceException {
+        return instantiate(port, PinComm.BAUD_RATE);
+    }
+
+    /**
+     * Connects at a baud rate other than the PINPoint's usual one, such as
+     * when it sits behind a Bluetooth module configured for a slower rate.
+     * Download timeouts are worked out from the rate given.
+     *
+     * @param port
+     * @param baudRate
+     * @return PinComm
+     * @throws IOException
+     * @throws IncorrectDeviceException
+     */
+    public static PinComm instantiate(String port, int baudRate) throws IOException, IncorrectDeviceException {
         //Attempt to open the port, looking for a PinPoint
         SerialChannel spi = new SerialChannel();
 
         try {
             //Try to open the port with the correct specs
-            spi.open(port, PinComm.BAUD_RATE, PinComm.FLOW_CONTROL);
+            spi.open(port, baudRate, PinComm.FLOW_CONTROL);
         } catch (PortInUseException e) {
             System.err.println("Port In Use");
             throw new IncorrectDeviceException();
@@ -140,7 +185,8 @@ public class PinComm {
                 if (reply == RESPONSE) {
                     short temp0 = (short) (spi.readByte() & 255);
                     short temp1 = (short) (spi.readByte() & 255);
-                    System.out.println("Firmware version: " + temp0 + "." + Integer.toHexString((int) temp1));
+                    firmwareVersion = temp0 + "." + Integer.toHexString((int) temp1);
+                    System.out.println("Firmware version: " + firmwareVersion);
                     return true;
                 } else if (reply != RESPONSE) {
                     System.out.println("Response recieved: " + reply + " , not a PINPoint");
@@ -163,6 +209,40 @@ public class PinComm {
         return "pinpoint";
     }
 
+    /**
+     * Checks that the PINPoint still answers, with the same handshake used
+     * to find it.
+     *
+     * @return false if the port has closed or the PINPoint didn't reply
+     */
+    public boolean isResponding() {
+        if (!spi.isOpen()) {
+            return false;
+        }
+
+        try {
+            spi.clear();
+            spi.writeByte(HANDSHAKE);
+            if (spi.readByte() == RESPONSE) {
+                spi.readByte();
+                spi.readByte();
+                return true;
+            }
+        } catch (IOException ex) {
+            System.err.println("No reply to the handshake");
+        }
+        return false;
+    }
+
+    /**
+     * The firmware version the PINPoint reported when it was opened.
+     *
+     * @return String, such as "6.7"
+     */
+    public String getFirmwareVersion() {
+        return firmwareVersion;
+    }
+
     public String getPort() {
         if (spi.isOpen()) {
             return spi.getPortName();
@@ -200,226 +280,283 @@ public class PinComm {
     }
 
     /**
-     * Communicates with the pinpoint to get back a raw copy of the requested
-     * page of flash memory of the pinpoint.
+     * Streams every record on the PINPoint to a listener, reading the serial
+     * line in large blocks. Records are requested in chunks of
+     * CHUNK_RECORDS, each with its own checksum, and are passed on once
+     * their chunk checks out. A chunk that arrives damaged or stops
+     * arriving is asked for again, up to CHUNK_ATTEMPTS times. The achieved
+     * throughput is printed once the transfer completes and can be read back
+     * with getLastTransferRate and getLastTransferStats.
      *
      * @param dataHeader
      * @param numRecords
-     * @return ArrayList<byte[]>
-     * @throws IOException
+     * @param listener
+     * @return true if every chunk's checksum matched
+     * @throws IOException if the PINPoint stops sending altogether
      * @throws NoConnectionException
      */
-    public ArrayList<byte[]> requestData(byte[] dataHeader, int numRecords) throws NoConnectionException, IOException {
-
-        ArrayList<byte[]> data = new ArrayList<byte[]>();
-
-        // If the serial line is open.
-        if (spi.isOpen()) {
-
-            //Clear the line
-            spi.clear();
-
-            System.out.println("Requesting data...");
-
-            //Tell the pinpoint we will be requesting a page.
-            spi.writeByte(READ_PAGE);
-
-            //Tell the pinpoint which page we are starting at.
-            spi.writeByte((byte) 0);
-            spi.writeByte((byte) 0);
-            spi.writeByte((byte) 0);
+    public boolean requestData(byte[] dataHeader, int numRecords, RecordListener listener) throws NoConnectionException, IOException {
+        return requestRange(0, numRecords, listener);
+    }
 
-            //Tell the pinpoint which page we are stopping at.
-            spi.writeByte((byte) dataHeader[0]);
-            spi.writeByte((byte) dataHeader[1]);
-            spi.writeByte((byte) dataHeader[2]);
+    /**
+     * Streams a run of records from the PINPoint, starting part way through
+     * its memory, in checked chunks as requestData does.
+     *
+     * @param firstRecord index of the first record wanted
+     * @param numRecords how many records to read
+     * @param listener
+     * @return true if every chunk's checksum matched
+     * @throws IOException if the PINPoint stops sending altogether
+     * @throws NoConnectionException
+     */
+    public boolean requestRange(int firstRecord, int numRecords, RecordListener listener) throws NoConnectionException, IOException {
 
-            byte computedChecksum = (byte) 0;
+        if (!spi.isOpen()) {
+            throw new NoConnectionException();
+        }
 
-            //Read each byte back from the serial line and place it into the raw storage.
-            try {
-                System.out.println("Recieving data...");
-                long StartTime = System.currentTimeMillis();
-                for (int i = 0; i < numRecords; i++) {
-                    //Raw storage for the response.
-                    byte[] records = new byte[RECORD_SIZE];
-                    for (int j = 0; j < RECORD_SIZE; j++) {
-                        records[j] = spi.readByte();
-                        computedChecksum = (byte) (computedChecksum + (byte) records[j]);
+        TransferStats stats = new TransferStats();
+        lastTransferStats = stats;
+        byte[] chunk = new byte[Math.min(numRecords, CHUNK_RECORDS) * RECORD_SIZE];
+        boolean valid = true;
+
+        System.out.println("Requesting data...");
+        long startTime = System.currentTimeMillis();
+
+        for (int done = 0; done < numRecords && valid;) {
+            int records = Math.min(CHUNK_RECORDS, numRecords - done);
+
+            valid = false;
+            for (int attempt = 1; attempt <= CHUNK_ATTEMPTS && !valid; attempt++) {
+                try {
+                    valid = readChunk(firstRecord + done, records, chunk, stats);
+                    if (!valid) {
+                        stats.checksumFailed();
+                        System.err.println("Checksum did not match for records " + (firstRecord + done)
+                                + " to " + (firstRecord + done + records));
+                        drain();
+                    }
+                } catch (IOException ex) {
+                    stats.timedOut();
+                    System.err.println("Timed out on records " + (firstRecord + done) + " to " + (firstRecord + done + records));
+                    drain();
+                    if (attempt == CHUNK_ATTEMPTS) {
+                        throw ex;
                     }
-                    data.add(records);
                 }
-                byte readChecksum = spi.readByte();
-
-                long FinishTime = System.currentTimeMillis();
-                System.out.println("Upload finished in " + ((FinishTime - StartTime) / 1000) + " seconds");
-
-                if (computedChecksum != readChecksum) {
-                    System.err.println("Checksum did not match");
-                    return null;
+            }
 
-                } else {
-                    System.out.println("Finished uploading data");
-                    return data;
+            if (valid) {
+                for (int i = 0; i < records; i++) {
+                    byte[] record = new byte[RECORD_SIZE];
+                    System.arraycopy(chunk, i * RECORD_SIZE, record, 0, RECORD_SIZE);
+                    listener.recordReceived(record);
                 }
-
-            } catch (ArrayIndexOutOfBoundsException e) {
-                System.err.println("ArrayIndexOutOfBoundsException thrown while requesting data");
-            } catch (Exception e) {
-                System.err.append("Exception thrown while requesting data");
+                stats.chunkDelivered(records * RECORD_SIZE);
+                done += records;
             }
+        }
 
+        long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+        double theoretical = (double) spi.getBaudRate() / BITS_PER_BYTE;
+        stats.finished(elapsed);
+        lastTransferRate = stats.getBytesReceived() * 1000.0 / elapsed;
 
+        System.out.println("Upload finished in " + (elapsed / 1000.0) + " seconds: "
+                + (long) lastTransferRate + " bytes/s of a possible " + (long) theoretical
+                + " bytes/s (" + Math.round(100 * lastTransferRate / theoretical) + "%)");
+        System.out.println(stats);
 
-            //Return the raw values.
-            return data;
+        if (!valid) {
+            System.err.println("Gave up after " + CHUNK_ATTEMPTS + " attempts at one chunk");
+        } else {
+            System.out.println("Finished uploading data");
         }
 
-        //Faied return null.
-        return null;
+        listener.downloadFinished(valid);
+        return valid;
     }
 
     /**
-     * Returns the value stored in the PINPoints EEPROM for the
-     * requested settings
+     * Requests one chunk of records and reads it and its checksum into
+     * buffer.
      *
-     * @param hByte
-     * @param lByte
-     * @return int
-     * @throws NoConnectionException
+     * @return true if the checksum matched
+     * @throws IOException if the chunk stopped arriving
      */
-    private int getSetting(byte hByte, byte lByte)  {
-        short high, low;
-        if (spi.isOpen()) {
-            try {
-                spi.clear();
-                spi.writeByte(READ_EEPROM);
-
-                spi.writeByte((byte) 0x00);
-                spi.writeByte(hByte);
-                high = (short) (spi.readByte() & 255);
-
-                spi.clear();
+    private boolean readChunk(int firstRecord, int records, byte[] buffer, TransferStats stats) throws IOException {
+        int start = firstRecord * RECORD_SIZE;
+        int size = records * RECORD_SIZE;
+        long timeout = (size * BITS_PER_BYTE * 1000L) / spi.getBaudRate() + BULK_TIMEOUT_MS;
+
+        spi.clear();
+        stats.chunkRequested();
+
+        //Read page command, then the start address and length in bytes.
+        spi.writeBytes(new byte[]{READ_PAGE,
+                    (byte) (start >> 16), (byte) (start >> 8), (byte) start,
+                    (byte) (size >> 16), (byte) (size >> 8), (byte) size});
+
+        int got = spi.readBytes(buffer, 0, size, timeout);
+        stats.received(got);
+        if (got != size) {
+            throw new IOException();
+        }
 
-                spi.writeByte(READ_EEPROM);
-                spi.writeByte((byte) 0x00);
-                spi.writeByte(lByte);
+        byte computedChecksum = (byte) 0;
+        for (int i = 0; i < size; i++) {
+            computedChecksum += buffer[i];
+        }
 
-                low = (short) (spi.readByte() & 255);
+        byte readChecksum = spi.readByte();
+        stats.received(1);
 
-                return ((high << 8) + low);
+        return computedChecksum == readChecksum;
+    }
 
-            } catch (IOException e) {
-                System.err.println("IOException thrown while trying to request EEPROM settings!");
+    /**
+     * Reads and throws away whatever is left of a failed chunk, until the
+     * line goes quiet, so it isn't mistaken for the start of the retry.
+     */
+    private void drain() {
+        byte[] scratch = new byte[BULK_RECORDS * RECORD_SIZE];
+        try {
+            while (spi.readBytes(scratch, 0, scratch.length, DRAIN_QUIET_MS) > 0) {
             }
+            spi.clear();
+        } catch (IOException ex) {
+            System.err.println("IOException while clearing the line");
         }
-       return -1;
     }
 
     /**
-     * Returns the value stored in the PINPoints EEPROM for the
-     * requested settings
+     * What happened during the last download.
      *
-     * @param sByte
-     * @return int
-     * @throws NoConnectionException
+     * @return TransferStats, or null if nothing has been downloaded
      */
-    private int getSetting(byte sByte) {
-        short high;
-        if (spi.isOpen()) {
-            try {
-                spi.clear();
-                spi.writeByte(READ_EEPROM);
-                spi.writeByte((byte) 0x00);
-                spi.writeByte(sByte);
-                high = (short) (spi.readByte() & 255);
-                return high;
-            } catch (IOException e) {
-                System.err.println("IOException thrown while trying to request EEPROM settings!");
+    public TransferStats getLastTransferStats() {
+        return lastTransferStats;
+    }
+
+    /**
+     * Returns the throughput of the last bulk download in bytes per second.
+     *
+     * @return double
+     */
+    public double getLastTransferRate() {
+        return lastTransferRate;
+    }
+
+    /**
+     * Reads a run of EEPROM bytes in one burst. Requests are written ahead
+     * of their replies, keeping up to EEPROM_WINDOW outstanding, so the
+     * whole run costs about one round trip instead of one per byte.
+     *
+     * @param page the EEPROM page
+     * @param addresses the addresses to read within the page
+     * @return the bytes read, in the order requested
+     * @throws IOException if any reply doesn't arrive
+     */
+    private int[] readEeprom(byte page, byte[] addresses) throws IOException {
+        int[] values = new int[addresses.length];
+        int sent = 0;
+
+        spi.clear();
+        for (int received = 0; received < addresses.length; received++) {
+            int window = Math.min(received + EEPROM_WINDOW, addresses.length);
+            if (sent < window) {
+                byte[] requests = new byte[(window - sent) * 3];
+                for (int i = 0; sent < window; sent++) {
+                    requests[i++] = READ_EEPROM;
+                    requests[i++] = page;
+                    requests[i++] = addresses[sent];
+                }
+                spi.writeBytes(requests);
             }
+            values[received] = spi.readByte() & 255;
         }
-        return -1;
+
+        return values;
     }
 
     /**
-     * Allows EEPROM settings to be requested simply
+     * Reads every setting from the EEPROM, unless they have already been
+     * read and not changed since.
      *
-     * @param request
-     * @return int
-     * @throws NoConnectionException
+     * @return the settings, indexed by SAMPLE_RATE, BTA1 and so on, or null
+     * if the PINPoint didn't answer
      */
-    public int getSetting(int request) {
+    private int[] loadSettings() {
+        if (settings != null) {
+            return settings;
+        }
+        if (!spi.isOpen()) {
+            return null;
+        }
 
-        switch (request) {
-            case SAMPLE_RATE:
-                return getSetting(EEPROM_SAMPLE_HIGH, EEPROM_SAMPLE_LOW);
-            case BTA1:
-                return getSetting(EEPROM_BTA1_TYPE);
-            case BTA2:
-                return getSetting(EEPROM_BTA2_TYPE);
-            case MINI1:
-                return getSetting(EEPROM_MINI1_TYPE);
-            case MINI2:
-                return getSetting(EEPROM_MINI2_TYPE);
-            case GPS:
-                return getSetting(EEPROM_GPS);
+        try {
+            int[] bytes = readEeprom(EEPROM_SETTINGS_PAGE, new byte[]{
+                        EEPROM_SAMPLE_HIGH, EEPROM_SAMPLE_LOW,
+                        EEPROM_BTA1_TYPE, EEPROM_BTA2_TYPE,
+                        EEPROM_MINI1_TYPE, EEPROM_MINI2_TYPE,
+                        EEPROM_GPS});
+
+            int[] loaded = new int[SETTINGS];
+            loaded[SAMPLE_RATE] = (bytes[0] << 8) + bytes[1];
+            for (int i = BTA1; i <= GPS; i++) {
+                loaded[i] = bytes[i + 1];
+            }
+            settings = loaded;
+        } catch (IOException e) {
+            System.err.println("IOException thrown while trying to request EEPROM settings!");
         }
-        return -1;
+        return settings;
     }
 
     /**
-     * Sets the value of the desired setting in the PINPoints EEPROM
+     * Allows EEPROM settings to be requested simply. The first request reads
+     * every setting at once; later ones are answered from that copy until a
+     * setting is changed.
      *
-     * @param hByte
-     * @param lByte
-     * @param value
-     * @throws NoConnectionException
+     * @param request
+     * @return int
      */
-    private void setSetting(byte hByte, byte lByte, int value) throws NoConnectionException {
-        if (spi.isOpen()) {
-            try {
-                spi.clear();
-                spi.writeByte(WRITE_EEPROM);
-                spi.writeByte((byte) 0x0);
-                spi.writeByte(hByte);
-                spi.writeByte((byte) ((value >> 8) & 0xFF));
-                spi.clear();
-                spi.writeByte(WRITE_EEPROM);
-                spi.writeByte((byte) 0x00);
-                spi.writeByte(lByte);
-                spi.writeByte((byte) (value & 0xFF));
-                spi.readByte();
-            } catch (IOException e) {
-                System.err.println("IOException thrown while trying to set EEPROM settings!");
-            }
-        } else {
-            throw new NoConnectionException();
+    public int getSetting(int request) {
+        if (request < 0 || request >= SETTINGS) {
+            return -1;
         }
 
+        int[] current = loadSettings();
+        return current == null ? -1 : current[request];
     }
 
     /**
-     * Sets the value of the desired setting in the PINPoints EEPROM
+     * Writes a run of EEPROM bytes in one burst, keeping up to
+     * EEPROM_WRITE_WINDOW writes ahead of their acknowledgements.
      *
-     * @param sByte
-     * @param value
-     * @throws NoConnectionException
+     * @param page the EEPROM page
+     * @param addresses the addresses to write within the page
+     * @param values the byte to write at each address
+     * @throws IOException if an acknowledgement doesn't arrive
      */
-    private void setSetting(byte sByte, int value) throws NoConnectionException {
-        if (spi.isOpen()) {
-            try {
-                spi.clear();
-                spi.writeByte(WRITE_EEPROM);
-                spi.writeByte((byte) 0x00);
-                spi.writeByte(sByte);
-                spi.writeByte((byte) (value & 0xFF));
-                spi.clear();
-                spi.readByte();
-            } catch (IOException e) {
-                System.err.println("IOException thrown while trying to set EEPROM settings");
+    private void writeEeprom(byte page, byte[] addresses, byte[] values) throws IOException {
+        int sent = 0;
+
+        spi.clear();
+        for (int acked = 0; acked < addresses.length; acked++) {
+            int window = Math.min(acked + EEPROM_WRITE_WINDOW, addresses.length);
+            if (sent < window) {
+                byte[] requests = new byte[(window - sent) * 4];
+                for (int i = 0; sent < window; sent++) {
+                    requests[i++] = WRITE_EEPROM;
+                    requests[i++] = page;
+                    requests[i++] = addresses[sent];
+                    requests[i++] = values[sent];
+                }
+                spi.writeBytes(requests);
             }
-        } else {
-            throw new NoConnectionException();
+            spi.readByte();
         }
     }
 
@@ -429,47 +566,119 @@ public class PinComm {
      *
      * @param request
      * @param value
+     * @return true if the setting read back as written
      * @throws NoConnectionException
      */
-    public void setSetting(int request, int value) throws NoConnectionException {
-        switch (request) {
-            case SAMPLE_RATE:
-                setSetting(EEPROM_SAMPLE_HIGH, EEPROM_SAMPLE_LOW, value);
-                break;
-            case BTA1:
-                setSetting(EEPROM_BTA1_TYPE, value);
-                break;
-            case BTA2:
-                setSetting(EEPROM_BTA2_TYPE, value);
-                break;
-            case MINI1:
-                setSetting(EEPROM_MINI1_TYPE, value);
-                break;
-            case MINI2:
-                setSetting(EEPROM_MINI2_TYPE, value);
-                break;
-            case GPS:
-                setSetting(EEPROM_GPS, value);
-                break;
-        }
-
+    public boolean setSetting(int request, int value) throws NoConnectionException {
+        HashMap<Integer, Integer> change = new HashMap<Integer, Integer>();
+        change.put(request, value);
+        return SetMultipleSettings(change);
     }
 
     /**
      * Sets all of the eeprom settings represented as KEYs in the hashmap to 
      * their corresponding VALUE in the hashmap.
+     *
+     * All of the bytes are written in one burst and read back in another.
+     * Only the bytes that didn't read back as written are tried again, up to
+     * WRITE_ATTEMPTS times in all. Nothing is written if any of the keys
+     * isn't a setting this method knows.
      * 
      * @param changes
+     * @return true if every setting read back as written, false if one
+     * didn't or a key is unknown
      * @throws NoConnectionException
      */
-    public void SetMultipleSettings(HashMap<Integer, Integer> changes) throws NoConnectionException {
-        if (spi.isOpen()) {
-            Iterator<Integer> iter = changes.keySet().iterator();
-            while (iter.hasNext()) {
-                int x = iter.next();
-                this.setSetting(x, changes.get(x));
+    public boolean SetMultipleSettings(HashMap<Integer, Integer> changes) throws NoConnectionException {
+        if (!spi.isOpen()) {
+            throw new NoConnectionException();
+        }
+
+        //Every EEPROM byte the changes touch, and what it should hold.
+        ArrayList<Byte> addresses = new ArrayList<Byte>();
+        ArrayList<Byte> values = new ArrayList<Byte>();
+        Iterator<Integer> iter = changes.keySet().iterator();
+        while (iter.hasNext()) {
+            int setting = iter.next();
+            int value = changes.get(setting);
+            switch (setting) {
+                case SAMPLE_RATE:
+                    addresses.add(EEPROM_SAMPLE_HIGH);
+                    values.add((byte) ((value >> 8) & 0xFF));
+                    addresses.add(EEPROM_SAMPLE_LOW);
+                    values.add((byte) (value & 0xFF));
+                    break;
+                case BTA1:
+                    addresses.add(EEPROM_BTA1_TYPE);
+                    values.add((byte) value);
+                    break;
+                case BTA2:
+                    addresses.add(EEPROM_BTA2_TYPE);
+                    values.add((byte) value);
+                    break;
+                case MINI1:
+                    addresses.add(EEPROM_MINI1_TYPE);
+                    values.add((byte) value);
+                    break;
+                case MINI2:
+                    addresses.add(EEPROM_MINI2_TYPE);
+                    values.add((byte) value);
+                    break;
+                case GPS:
+                    addresses.add(EEPROM_GPS);
+                    values.add((byte) value);
+                    break;
+                default:
+                    System.err.println("Unknown setting " + setting + ", nothing was written");
+                    return false;
+            }
+        }
+
+        settings = null;
+
+        for (int attempt = 1; attempt <= WRITE_ATTEMPTS && !addresses.isEmpty(); attempt++) {
+            byte[] pendingAddresses = toBytes(addresses);
+            byte[] pendingValues = toBytes(values);
+
+            try {
+                writeEeprom(EEPROM_SETTINGS_PAGE, pendingAddresses, pendingValues);
+            } catch (IOException e) {
+                System.err.println("IOException thrown while trying to set EEPROM settings");
+                //Echoes still on their way would be read back as values.
+                drain();
+            }
+
+            int[] readBack;
+            try {
+                readBack = readEeprom(EEPROM_SETTINGS_PAGE, pendingAddresses);
+            } catch (IOException e) {
+                System.err.println("IOException thrown while checking EEPROM settings");
+                drain();
+                continue;
+            }
+
+            addresses.clear();
+            values.clear();
+            for (int i = 0; i < pendingAddresses.length; i++) {
+                if (readBack[i] != (pendingValues[i] & 255)) {
+                    addresses.add(pendingAddresses[i]);
+                    values.add(pendingValues[i]);
+                }
+            }
+            if (!addresses.isEmpty()) {
+                System.err.println(addresses.size() + " EEPROM settings didn't take on attempt " + attempt);
             }
         }
+
+        return addresses.isEmpty();
+    }
+
+    private static byte[] toBytes(ArrayList<Byte> list) {
+        byte[] bytes = new byte[list.size()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = list.get(i);
+        }
+        return bytes;
     }
 
     /**
@@ -480,13 +689,13 @@ public class PinComm {
      */
     public HashMap<Integer, Integer> GetSettings() {
 
-        HashMap<Integer, Integer> settings = new HashMap<Integer, Integer>();
+        HashMap<Integer, Integer> all = new HashMap<Integer, Integer>();
 
-        for (int i = 0; i < 14; i++) {
-            settings.put(i, this.getSetting(i));
+        for (int i = 0; i < SETTINGS_REPORTED; i++) {
+            all.put(i, this.getSetting(i));
         }
 
-        return settings;
+        return all;
     }
 
     /**
@@ -495,6 +704,7 @@ public class PinComm {
      * @throws NoConnectionException
      */
     public void resetPinpoint() throws NoConnectionException {
+        settings = null;
         if (spi.isOpen()) {
             try {
                 spi.writeByte((byte) RESET_PINPOINT);
@@ -614,33 +824,15 @@ public class PinComm {
      * @throws NoConnectionException
      */
     public int getSerialNumber() throws NoConnectionException {
-        short one, two, three, four;
         int serialNumber = -1;
 
         if (spi.isOpen()) {
             try {
+                int[] sn = readEeprom(EEPROM_ID_PAGE, new byte[]{
+                            EEPROM_SN_ONE, EEPROM_SN_TWO,
+                            EEPROM_SN_THREE, EEPROM_SN_FOUR});
 
-                spi.writeByte(READ_EEPROM);
-                spi.writeByte((byte) 0x03);
-                spi.writeByte((byte) EEPROM_SN_ONE);
-                one = (short) (spi.readByte() & 255);
-
-                spi.writeByte(READ_EEPROM);
-                spi.writeByte((byte) 0x03);
-                spi.writeByte((byte) EEPROM_SN_TWO);
-                two = (short) (spi.readByte() & 255);
-
-                spi.writeByte(READ_EEPROM);
-                spi.writeByte((byte) 0x03);
-                spi.writeByte((byte) EEPROM_SN_THREE);
-                three = (short) (spi.readByte() & 255);
-
-                spi.writeByte(READ_EEPROM);
-                spi.writeByte((byte) 0x03);
-                spi.writeByte((byte) EEPROM_SN_FOUR);
-                four = (short) (spi.readByte() & 255);
-
-                serialNumber = ((one << 24) + (two << 16) + (three << 8) + four);
+                serialNumber = ((sn[0] << 24) + (sn[1] << 16) + (sn[2] << 8) + sn[3]);
 
             } catch (IOException ex) {
                 System.err.println("IOException while trying to read serial number");
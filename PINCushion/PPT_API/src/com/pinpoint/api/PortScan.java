@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+import com.pinpoint.exceptions.IncorrectDeviceException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The outcome of probing every serial port for a device: the devices that
+ * answered, left open, and how long each port took.
+ *
+ * Ports are probed all at once, so a scan takes about as long as its
+ * slowest port instead of the sum of them. The scan returns as soon as
+ * enough devices have answered or the deadline passes; probes still running
+ * then finish in the background and close anything they find.
+ *
+ * @param <T> PinComm or BootComm
+ */
+public class PortScan<T> {
+
+    private final ArrayList<T> devices;
+    private final ArrayList<Port> ports;
+    private final long elapsed;
+
+    private PortScan(ArrayList<T> devices, ArrayList<Port> ports, long elapsed) {
+        this.devices = devices;
+        this.ports = ports;
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * @return the devices found, in the order they answered
+     */
+    public ArrayList<T> getDevices() {
+        return devices;
+    }
+
+    /**
+     * @return every port that was probed and how it went
+     */
+    public ArrayList<Port> getPorts() {
+        return ports;
+    }
+
+    /**
+     * @return milliseconds the whole scan took
+     */
+    public long getElapsedMillis() {
+        return elapsed;
+    }
+
+    /**
+     * Opens a device on a port, or fails.
+     */
+    interface Probe<T> {
+
+        T open(String port) throws IOException, IncorrectDeviceException;
+
+        void close(T device);
+    }
+
+    /**
+     * The serial ports worth probing on this machine.
+     */
+    static ArrayList<String> candidatePorts() {
+        ArrayList<String> candidates = new ArrayList<String>();
+        String os = System.getProperty("os.name");
+
+        for (String port : SerialChannel.enumeratePortNames()) {
+
+            if (SerialChannel.isVirtualPort(port)) {
+                candidates.add(port);
+                continue;
+            }
+
+            /* Fix for Mac to only connect to usbserial ports. This will decrease
+             * connection time and reduce error with opening Bluetooth ports.
+             */
+            if (os.contains("Mac") && !port.contains("usbserial")) {
+                continue;
+            }
+
+            /* Fix for Linux to only connect to USB ports since we will never
+             * connect to a Serial port
+             */
+            if (os.contains("Linux") && port.contains("ttyS0")) {
+                continue;
+            }
+
+            candidates.add(port);
+        }
+
+        return candidates;
+    }
+
+    /**
+     * Probes every port at once.
+     *
+     * @param ports the ports to probe
+     * @param probe opens a device on a port
+     * @param wanted how many devices to find before returning
+     * @param deadlineMs the longest to wait, in milliseconds
+     * @return PortScan
+     */
+    static <T> PortScan<T> scan(List<String> ports, final Probe<T> probe, final int wanted, long deadlineMs) {
+        final long start = System.currentTimeMillis();
+        final Scan<T> scan = new Scan<T>(ports.size());
+
+        if (ports.isEmpty()) {
+            return new PortScan<T>(new ArrayList<T>(), new ArrayList<Port>(), 0);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(ports.size(), new ThreadFactory() {
+
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Port probe");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        for (final String port : ports) {
+            pool.execute(new Runnable() {
+
+                public void run() {
+                    long probeStart = System.currentTimeMillis();
+                    T device = null;
+                    String status;
+
+                    try {
+                        device = probe.open(port);
+                        status = Port.FOUND;
+                    } catch (IncorrectDeviceException ex) {
+                        status = Port.UNAVAILABLE;
+                    } catch (IOException ex) {
+                        status = Port.NO_REPLY;
+                    } catch (RuntimeException ex) {
+                        status = Port.UNAVAILABLE;
+                    }
+
+                    Port result = new Port(port, status, System.currentTimeMillis() - probeStart);
+                    if (!scan.finish(result, device, wanted)) {
+                        probe.close(device);
+                    }
+                }
+            });
+        }
+
+        //Never interrupt a probe, it would leave its port open.
+        pool.shutdown();
+
+        scan.await(wanted, start + deadlineMs);
+
+        ArrayList<Port> results = scan.close(ports, System.currentTimeMillis() - start);
+        return new PortScan<T>(scan.found, results, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * State shared between the probes and the thread waiting on them.
+     */
+    private static class Scan<T> {
+
+        private final ArrayList<T> found = new ArrayList<T>();
+        private final ArrayList<Port> ports = new ArrayList<Port>();
+        private int pending;
+        private boolean closed = false;
+
+        Scan(int pending) {
+            this.pending = pending;
+        }
+
+        /**
+         * Records a finished probe.
+         *
+         * @return false if the device wasn't wanted and must be closed
+         */
+        synchronized boolean finish(Port port, T device, int wanted) {
+            boolean keep = true;
+
+            if (closed) {
+                keep = device == null;
+            } else {
+                ports.add(port);
+                if (device != null) {
+                    if (found.size() < wanted) {
+                        found.add(device);
+                    } else {
+                        keep = false;
+                    }
+                }
+            }
+
+            pending--;
+            notifyAll();
+            return keep;
+        }
+
+        synchronized void await(int wanted, long deadline) {
+            long now;
+            while (found.size() < wanted && pending > 0 && (now = System.currentTimeMillis()) < deadline) {
+                try {
+                    wait(deadline - now);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Stops accepting devices and lists every port, marking those still
+         * being probed.
+         */
+        synchronized ArrayList<Port> close(List<String> all, long elapsed) {
+            closed = true;
+
+            ArrayList<Port> results = new ArrayList<Port>(ports);
+            for (String port : all) {
+                boolean done = false;
+                for (Port p : ports) {
+                    done |= p.getPort().equals(port);
+                }
+                if (!done) {
+                    results.add(new Port(port, Port.UNFINISHED, elapsed));
+                }
+            }
+            return results;
+        }
+    }
+
+    /**
+     * How probing one port went.
+     */
+    public static class Port {
+
+        public static final String FOUND = "found";
+        public static final String NO_REPLY = "no reply";
+        public static final String UNAVAILABLE = "could not open";
+        public static final String UNFINISHED = "not finished";
+        private final String port;
+        private final String status;
+        private final long elapsed;
+
+        Port(String port, String status, long elapsed) {
+            this.port = port;
+            this.status = status;
+            this.elapsed = elapsed;
+        }
+
+        public String getPort() {
+            return port;
+        }
+
+        /**
+         * @return FOUND, NO_REPLY, UNAVAILABLE or UNFINISHED
+         */
+        public String getStatus() {
+            return status;
+        }
+
+        public long getElapsedMillis() {
+            return elapsed;
+        }
+
+        @Override
+        public String toString() {
+            return port + ": " + status + " (" + elapsed + " ms)";
+        }
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+import com.pinpoint.eval.CompiledExpression;
+import com.pinpoint.eval.Expression;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decodes 32 byte PINPoint records straight into doubles using bit
+ * arithmetic only. Values are left at full precision; RecordFormatter turns
+ * them into the strings PinpointConverter has always produced.
+ *
+ * Channels are laid out in the same order as
+ * PinpointConverter.getDefaultTableHeaders(). Time is milliseconds since the
+ * epoch (GMT) and readings the PINPoint marks as missing, such as latitude
+ * without a GPS fix, are NaN.
+ */
+public class RecordDecoder {
+
+    public static final int TIME = 0;
+    public static final int LATITUDE = 1;
+    public static final int LONGITUDE = 2;
+    public static final int ALTITUDE_GPS = 3;
+    public static final int ALTITUDE = 4;
+    public static final int PRESSURE = 5;
+    public static final int TEMPERATURE = 6;
+    public static final int HUMIDITY = 7;
+    public static final int LIGHT = 8;
+    public static final int ACCEL_X = 9;
+    public static final int ACCEL_Y = 10;
+    public static final int ACCEL_Z = 11;
+    public static final int ACCELERATION = 12;
+    public static final int BTA1 = 13;
+    public static final int BTA2 = 14;
+    public static final int MINI1 = 15;
+    public static final int MINI2 = 16;
+    public static final int CHANNELS = 17;
+    public static final int RECORD_SIZE = 32;
+    //Number of values a 10 bit analog reading can take.
+    public static final int ANALOG_RANGE = 1024;
+    //Value the PINPoint writes for lat/lon without a fix, after conversion.
+    private static final double NO_FIX = 200.0;
+    //Value the PINPoint writes for GPS altitude without a fix.
+    private static final int NO_GPS_ALTITUDE = 60000;
+    private static final double ACCEL_SCALE = 0.1533;
+    private static final double[] POW10 = {1, 10, 100, 1000, 10000, 100000};
+    private static final long MILLIS_PER_DAY = 86400000L;
+    private final Expression[] equations;
+    private final CompiledExpression[] compiled;
+    private final double[][] tables;
+    private final boolean exact;
+
+    /**
+     * Creates a decoder that evaluates the sensor equations in double
+     * arithmetic.
+     *
+     * @param bta1 the BTA1 equation in terms of x, or null for the raw reading
+     * @param bta2 the BTA2 equation in terms of x, or null for the raw reading
+     * @param mini1 the Mini1 equation in terms of x, or null for the raw reading
+     * @param mini2 the Mini2 equation in terms of x, or null for the raw reading
+     */
+    public RecordDecoder(Expression bta1, Expression bta2, Expression mini1, Expression mini2) {
+        this(bta1, bta2, mini1, mini2, false);
+    }
+
+    /**
+     * @param bta1 the BTA1 equation in terms of x, or null for the raw reading
+     * @param bta2 the BTA2 equation in terms of x, or null for the raw reading
+     * @param mini1 the Mini1 equation in terms of x, or null for the raw reading
+     * @param mini2 the Mini2 equation in terms of x, or null for the raw reading
+     * @param exact true to evaluate the equations with BigDecimal, which is
+     * much slower but matches Expression.eval to the last digit
+     */
+    public RecordDecoder(Expression bta1, Expression bta2, Expression mini1, Expression mini2, boolean exact) {
+        this.equations = new Expression[]{bta1, bta2, mini1, mini2};
+        this.compiled = new CompiledExpression[equations.length];
+        this.tables = new double[equations.length][];
+        this.exact = exact;
+
+        for (int i = 0; i < equations.length; i++) {
+            if (equations[i] != null) {
+                compiled[i] = equations[i].compile("x");
+                tables[i] = tabulate(equations[i]);
+            }
+        }
+    }
+
+    /**
+     * Every analog reading is one of 1024 values, so each equation is worked
+     * out once for all of them with exact BigDecimal arithmetic and records
+     * just look their value up. A reading the equation fails for, such as
+     * one that divides by zero, is left as NaN, which BigDecimal can never
+     * produce, and only that reading is evaluated record by record.
+     *
+     * @return the table, or null if the equation fails for every reading
+     */
+    private static double[] tabulate(Expression equation) {
+        double[] table = new double[ANALOG_RANGE];
+        Map<String, BigDecimal> variables = new HashMap<String, BigDecimal>();
+        String error = null;
+        int failed = 0;
+
+        for (int reading = 0; reading < ANALOG_RANGE; reading++) {
+            variables.put("x", new BigDecimal(reading));
+            try {
+                table[reading] = equation.eval(variables).doubleValue();
+            } catch (RuntimeException e) {
+                table[reading] = Double.NaN;
+                error = e.getMessage();
+                failed++;
+            }
+        }
+
+        if (failed > 0) {
+            System.err.println("Evaluating \"" + equation + "\" per record for " + failed
+                    + " of " + ANALOG_RANGE + " readings: " + error);
+        }
+        return failed == ANALOG_RANGE ? null : table;
+    }
+
+    /**
+     * Whether a channel's equation was tabulated when the decoder was built.
+     *
+     * @param channel BTA1, BTA2, MINI1 or MINI2
+     * @return false if the channel has no equation or its equation couldn't
+     * be tabulated for any reading
+     */
+    public boolean isTabulated(int channel) {
+        return tables[channel - BTA1] != null;
+    }
+
+    /**
+     * Whether one reading of a channel was tabulated when the decoder was
+     * built.
+     *
+     * @param channel BTA1, BTA2, MINI1 or MINI2
+     * @param reading a raw analog reading
+     * @return false if the channel isn't tabulated or its equation failed
+     * for this reading
+     */
+    public boolean isTabulated(int channel, int reading) {
+        double[] table = tables[channel - BTA1];
+        return table != null && !Double.isNaN(table[reading]);
+    }
+
+    /**
+     * Decodes one record.
+     *
+     * @param record the buffer holding the record
+     * @param offset where the record starts in the buffer
+     * @param values receives CHANNELS values
+     */
+    public void decode(byte[] record, int offset, double[] values) {
+        decodeFixed(record, offset, values);
+
+        for (int channel = BTA1; channel <= MINI2; channel++) {
+            values[channel] = analog(channel, analogReading(record, offset, channel));
+        }
+    }
+
+    /**
+     * Decodes one record from a buffer without disturbing its position.
+     *
+     * @param buffer the buffer holding the record
+     * @param position where the record starts in the buffer
+     * @param values receives CHANNELS values
+     */
+    public void decode(ByteBuffer buffer, int position, double[] values) {
+        if (buffer.hasArray()) {
+            decode(buffer.array(), buffer.arrayOffset() + position, values);
+        } else {
+            byte[] record = new byte[RECORD_SIZE];
+            for (int i = 0; i < RECORD_SIZE; i++) {
+                record[i] = buffer.get(position + i);
+            }
+            decode(record, 0, values);
+        }
+    }
+
+    /**
+     * Decodes every channel that does not depend on a sensor equation.
+     */
+    static void decodeFixed(byte[] r, int o, double[] values) {
+        values[TIME] = time(r, o);
+        values[LATITUDE] = coordinate(r[o + 1], u16(r, o), u16(r, o + 2));
+        values[LONGITUDE] = coordinate(r[o + 5], u16(r, o + 4), u16(r, o + 6));
+
+        int gpsAltitude = u16(r, o + 8);
+        values[ALTITUDE_GPS] = gpsAltitude == NO_GPS_ALTITUDE ? Double.NaN : gpsAltitude;
+
+        int pressure = ((r[o + 13] & 255) << 24) + ((r[o + 12] & 255) << 16) + ((r[o + 11] & 255) << 8) + (r[o + 10] & 255);
+        values[ALTITUDE] = 44330 * (1 - Math.pow(pressure * 0.01 / 1013.25, 1 / 5.255));
+        values[PRESSURE] = pressure * 0.00000986923267;
+
+        double temperature = (short) u16(r, o + 14) / 10.0;
+        values[TEMPERATURE] = temperature;
+
+        //21 = HHHH HHMM, 22 = 1111 HHHH
+        int humidity = ((r[o + 21] & 0xFC) >> 2) + ((r[o + 22] & 0x0F) << 6);
+        values[HUMIDITY] = (0.204036 * humidity - 25.8065) / (1.0546 - 0.00216 * temperature) + 6;
+
+        //19 = EEZZ ZZZZ, 20 = MMMM MMEE, 21 = HHHH HHMM
+        int exponent = ((r[o + 19] & 0xC0) >> 6) + ((r[o + 20] & 0x03) << 2);
+        int mantissa = ((r[o + 20] & 0xFC) >> 2) + ((r[o + 21] & 0x03) << 6);
+        values[LIGHT] = (1 << exponent) * mantissa * 0.025;
+
+        //16 = XXXX XXXX, 17 = YYYY YYXX, 18 = ZZZZ YYYY, 19 = EEZZ ZZZZ
+        double x = signed10((r[o + 16] & 255) + ((r[o + 17] & 0x03) << 8)) * ACCEL_SCALE;
+        double y = signed10(((r[o + 17] & 0xFC) >> 2) + ((r[o + 18] & 0x0F) << 6)) * ACCEL_SCALE;
+        double z = signed10(((r[o + 18] & 0xF0) >> 4) + ((r[o + 19] & 0x3F) << 4)) * ACCEL_SCALE;
+        values[ACCEL_X] = x;
+        values[ACCEL_Y] = y;
+        values[ACCEL_Z] = z;
+        values[ACCELERATION] = Math.sqrt(x * x + y * y + z * z);
+    }
+
+    /**
+     * Returns the raw 10 bit ADC reading for one of the analog channels.
+     *
+     * @param channel BTA1, BTA2, MINI1 or MINI2
+     */
+    static int analogReading(byte[] r, int o, int channel) {
+        switch (channel) {
+            case BTA1:
+                //25 = 1111 1111, 26 = 2222 2211
+                return (r[o + 25] & 0xFF) + ((r[o + 26] & 0x03) << 8);
+            case BTA2:
+                //26 = 2222 2211, 27 = ssss 2222
+                return ((r[o + 26] & 0xFC) >> 2) + ((r[o + 27] & 0x0F) << 6);
+            case MINI1:
+                //22 = 1111 HHHH, 23 = 2211 1111
+                return ((r[o + 22] & 0xF0) >> 4) + ((r[o + 23] & 0x3F) << 4);
+            case MINI2:
+                //23 = 2211 1111, 24 = 2222 2222
+                return ((r[o + 23] & 0xC0) >> 6) + ((r[o + 24] & 0xFF) << 2);
+        }
+        throw new IllegalArgumentException("Not an analog channel: " + channel);
+    }
+
+    /**
+     * Applies a channel's sensor equation to a raw reading.
+     */
+    double analog(int channel, int reading) {
+        Expression equation = equations[channel - BTA1];
+        double[] table = tables[channel - BTA1];
+
+        if (equation == null) {
+            return reading;
+        }
+        if (table != null && !Double.isNaN(table[reading])) {
+            return table[reading];
+        }
+        if (!exact) {
+            return compiled[channel - BTA1].eval(reading);
+        }
+
+        Map<String, BigDecimal> variables = new HashMap<String, BigDecimal>();
+        variables.put("x", new BigDecimal(reading));
+        return equation.eval(variables).doubleValue();
+    }
+
+    /**
+     * Converts the PINPoint's packed time stamp to milliseconds since the
+     * epoch, GMT.
+     */
+    static long time(byte[] r, int o) {
+        //27 = SSSS 2222, 28 = MMMM MMSS, 29 = DDDH HHHH
+        //30 = MMMT TTTT, 31 = YYYY YYYM
+        int seconds = ((r[o + 27] & 0xF0) >> 4) + ((r[o + 28] & 0x03) << 4);
+        int minutes = (r[o + 28] & 0xFC) >> 2;
+        int hours = r[o + 29] & 0x1F;
+        int date = r[o + 30] & 0x1F;
+        int month = ((r[o + 30] & 0xE0) >> 5) + ((r[o + 31] & 0x01) << 3);
+        int year = ((r[o + 31] & 0xFE) >> 1) + 2000;
+
+        return daysFromCivil(year, month, date) * MILLIS_PER_DAY
+                + ((hours * 60L + minutes) * 60L + seconds) * 1000L;
+    }
+
+    /**
+     * Days since 1970-01-01 for a proleptic Gregorian date, without going
+     * through Calendar.
+     */
+    static long daysFromCivil(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        int era = (year >= 0 ? year : year - 399) / 400;
+        int yearOfEra = year - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    /**
+     * Converts the PINPoint's ddmm.mmmm coordinate to decimal degrees. The
+     * fraction is stored as an integer whose digits follow the decimal
+     * point, so 1234 means .1234 and 50 means .50.
+     */
+    private static double coordinate(byte signByte, int whole, int fraction) {
+        int value = signByte >= 0 ? whole : (short) whole;
+        double scale = POW10[digits(fraction)];
+
+        //Single precision, as the converter has always worked in floats.
+        float ddmm = (float) (value < 0 ? value - fraction / scale : value + fraction / scale);
+        int degrees = (int) ddmm / 100;
+        float minutes = ddmm - degrees * 100;
+        float result = degrees + minutes / 60;
+
+        return result == NO_FIX ? Double.NaN : result;
+    }
+
+    private static int digits(int n) {
+        if (n < 10) {
+            return 1;
+        } else if (n < 100) {
+            return 2;
+        } else if (n < 1000) {
+            return 3;
+        } else if (n < 10000) {
+            return 4;
+        }
+        return 5;
+    }
+
+    private static int signed10(int reading) {
+        return (reading & 0x200) != 0 ? reading - 0x400 : reading;
+    }
+
+    private static int u16(byte[] r, int o) {
+        return ((r[o + 1] & 255) << 8) + (r[o] & 255);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * Turns values decoded by RecordDecoder into the strings shown in the table
+ * and written to files. Kept apart from decoding so that code which only
+ * needs numbers never pays for formatting.
+ */
+public class RecordFormatter {
+
+    private static final MathContext SIGNIFICANT = new MathContext(15);
+
+    private RecordFormatter() {
+    }
+
+    /**
+     * Formats a whole decoded record the same way PinpointConverter.convertAll
+     * does.
+     *
+     * @param values RecordDecoder.CHANNELS decoded values
+     * @return String[]
+     */
+    public static String[] format(double[] values) {
+        String[] row = new String[RecordDecoder.CHANNELS];
+
+        row[RecordDecoder.TIME] = formatTime((long) values[RecordDecoder.TIME]);
+        for (int channel = 1; channel < RecordDecoder.CHANNELS; channel++) {
+            row[channel] = format(channel, values[channel]);
+        }
+
+        return row;
+    }
+
+    /**
+     * Formats a single decoded value.
+     *
+     * @param channel one of the RecordDecoder channel constants
+     * @param value the decoded value
+     * @return String
+     */
+    public static String format(int channel, double value) {
+        switch (channel) {
+            case RecordDecoder.TIME:
+                return formatTime((long) value);
+            case RecordDecoder.LATITUDE:
+            case RecordDecoder.LONGITUDE:
+                return Double.isNaN(value) ? "" : Float.toString((float) value);
+            case RecordDecoder.ALTITUDE_GPS:
+                return Double.isNaN(value) ? " " : Integer.toString((int) value);
+            case RecordDecoder.TEMPERATURE:
+                return Float.toString((float) value);
+            case RecordDecoder.ACCEL_X:
+            case RecordDecoder.ACCEL_Y:
+            case RecordDecoder.ACCEL_Z:
+                return Double.toString(value);
+            case RecordDecoder.BTA1:
+            case RecordDecoder.BTA2:
+            case RecordDecoder.MINI1:
+            case RecordDecoder.MINI2:
+                return formatAnalog(value);
+            default:
+                return Double.toString(roundThreeDecimals(value));
+        }
+    }
+
+    /**
+     * Formats milliseconds since the epoch as MM/dd/yyyy HH:mm:ss:SSS in
+     * GMT. Whole seconds keep the two digit ":00" suffix the PINPoint
+     * converter has always used.
+     *
+     * @param time milliseconds since the epoch
+     * @return String
+     */
+    public static String formatTime(long time) {
+        return formatTime(time, false);
+    }
+
+    /**
+     * Formats a time, optionally always giving three digits of milliseconds
+     * as rows stamped by fixTime have.
+     *
+     * @param time milliseconds since the epoch
+     * @param stamped true if the time was spread within its second
+     * @return String
+     */
+    public static String formatTime(long time, boolean stamped) {
+        long days = floorDiv(time, 86400000L);
+        int millisOfDay = (int) (time - days * 86400000L);
+
+        //Civil date from days since the epoch.
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        int dayOfEra = (int) (z - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        int seconds = millisOfDay / 1000;
+        int millis = millisOfDay % 1000;
+
+        StringBuilder sb = new StringBuilder(23);
+        pad(sb, month, 2).append('/');
+        pad(sb, day, 2).append('/');
+        sb.append(year).append(' ');
+        pad(sb, seconds / 3600, 2).append(':');
+        pad(sb, seconds / 60 % 60, 2).append(':');
+        pad(sb, seconds % 60, 2).append(':');
+        if (millis == 0 && !stamped) {
+            sb.append("00");
+        } else {
+            pad(sb, millis, 3);
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Rounds to three decimal places, half even, as the DecimalFormat
+     * "#.###" used by the converter did.
+     */
+    static double roundThreeDecimals(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return value;
+        }
+        return new BigDecimal(value).setScale(3, RoundingMode.HALF_EVEN).doubleValue();
+    }
+
+    /**
+     * Sensor equations are shown to three decimal places, always rounded
+     * away from zero as their BigDecimal results were. The value is first cut
+     * to 15 significant digits so the last bit of double rounding error
+     * doesn't round 1.3000000000000003 up to 1.301.
+     */
+    static String formatAnalog(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return Double.toString(value);
+        }
+        return new BigDecimal(value).round(SIGNIFICANT).setScale(3, RoundingMode.UP).toString();
+    }
+
+    private static StringBuilder pad(StringBuilder sb, int value, int width) {
+        for (int limit = 10; width > 1; width--, limit *= 10) {
+            if (value < limit) {
+                sb.append('0');
+            }
+        }
+        return sb.append(value);
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y != 0 && (x < 0) != (y < 0)) ? q - 1 : q;
+    }
+}
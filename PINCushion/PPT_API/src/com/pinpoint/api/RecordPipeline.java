@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+/**
+ * Sits between PinComm and a RecordSink, converting each record as it
+ * arrives and filling in sub-second time stamps one second at a time.
+ */
+public class RecordPipeline implements RecordListener {
+
+    private final PinpointConverter converter;
+    private final RecordSink sink;
+    private final TimeFixWindow window;
+
+    /**
+     * @param converter the converter built for the connected PINPoint
+     * @param sampleRate the PINPoint's sample rate in milliseconds; rates
+     * under a second have their time stamps fixed up
+     * @param sink where converted rows are sent
+     */
+    public RecordPipeline(PinpointConverter converter, int sampleRate, RecordSink sink) {
+        this.converter = converter;
+        this.sink = sink;
+
+        if (sampleRate > 0 && sampleRate < 1000) {
+            window = new TimeFixWindow(sampleRate, sink);
+        } else {
+            window = null;
+        }
+    }
+
+    public void recordReceived(byte[] record) {
+        String[] row = converter.convertAll(record);
+
+        if (window != null) {
+            window.add(row);
+        } else {
+            sink.rowConverted(row);
+        }
+    }
+
+    public void downloadFinished(boolean checksumValid) {
+        if (window != null) {
+            window.flush();
+        }
+        sink.conversionFinished(checksumValid);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+import gnu.io.CommPortIdentifier;
+import gnu.io.PortInUseException;
+import gnu.io.SerialPort;
+import gnu.io.SerialPortEvent;
+import gnu.io.SerialPortEventListener;
+import gnu.io.UnsupportedCommOperationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.TooManyListenersException;
+
+/**
+ * A real serial port, through RXTX.
+ */
+class RxtxTransport implements Transport {
+
+    private static final int COMM_TIMEOUT_MS = 100;
+    private static final int RECEIVE_TIMEOUT_SECONDS_MS = 5;
+    private SerialPort serialPort;
+    private final OutputStream outputStream;
+
+    private RxtxTransport(SerialPort serialPort) throws IOException {
+        this.serialPort = serialPort;
+        this.outputStream = serialPort.getOutputStream();
+    }
+
+    static RxtxTransport open(CommPortIdentifier portIdentifier, int baudRate, boolean useFlowControl)
+            throws IOException, PortInUseException, UnsupportedCommOperationException {
+        SerialPort serialPort = (SerialPort) portIdentifier.open(portIdentifier.getName(), COMM_TIMEOUT_MS);
+
+        try {
+            serialPort.setSerialPortParams(baudRate, SerialPort.DATABITS_8,
+                    SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
+            serialPort.enableReceiveTimeout(RECEIVE_TIMEOUT_SECONDS_MS);
+
+            if (useFlowControl == true) {
+                serialPort.setFlowControlMode(SerialPort.FLOWCONTROL_RTSCTS_IN
+                        | SerialPort.FLOWCONTROL_RTSCTS_OUT);
+            }
+
+            return new RxtxTransport(serialPort);
+        } catch (UnsupportedCommOperationException e) {
+            serialPort.close();
+            throw e;
+        } catch (IOException e) {
+            serialPort.close();
+            throw e;
+        }
+    }
+
+    public void start(Receiver receiver) throws IOException {
+        try {
+            serialPort.addEventListener(new InputPump(serialPort.getInputStream(), receiver));
+        } catch (TooManyListenersException e) {
+            throw new IOException();
+        }
+        serialPort.notifyOnDataAvailable(true);
+    }
+
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        outputStream.write(bytes, offset, length);
+        outputStream.flush();
+    }
+
+    public void close() {
+        if (serialPort != null) {
+            serialPort.removeEventListener();
+            serialPort.close();
+            serialPort = null;
+        }
+    }
+
+    /**
+     * Moves bytes from RXTX to a receiver on RXTX's event thread.
+     */
+    static class InputPump implements SerialPortEventListener {
+
+        private final byte[] scratch = new byte[4096];
+        private final InputStream inputStream;
+        private final Receiver receiver;
+
+        InputPump(InputStream inputStream, Receiver receiver) {
+            this.inputStream = inputStream;
+            this.receiver = receiver;
+        }
+
+        /**
+         * Called by RXTX on its event thread. Drains everything the driver
+         * has buffered.
+         */
+        public void serialEvent(SerialPortEvent event) {
+            if (event.getEventType() != SerialPortEvent.DATA_AVAILABLE) {
+                return;
+            }
+
+            try {
+                int available;
+                while ((available = inputStream.available()) > 0) {
+                    int count = inputStream.read(scratch, 0, Math.min(available, scratch.length));
+                    if (count > 0) {
+                        receiver.received(scratch, 0, count);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("IOException thrown while receiving serial data");
+            }
+        }
+    }
+}
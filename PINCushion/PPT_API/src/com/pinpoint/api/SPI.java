@@ -32,12 +32,12 @@ import gnu.io.PortInUseException;
 import gnu.io.SerialPort;
 import gnu.io.UnsupportedCommOperationException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TooManyListenersException;
 
 /**
  * The Serial Port Interface (SPI) class is used for selecting, opening and
@@ -49,12 +49,15 @@ public class SPI {
 
     private SerialPort serialPort;
     private CommPortIdentifier portIdentifier;
+    private SerialReceiver receiver;
     private static final int COMM_TIMEOUT_MS = 100;
     private static final int RECEIVE_TIMEOUT_SECONDS_MS = 5;
+    private static final int READ_TIMEOUT_MS = 100;
 
     public SPI() {
         serialPort = null;
         portIdentifier = null;
+        receiver = null;
     }
 
     /**
@@ -123,6 +126,15 @@ public class SPI {
             serialPort.setFlowControlMode(SerialPort.FLOWCONTROL_RTSCTS_IN
                     | SerialPort.FLOWCONTROL_RTSCTS_OUT);
         }
+
+        receiver = new SerialReceiver();
+        try {
+            serialPort.addEventListener(new RxtxTransport.InputPump(serialPort.getInputStream(), receiver));
+        } catch (TooManyListenersException e) {
+            close();
+            throw new IOException();
+        }
+        serialPort.notifyOnDataAvailable(true);
     }
 
     /**
@@ -130,8 +142,13 @@ public class SPI {
      */
     public void close() {
         if (serialPort != null) {
+            if (receiver != null) {
+                receiver.close();
+                serialPort.removeEventListener();
+            }
             serialPort.close();
             serialPort = null;
+            receiver = null;
         }
     }
 
@@ -145,30 +162,14 @@ public class SPI {
             throw new IOException();
         }
 
-        InputStream inputStream = serialPort.getInputStream();
-        Byte result = null;
-        int attempts = 0;
-
-        while (attempts < 10) {
-            if (inputStream.available() > 0) {
-                result = (byte) (inputStream.read() & 0xFF);
-                System.out.println(result);
-                break;
-            } else {
-                attempts++;
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
+        int result = receiver.read(READ_TIMEOUT_MS);
 
-        if (result == null) {
+        if (result == -1) {
             throw new IOException();
         }
 
-        return result;
+        System.out.println((byte) result);
+        return (byte) result;
     }
 
     /**
@@ -191,12 +192,7 @@ public class SPI {
      */
     public void clear() throws IOException {
         if (serialPort != null) {
-            InputStream inputStream = serialPort.getInputStream();
-            while (inputStream.available() > 0) {
-                if (readByte() == -1) {
-                    break;
-                }
-            }
+            receiver.clear();
         } else {
             throw new IOException();
         }
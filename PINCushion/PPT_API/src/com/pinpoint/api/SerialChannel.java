@@ -30,14 +30,12 @@ package com.pinpoint.api;
 
 import gnu.io.CommPortIdentifier;
 import gnu.io.PortInUseException;
-import gnu.io.SerialPort;
 import gnu.io.UnsupportedCommOperationException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -49,14 +47,61 @@ import java.util.Map;
  *
  */
 public class SerialChannel {
-  private SerialPort serialPort;
-  private CommPortIdentifier portIdentifier;
-  private static final int COMM_TIMEOUT_MS = 100;
-  private static final int RECEIVE_TIMEOUT_SECONDS_MS = 5;
+  private Transport transport;
+  private String portName;
+  private SerialReceiver receiver;
+  private int baudRate;
+  private static final int READ_TIMEOUT_MS = 1500;
+  // Ports that aren't RXTX serial ports, by name, in the order they were added.
+  private static final Map<String, Transport.Factory> virtualPorts =
+      new LinkedHashMap<String, Transport.Factory>();
 
   public SerialChannel() {
-    serialPort = null;
-    portIdentifier = null;
+    transport = null;
+    portName = null;
+    receiver = null;
+    baudRate = 0;
+  }
+
+  /**
+   * Makes a port that isn't an RXTX serial port available under a name, so
+   * that it is listed by enumeratePortNames() and can be opened like any
+   * other port. Replaces any virtual port already registered under the name.
+   * @param portName The name to list the port under.
+   * @param factory Opens the port's transport.
+   */
+  public static void addVirtualPort(String portName, Transport.Factory factory) {
+    synchronized (virtualPorts) {
+      virtualPorts.put(portName, factory);
+    }
+  }
+
+  /**
+   * Removes a port added with addVirtualPort. Channels that already have it
+   * open keep working until they are closed.
+   * @param portName The name the port was added under.
+   */
+  public static void removeVirtualPort(String portName) {
+    synchronized (virtualPorts) {
+      virtualPorts.remove(portName);
+    }
+  }
+
+  /**
+   * Determines if a port name belongs to a virtual port.
+   * @param portName The port name.
+   * @return True if the port was added with addVirtualPort.
+   */
+  public static boolean isVirtualPort(String portName) {
+    synchronized (virtualPorts) {
+      return virtualPorts.containsKey(portName);
+    }
+  }
+
+  private static Transport.Factory getVirtualPort(String portName) {
+    synchronized (virtualPorts) {
+      return virtualPorts.get(portName);
+    }
   }
 
   /**
@@ -66,8 +111,14 @@ public class SerialChannel {
   public static Map<String, CommPortIdentifier> enumeratePorts() {
     HashMap<String, CommPortIdentifier> portMap =
         new HashMap<String, CommPortIdentifier>();
-    Enumeration<CommPortIdentifier> portEnumeration =
-        CommPortIdentifier.getPortIdentifiers();
+    Enumeration<CommPortIdentifier> portEnumeration;
+
+    try {
+      portEnumeration = CommPortIdentifier.getPortIdentifiers();
+    } catch (LinkageError e) {
+      // No native RXTX library here, so there are no real ports to list.
+      return portMap;
+    }
 
     while (portEnumeration.hasMoreElements()) {
       CommPortIdentifier currentPort = portEnumeration.nextElement();
@@ -81,7 +132,8 @@ public class SerialChannel {
   }
 
   /**
-   * Retrieves a list of valid serial port names.
+   * Retrieves a list of valid serial port names, followed by the names of
+   * any virtual ports.
    * @return A Vector of serial port names.
    */
   public static ArrayList<String> enumeratePortNames() {
@@ -91,6 +143,14 @@ public class SerialChannel {
     for(String key: portMap.keySet()){
         portNames.add(key);
     }
+
+    synchronized (virtualPorts) {
+      for (String key : virtualPorts.keySet()) {
+        if (!portNames.contains(key)) {
+          portNames.add(key);
+        }
+      }
+    }
     
     return portNames;
   }
@@ -108,21 +168,33 @@ public class SerialChannel {
   public void open(String portName, int baudRate, boolean useFlowControl)
       throws IOException, PortInUseException,
       UnsupportedCommOperationException {
-    Map<String, CommPortIdentifier> portMap = SerialChannel.enumeratePorts();
-    portIdentifier = portMap.get(portName);
+    Transport opened;
+    Transport.Factory factory = getVirtualPort(portName);
 
-    if (portIdentifier == null) {
-      throw new IOException();
+    if (factory != null) {
+      opened = factory.open(portName, baudRate, useFlowControl);
+    } else {
+      CommPortIdentifier portIdentifier =
+          SerialChannel.enumeratePorts().get(portName);
+
+      if (portIdentifier == null) {
+        throw new IOException();
+      }
+
+      opened = RxtxTransport.open(portIdentifier, baudRate, useFlowControl);
     }
 
-    serialPort = (SerialPort)portIdentifier.open(portName, SerialChannel.COMM_TIMEOUT_MS);
-    serialPort.setSerialPortParams(baudRate, SerialPort.DATABITS_8,
-        SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
-    serialPort.enableReceiveTimeout(SerialChannel.RECEIVE_TIMEOUT_SECONDS_MS);
+    transport = opened;
+    this.portName = portName;
+    this.baudRate = baudRate;
 
-    if (useFlowControl == true) {
-      serialPort.setFlowControlMode(SerialPort.FLOWCONTROL_RTSCTS_IN |
-          SerialPort.FLOWCONTROL_RTSCTS_OUT);
+    // Incoming bytes are queued by the transport's thread as they arrive.
+    receiver = new SerialReceiver();
+    try {
+      transport.start(receiver);
+    } catch (IOException e) {
+      close();
+      throw e;
     }
   }
 
@@ -130,14 +202,19 @@ public class SerialChannel {
    * Closes the open serial port.
    */
   public void close() {
-    if (serialPort != null) {
-      serialPort.close();
-      serialPort = null;
+    if (transport != null) {
+      if (receiver != null) {
+        receiver.close();
+      }
+      transport.close();
+      transport = null;
+      receiver = null;
     }
   }
 
   /**
-   * Attempts to read a single byte from the serial port.
+   * Attempts to read a single byte from the serial port, waiting up to
+   * READ_TIMEOUT_MS for it to arrive.
    * @return A byte from the serial port.
    * @throws java.io.IOException If an error occurs while reading the byte.
    */
@@ -146,30 +223,34 @@ public class SerialChannel {
       throw new IOException();
     }
 
-    InputStream inputStream = serialPort.getInputStream();
-    Byte result = null;
-    int attempts = 0;
-
-    while (attempts < 150) {
-      if (inputStream.available() > 0) {
-        result = (byte) (inputStream.read() & 0xFF);    
-        break;
-      } else {
-        attempts++;
-        //System.out.println("wait: " + attempts);
-        try {
-          Thread.sleep(10);
-        } catch (InterruptedException e) {
-          e.printStackTrace();
-        }
-      }
+    int result = receiver.read(READ_TIMEOUT_MS);
+
+    if (result == -1) {
+      throw new IOException();
     }
 
-    if (result == null) {
+    return (byte) result;
+  }
+
+  /**
+   * Reads up to length bytes from the serial port into a buffer, returning
+   * once the buffer is full or the deadline has passed. This copies straight
+   * out of the receive queue, so it should be used for bulk transfers.
+   * @param buffer The buffer to fill.
+   * @param offset The position in the buffer to start writing at.
+   * @param length The number of bytes wanted.
+   * @param timeoutMs How long to wait for the bytes, in milliseconds.
+   * @return The number of bytes actually read, which is less than length
+   * only if the deadline passed.
+   * @throws java.io.IOException If an error occurs while reading.
+   */
+  public int readBytes(byte[] buffer, int offset, int length, long timeoutMs)
+      throws IOException {
+    if (isOpen() == false) {
       throw new IOException();
     }
 
-    return result;
+    return receiver.read(buffer, offset, length, timeoutMs);
   }
 
   /**
@@ -182,8 +263,20 @@ public class SerialChannel {
       throw new IOException();
     }
 
-    OutputStream outputStream = serialPort.getOutputStream();
-    outputStream.write(aByte);
+    transport.write(new byte[] {aByte}, 0, 1);
+  }
+
+  /**
+   * Writes a block of bytes to the serial port in a single call.
+   * @param bytes The bytes to write.
+   * @throws java.io.IOException If an error occurs while writing the bytes.
+   */
+  public void writeBytes(byte[] bytes) throws IOException {
+    if (isOpen() == false) {
+      throw new IOException();
+    }
+
+    transport.write(bytes, 0, bytes.length);
   }
 
   /**
@@ -191,13 +284,8 @@ public class SerialChannel {
    * @throws java.io.IOException If an error occurs while clearing the buffer.
    */
   public void clear() throws IOException {
-    if (serialPort != null) {
-      InputStream inputStream = serialPort.getInputStream();
-      while (inputStream.available() > 0) {
-        if (readByte() == -1) {
-          break;
-        }
-      }
+    if (transport != null) {
+      receiver.clear();
     } else {
       throw new IOException();
     }
@@ -208,7 +296,7 @@ public class SerialChannel {
    * @return True if the port is open, otherwise false.
    */
   public boolean isOpen() {
-    return serialPort != null;
+    return transport != null;
   }
 
   /**
@@ -216,6 +304,14 @@ public class SerialChannel {
    * @return The name of the port (e.g., "COM1", "/dev/ttyUSB0")
    */
   public String getPortName() {
-    return portIdentifier != null ? portIdentifier.getName() : null;
+    return portName;
+  }
+
+  /**
+   * Retrieves the baud rate the port was opened with.
+   * @return The baud rate, or 0 if the port has not been opened.
+   */
+  public int getBaudRate() {
+    return baudRate;
   }
 }
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Receives bytes from a transport as they arrive and queues them in a ring
+ * buffer so that readers can block on a timeout instead of polling
+ * available() in a sleep loop.
+ *
+ * The buffer has exactly one producer (the transport's thread) and one
+ * consumer (whoever is talking to the device), so the indices are published
+ * through volatile fields and the lock is only taken when one side has to
+ * park waiting for the other.
+ */
+class SerialReceiver implements Transport.Receiver {
+
+    // Must be a power of two so indices can be masked.
+    private static final int CAPACITY = 1 << 16;
+    private static final int MASK = CAPACITY - 1;
+    // How long the producer parks at a time when the buffer is full.
+    private static final long FULL_WAIT_MS = 100;
+    private final byte[] ring = new byte[CAPACITY];
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    // Total bytes ever written (head) and read (tail).
+    private volatile long head = 0;
+    private volatile long tail = 0;
+    private volatile boolean consumerWaiting = false;
+    private volatile boolean producerWaiting = false;
+    private volatile boolean closed = false;
+
+    public void received(byte[] bytes, int offset, int length) {
+        push(bytes, offset, length);
+    }
+
+    /**
+     * Appends bytes to the ring, waiting for the consumer if it is full.
+     */
+    void push(byte[] bytes, int offset, int length) {
+        while (length > 0 && !closed) {
+            long h = head;
+            int free = CAPACITY - (int) (h - tail);
+
+            if (free == 0) {
+                if (!waitForSpace()) {
+                    return;
+                }
+                continue;
+            }
+
+            int count = Math.min(length, Math.min(free, CAPACITY - (int) (h & MASK)));
+            System.arraycopy(bytes, offset, ring, (int) (h & MASK), count);
+            head = h + count;
+            offset += count;
+            length -= count;
+
+            if (consumerWaiting) {
+                signal(notEmpty);
+            }
+        }
+    }
+
+    /**
+     * Takes a single byte from the ring.
+     *
+     * @param timeoutMs how long to wait for the byte
+     * @return the byte as 0-255, or -1 if none arrived in time
+     */
+    int read(long timeoutMs) {
+        if (!waitForData(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs))) {
+            return -1;
+        }
+
+        long t = tail;
+        int value = ring[(int) (t & MASK)] & 0xFF;
+        release(t + 1);
+        return value;
+    }
+
+    /**
+     * Fills a buffer from the ring, waiting up to the timeout for the
+     * whole length to arrive.
+     *
+     * @return the number of bytes copied, short only on timeout
+     */
+    int read(byte[] buffer, int offset, int length, long timeoutMs) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        int received = 0;
+
+        while (received < length && waitForData(deadline)) {
+            long t = tail;
+            int count = Math.min(length - received, (int) (head - t));
+            count = Math.min(count, CAPACITY - (int) (t & MASK));
+            System.arraycopy(ring, (int) (t & MASK), buffer, offset + received, count);
+            release(t + count);
+            received += count;
+        }
+
+        return received;
+    }
+
+    /**
+     * Discards everything currently queued.
+     */
+    void clear() {
+        release(head);
+    }
+
+    int available() {
+        return (int) (head - tail);
+    }
+
+    /**
+     * Wakes anyone parked on the ring so the port can be closed.
+     */
+    void close() {
+        closed = true;
+        signal(notEmpty);
+        signal(notFull);
+    }
+
+    private void release(long newTail) {
+        tail = newTail;
+        if (producerWaiting) {
+            signal(notFull);
+        }
+    }
+
+    private boolean waitForData(long deadline) {
+        if (head != tail) {
+            return true;
+        }
+
+        lock.lock();
+        try {
+            consumerWaiting = true;
+            while (head == tail && !closed) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                notEmpty.awaitNanos(remaining);
+            }
+            return head != tail;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            consumerWaiting = false;
+            lock.unlock();
+        }
+    }
+
+    private boolean waitForSpace() {
+        lock.lock();
+        try {
+            producerWaiting = true;
+            while (head - tail == CAPACITY && !closed) {
+                notFull.await(FULL_WAIT_MS, TimeUnit.MILLISECONDS);
+            }
+            return !closed;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            producerWaiting = false;
+            lock.unlock();
+        }
+    }
+
+    private void signal(Condition condition) {
+        lock.lock();
+        try {
+            condition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
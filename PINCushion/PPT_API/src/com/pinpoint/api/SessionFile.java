@@ -0,0 +1,454 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+import com.pinpoint.exceptions.IncompatibleConversionException;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A downloaded session saved as the PINPoint's raw records, together with
+ * everything needed to convert them again: the PINPoint's serial number,
+ * its settings and the conversions in use when it was downloaded.
+ *
+ * Opening a session file maps it into memory instead of reading it, so even
+ * a full PINPoint opens at once, and records are only touched when they are
+ * converted. Because the records are raw, a session can be converted again
+ * with newer conversions without going back to the PINPoint.
+ *
+ * All numbers in the file are big endian:
+ * <pre>
+ * int     magic, "PPTS"
+ * int     version
+ * int     header length, where the records start
+ * int     serial number
+ * long    when the session was downloaded, milliseconds since the epoch
+ * int     record count
+ * int     setting count, then that many (int setting, int value) pairs
+ * int     conversion count, then for each conversion an int field count
+ *         and each field as an int length and that many bytes of UTF-8
+ * byte[]  the records, 32 bytes each, starting at the header length
+ * </pre>
+ */
+public class SessionFile {
+
+    // File extension for PINPoint sessions, without the dot.
+    public static final String EXTENSION = "pps";
+    private static final int MAGIC = 0x50505453;
+    private static final int VERSION = 1;
+    private static final int RECORD_SIZE = RecordDecoder.RECORD_SIZE;
+    // Records decoded from each copy out of the mapped file.
+    private static final int BLOCK_RECORDS = 2048;
+    // Tries at replacing a file whose mapping may not have been released.
+    private static final int REPLACE_ATTEMPTS = 5;
+    private static final long REPLACE_RETRY_MS = 100;
+    private final int serialNumber;
+    private final long downloaded;
+    private final HashMap<Integer, Integer> settings;
+    private final ArrayList<String[]> conversions;
+    private ByteBuffer records;
+    private final int recordCount;
+    // The file the records are mapped from, or null once they are on the heap.
+    private File source = null;
+
+    /**
+     * Holds a session that has just been downloaded, ready to be saved.
+     *
+     * @param serialNumber the PINPoint's serial number
+     * @param settings the PINPoint's settings, as from PinComm.GetSettings
+     * @param conversions the conversions the session was converted with
+     * @param records the raw records, back to back
+     * @param count how many records to take from records
+     */
+    public SessionFile(int serialNumber, HashMap<Integer, Integer> settings, ArrayList<String[]> conversions, byte[] records, int count) {
+        this(serialNumber, System.currentTimeMillis(), settings, conversions, ByteBuffer.wrap(records, 0, count * RECORD_SIZE).slice());
+    }
+
+    private SessionFile(int serialNumber, long downloaded, HashMap<Integer, Integer> settings, ArrayList<String[]> conversions, ByteBuffer records) {
+        this.serialNumber = serialNumber;
+        this.downloaded = downloaded;
+        this.settings = new HashMap<Integer, Integer>(settings);
+        this.conversions = copy(conversions);
+        this.records = records.asReadOnlyBuffer();
+        this.recordCount = records.remaining() / RECORD_SIZE;
+    }
+
+    /**
+     * Opens a saved session. The records are mapped, not read, so this
+     * takes about as long for a full PINPoint as for an empty one.
+     *
+     * @param file a file written by save
+     * @return SessionFile
+     * @throws IOException if the file can't be read or isn't a session
+     */
+    public static SessionFile open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(file + " is not a PINPoint session");
+            }
+
+            //The mapping stays valid after the file is closed.
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            SessionFile session = read(mapped, file);
+            session.source = file.getCanonicalFile();
+            return session;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static SessionFile read(ByteBuffer in, File file) throws IOException {
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException(file + " is not a PINPoint session");
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException(file + " was saved by a newer version (" + version + ")");
+            }
+
+            int headerLength = in.getInt();
+            int serialNumber = in.getInt();
+            long downloaded = in.getLong();
+            int count = in.getInt();
+
+            HashMap<Integer, Integer> settings = new HashMap<Integer, Integer>();
+            for (int i = length(in, file); i > 0; i--) {
+                int setting = in.getInt();
+                settings.put(setting, in.getInt());
+            }
+
+            ArrayList<String[]> conversions = new ArrayList<String[]>();
+            for (int i = length(in, file); i > 0; i--) {
+                String[] fields = new String[length(in, file)];
+                for (int j = 0; j < fields.length; j++) {
+                    byte[] text = new byte[length(in, file)];
+                    in.get(text);
+                    fields[j] = new String(text, "UTF-8");
+                }
+                conversions.add(fields);
+            }
+
+            if (headerLength < in.position() || count < 0
+                    || (long) headerLength + (long) count * RECORD_SIZE > in.limit()) {
+                throw new IOException(file + " is truncated");
+            }
+
+            in.limit(headerLength + count * RECORD_SIZE);
+            in.position(headerLength);
+            return new SessionFile(serialNumber, downloaded, settings, conversions, in.slice());
+
+        } catch (BufferUnderflowException e) {
+            throw new IOException(file + " is truncated");
+        }
+    }
+
+    /**
+     * Reads a count from the header, which can never be more than the bytes
+     * left in the file.
+     */
+    private static int length(ByteBuffer in, File file) throws IOException {
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining()) {
+            throw new IOException(file + " is not a PINPoint session");
+        }
+        return length;
+    }
+
+    /**
+     * Writes the session to a file, replacing whatever was there. The
+     * session is written to a temporary file beside it first and put in
+     * place only once complete, and the old file is kept until then.
+     *
+     * A session can be saved back over the file it was opened from. Its
+     * records are copied to memory first and the mapping dropped, because
+     * Windows won't replace a file that is mapped.
+     *
+     * @param file where to save it, normally ending in EXTENSION
+     * @throws IOException
+     */
+    public synchronized void save(File file) throws IOException {
+        boolean overSource = source != null && source.equals(file.getCanonicalFile());
+
+        if (overSource) {
+            ByteBuffer heap = ByteBuffer.allocate(recordCount * RECORD_SIZE);
+            try {
+                heap.put(getRecords());
+            } catch (InternalError e) {
+                //The JVM reports a mapped file cut short by someone else this way.
+                throw new IOException("The session's file was changed while it was open");
+            }
+            heap.flip();
+            records = heap.asReadOnlyBuffer();
+            source = null;
+        }
+
+        byte[][][] text = new byte[conversions.size()][][];
+        int headerLength = 36 + settings.size() * 8;
+
+        for (int i = 0; i < text.length; i++) {
+            String[] fields = conversions.get(i);
+            text[i] = new byte[fields.length][];
+            headerLength += 4;
+            for (int j = 0; j < fields.length; j++) {
+                text[i][j] = utf8(fields[j]);
+                headerLength += 4 + text[i][j].length;
+            }
+        }
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        File temp = File.createTempFile("." + file.getName() + "-", ".tmp", directory);
+        boolean written = false;
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(headerLength);
+            out.writeInt(serialNumber);
+            out.writeLong(downloaded);
+            out.writeInt(recordCount);
+
+            out.writeInt(settings.size());
+            for (Map.Entry<Integer, Integer> setting : settings.entrySet()) {
+                out.writeInt(setting.getKey());
+                out.writeInt(setting.getValue());
+            }
+
+            out.writeInt(text.length);
+            for (byte[][] fields : text) {
+                out.writeInt(fields.length);
+                for (byte[] field : fields) {
+                    out.writeInt(field.length);
+                    out.write(field);
+                }
+            }
+
+            ByteBuffer data = getRecords();
+            byte[] block = new byte[BLOCK_RECORDS * RECORD_SIZE];
+            while (data.hasRemaining()) {
+                int length = Math.min(block.length, data.remaining());
+                try {
+                    data.get(block, 0, length);
+                } catch (InternalError e) {
+                    //The JVM reports a mapped file cut short by someone else this way.
+                    throw new IOException("The session's file was changed while it was open");
+                }
+                out.write(block, 0, length);
+            }
+            written = true;
+        } finally {
+            out.close();
+            if (!written) {
+                temp.delete();
+            }
+        }
+
+        for (int attempt = 1; !replace(temp, file); attempt++) {
+            if (!overSource || attempt == REPLACE_ATTEMPTS) {
+                temp.delete();
+                throw new IOException("Could not replace " + file);
+            }
+            //The old mapping is only released once it has been collected.
+            System.gc();
+            System.runFinalization();
+            try {
+                Thread.sleep(REPLACE_RETRY_MS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Puts a finished file in place of another. Windows won't rename over
+     * an existing file, so there the old one is moved aside first and only
+     * deleted once the new one is in place, or moved back if it can't be.
+     *
+     * @return false if the target is unchanged
+     */
+    private static boolean replace(File temp, File file) throws IOException {
+        if (temp.renameTo(file)) {
+            return true;
+        }
+        if (!file.exists()) {
+            return false;
+        }
+
+        File backup = File.createTempFile("." + file.getName() + "-", ".old", temp.getParentFile());
+        if (!backup.delete() || !file.renameTo(backup)) {
+            backup.delete();
+            return false;
+        }
+        if (temp.renameTo(file)) {
+            backup.delete();
+            return true;
+        }
+        if (!backup.renameTo(file)) {
+            throw new IOException("Could not replace " + file + ", the old session is in " + backup);
+        }
+        return false;
+    }
+
+    public int getSerialNumber() {
+        return serialNumber;
+    }
+
+    /**
+     * @return when the session was downloaded, milliseconds since the epoch
+     */
+    public long getDownloadTime() {
+        return downloaded;
+    }
+
+    /**
+     * @return the PINPoint's settings when the session was downloaded
+     */
+    public HashMap<Integer, Integer> getSettings() {
+        return new HashMap<Integer, Integer>(settings);
+    }
+
+    /**
+     * @return the conversions the session was downloaded with
+     */
+    public ArrayList<String[]> getConversions() {
+        return copy(conversions);
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return a read only view of the raw records, back to back
+     */
+    public synchronized ByteBuffer getRecords() {
+        return records.duplicate();
+    }
+
+    /**
+     * Builds a converter for the session's sensors. Conversions given here
+     * replace the saved ones with the same number, so a session can pick up
+     * corrected equations while sensors missing from them still convert.
+     *
+     * @param newer conversions to use ahead of the saved ones, or null
+     * @return PinpointConverter
+     * @throws IncompatibleConversionException if a sensor has no conversion
+     */
+    public PinpointConverter getConverter(ArrayList<String[]> newer) throws IncompatibleConversionException {
+        ArrayList<String[]> merged = new ArrayList<String[]>();
+
+        if (newer != null) {
+            merged.addAll(newer);
+        }
+        for (String[] saved : conversions) {
+            boolean replaced = false;
+            for (String[] conversion : merged) {
+                replaced |= conversion[0].equals(saved[0]);
+            }
+            if (!replaced) {
+                merged.add(saved);
+            }
+        }
+
+        return new PinpointConverter(settings, merged);
+    }
+
+    /**
+     * Decodes every record into a table, spreading times within each second
+     * as getSession does.
+     *
+     * @param converter the converter to decode with, from getConverter
+     * @return SessionTable
+     */
+    public SessionTable toTable(PinpointConverter converter) {
+        final RecordDecoder decoder = converter.getDecoder();
+        final SessionTable table = new SessionTable(recordCount);
+        final double[] scratch = new double[RecordDecoder.CHANNELS];
+
+        ByteBuffer data = getRecords();
+        byte[] block = new byte[BLOCK_RECORDS * RECORD_SIZE];
+        while (data.hasRemaining()) {
+            int length = Math.min(block.length, data.remaining());
+            data.get(block, 0, length);
+            for (int offset = 0; offset < length; offset += RECORD_SIZE) {
+                table.add(decoder, block, offset, scratch);
+            }
+        }
+
+        table.fixTime(settings.get(PinComm.SAMPLE_RATE));
+        return table;
+    }
+
+    /**
+     * Feeds every record to a listener as if it had just been downloaded.
+     *
+     * @param listener gets each record, then downloadFinished(true)
+     */
+    public void replay(RecordListener listener) {
+        ByteBuffer data = getRecords();
+
+        for (int i = 0; i < recordCount; i++) {
+            byte[] record = new byte[RECORD_SIZE];
+            data.get(record);
+            listener.recordReceived(record);
+        }
+        listener.downloadFinished(true);
+    }
+
+    private static ArrayList<String[]> copy(ArrayList<String[]> conversions) {
+        ArrayList<String[]> copy = new ArrayList<String[]>();
+        for (String[] conversion : conversions) {
+            copy.add(conversion.clone());
+        }
+        return copy;
+    }
+
+    private static byte[] utf8(String text) {
+        try {
+            return text.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+/**
+ * Holds a downloaded PINPoint session column by column in primitive arrays.
+ * Time is kept as milliseconds since the epoch (GMT) and every other
+ * channel as a double, with NaN for readings the PINPoint marked missing.
+ * Channels are numbered as in RecordDecoder.
+ */
+public class SessionTable {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    private long[] time;
+    private double[][] channels;
+    private int size = 0;
+    private boolean timeFixed = false;
+
+    public SessionTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the number of rows to allocate up front, usually the
+     * record count from the PINPoint's data header
+     */
+    public SessionTable(int capacity) {
+        capacity = Math.max(capacity, 1);
+        time = new long[capacity];
+        channels = new double[RecordDecoder.CHANNELS][];
+        for (int channel = 1; channel < RecordDecoder.CHANNELS; channel++) {
+            channels[channel] = new double[capacity];
+        }
+    }
+
+    /**
+     * Appends a row of decoded values.
+     *
+     * @param values RecordDecoder.CHANNELS values, as filled in by
+     * RecordDecoder.decode
+     */
+    public void add(double[] values) {
+        if (size == time.length) {
+            grow();
+        }
+
+        time[size] = (long) values[RecordDecoder.TIME];
+        for (int channel = 1; channel < RecordDecoder.CHANNELS; channel++) {
+            channels[channel][size] = values[channel];
+        }
+        size++;
+    }
+
+    /**
+     * Decodes a raw record straight into a new row.
+     *
+     * @param decoder the decoder for the session
+     * @param record the buffer holding the record
+     * @param offset where the record starts in the buffer
+     * @param scratch room for RecordDecoder.CHANNELS doubles to decode into
+     */
+    public void add(RecordDecoder decoder, byte[] record, int offset, double[] scratch) {
+        decoder.decode(record, offset, scratch);
+        add(scratch);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTime(int row) {
+        checkRow(row);
+        return time[row];
+    }
+
+    /**
+     * Returns a single value. Time is returned as epoch milliseconds.
+     *
+     * @param row
+     * @param channel one of the RecordDecoder channel constants
+     * @return double
+     */
+    public double get(int row, int channel) {
+        checkRow(row);
+        return channel == RecordDecoder.TIME ? time[row] : channels[channel][row];
+    }
+
+    /**
+     * Copies one row into a buffer, in the layout RecordDecoder uses.
+     *
+     * @param row
+     * @param values receives RecordDecoder.CHANNELS values
+     */
+    public void getRow(int row, double[] values) {
+        checkRow(row);
+        values[RecordDecoder.TIME] = time[row];
+        for (int channel = 1; channel < RecordDecoder.CHANNELS; channel++) {
+            values[channel] = channels[channel][row];
+        }
+    }
+
+    /**
+     * Formats one row the way PinpointConverter.convertAll would.
+     *
+     * @param row
+     * @return String[]
+     */
+    public String[] getFormattedRow(int row) {
+        double[] values = new double[RecordDecoder.CHANNELS];
+        getRow(row, values);
+        String[] formatted = RecordFormatter.format(values);
+        formatted[RecordDecoder.TIME] = RecordFormatter.formatTime(time[row], timeFixed);
+        return formatted;
+    }
+
+    /**
+     * Returns a read only view of a channel. The view shares the table's
+     * storage, so taking one costs nothing.
+     *
+     * @param channel one of the RecordDecoder channel constants
+     * @return Column
+     */
+    public Column column(int channel) {
+        if (channel <= RecordDecoder.TIME || channel >= RecordDecoder.CHANNELS) {
+            throw new IllegalArgumentException("Not a sensor channel: " + channel);
+        }
+        return new Column(channels[channel], size);
+    }
+
+    /**
+     * Spreads records that share a second evenly across it, as
+     * PinpointConverter.fixTime does for string rows.
+     *
+     * @param sampleRate the sample rate in milliseconds
+     */
+    public void fixTime(int sampleRate) {
+        if (sampleRate <= 0 || sampleRate >= 1000) {
+            return;
+        }
+
+        int samplesPerSecond = 1000 / sampleRate;
+        int start = 0;
+
+        while (start < size) {
+            long second = time[start] / 1000;
+            int end = start + 1;
+            while (end < size && time[end] / 1000 == second) {
+                end++;
+            }
+
+            //The last record of a second takes the last slot.
+            int slot = samplesPerSecond;
+            for (int k = end - 1; k >= start; k--) {
+                time[k] = second * 1000 + 100 / samplesPerSecond * --slot * 10;
+            }
+
+            start = end;
+        }
+        timeFixed = true;
+    }
+
+    /**
+     * Approximate bytes used by the table's arrays.
+     *
+     * @return long
+     */
+    public long memoryUsage() {
+        return (long) time.length * 8 * RecordDecoder.CHANNELS;
+    }
+
+    private void grow() {
+        int capacity = time.length * 2;
+
+        long[] newTime = new long[capacity];
+        System.arraycopy(time, 0, newTime, 0, size);
+        time = newTime;
+
+        for (int channel = 1; channel < RecordDecoder.CHANNELS; channel++) {
+            double[] column = new double[capacity];
+            System.arraycopy(channels[channel], 0, column, 0, size);
+            channels[channel] = column;
+        }
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+    }
+
+    /**
+     * A read only view of one channel.
+     */
+    public static class Column {
+
+        private final double[] values;
+        private final int size;
+
+        Column(double[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public double get(int row) {
+            if (row < 0 || row >= size) {
+                throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+            }
+            return values[row];
+        }
+
+        /**
+         * Copies the values out, for callers that need to sort or modify
+         * them.
+         *
+         * @return double[]
+         */
+        public double[] toArray() {
+            double[] copy = new double[size];
+            System.arraycopy(values, 0, copy, 0, size);
+            return copy;
+        }
+
+        /**
+         * The smallest value present, skipping NaN.
+         *
+         * @return double, NaN if there are no values
+         */
+        public double min() {
+            double min = Double.NaN;
+            for (int i = 0; i < size; i++) {
+                if (Double.isNaN(min) || values[i] < min) {
+                    min = values[i];
+                }
+            }
+            return min;
+        }
+
+        /**
+         * The largest value present, skipping NaN.
+         *
+         * @return double, NaN if there are no values
+         */
+        public double max() {
+            double max = Double.NaN;
+            for (int i = 0; i < size; i++) {
+                if (Double.isNaN(max) || values[i] > max) {
+                    max = values[i];
+                }
+            }
+            return max;
+        }
+
+        /**
+         * The mean of the values present, skipping NaN.
+         *
+         * @return double
+         */
+        public double mean() {
+            double total = 0;
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (!Double.isNaN(values[i])) {
+                    total += values[i];
+                    count++;
+                }
+            }
+            return count == 0 ? Double.NaN : total / count;
+        }
+    }
+}
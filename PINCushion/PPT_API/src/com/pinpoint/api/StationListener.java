@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+/**
+ * Hears about each PINPoint as a DownloadStation works through it. Calls
+ * come from the download threads, several at once, so implementations must
+ * be thread safe and GUIs should hand the work to their own thread.
+ */
+public interface StationListener {
+
+    /**
+     * Called when a device has been identified and its download is about to
+     * start.
+     *
+     * @param serialNumber the PINPoint's serial number
+     * @param port the port it is on
+     * @param numRecords how many records it holds
+     */
+    void downloadStarted(int serialNumber, String port, int numRecords);
+
+    /**
+     * Called as records arrive: after every 64th record, and after the last
+     * one if that isn't a multiple of 64.
+     *
+     * @param serialNumber the PINPoint's serial number
+     * @param received how many records have arrived so far
+     * @param numRecords how many records it holds
+     */
+    void downloadProgress(int serialNumber, int received, int numRecords);
+
+    /**
+     * Called once for every device, whether or not its download worked.
+     *
+     * @param result what came off the device
+     */
+    void downloadFinished(DownloadStation.Result result);
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+import java.util.ArrayList;
+
+/**
+ * The PINPoint only stores time to the second, so when it samples faster
+ * than once a second the records within a second are spread evenly across
+ * it. This holds the records for the current second until a record from the
+ * next second shows up, stamps them, and passes them on.
+ */
+class TimeFixWindow {
+
+    private final int samplesPerSecond;
+    private final RecordSink sink;
+    private final ArrayList<String[]> group = new ArrayList<String[]>();
+    private String currentSecond = null;
+
+    /**
+     * @param sampleRate the sample rate in milliseconds, under 1000
+     * @param sink where stamped rows are sent, or null to stamp in place only
+     */
+    TimeFixWindow(int sampleRate, RecordSink sink) {
+        this.samplesPerSecond = 1000 / sampleRate;
+        this.sink = sink;
+    }
+
+    /**
+     * Adds the next row, flushing the previous second if this row starts a
+     * new one.
+     */
+    void add(String[] row) {
+        String second = row[0].substring(0, 19);
+
+        if (currentSecond != null && !second.equals(currentSecond)) {
+            flush();
+        }
+
+        currentSecond = second;
+        group.add(row);
+    }
+
+    /**
+     * Stamps and releases every row held for the current second. The last
+     * row of a second gets the last slot, so a partial first second lines
+     * up with the start of the next.
+     */
+    void flush() {
+        int slot = samplesPerSecond;
+
+        for (int k = group.size() - 1; k >= 0; k--) {
+            String[] row = group.get(k);
+            int millis = 100 / samplesPerSecond * --slot;
+
+            if (millis < 10) {
+                row[0] = row[0].substring(0, 19) + ":0" + millis + "0";
+            } else {
+                row[0] = row[0].substring(0, 19) + ":" + millis + "0";
+            }
+        }
+
+        if (sink != null) {
+            for (String[] row : group) {
+                sink.rowConverted(row);
+            }
+        }
+
+        group.clear();
+    }
+}
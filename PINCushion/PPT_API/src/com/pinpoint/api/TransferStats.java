@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+/**
+ * Counts what happened during one chunked download from a PINPoint: how
+ * many chunks were asked for, how many had to be asked for again and why,
+ * and how many bytes crossed the line to deliver the records.
+ */
+public class TransferStats {
+
+    private int chunks = 0;
+    private int requests = 0;
+    private int checksumFailures = 0;
+    private int timeouts = 0;
+    private long bytesReceived = 0;
+    private long usefulBytes = 0;
+    private long elapsed = 0;
+
+    void chunkRequested() {
+        requests++;
+    }
+
+    void chunkDelivered(int bytes) {
+        chunks++;
+        usefulBytes += bytes;
+    }
+
+    void checksumFailed() {
+        checksumFailures++;
+    }
+
+    void timedOut() {
+        timeouts++;
+    }
+
+    void received(int bytes) {
+        bytesReceived += bytes;
+    }
+
+    void finished(long elapsedMillis) {
+        elapsed = elapsedMillis;
+    }
+
+    /**
+     * @return chunks that arrived intact
+     */
+    public int getChunks() {
+        return chunks;
+    }
+
+    /**
+     * @return chunk requests sent, including retries
+     */
+    public int getRequests() {
+        return requests;
+    }
+
+    /**
+     * @return chunk requests that had to be repeated
+     */
+    public int getRetries() {
+        return requests - chunks;
+    }
+
+    /**
+     * @return chunks that arrived but failed their checksum
+     */
+    public int getChecksumFailures() {
+        return checksumFailures;
+    }
+
+    /**
+     * @return chunks that stopped arriving part way through
+     */
+    public int getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * @return every byte read off the line, including failed chunks
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * @return bytes of records delivered to the listener
+     */
+    public long getUsefulBytes() {
+        return usefulBytes;
+    }
+
+    public long getElapsedMillis() {
+        return elapsed;
+    }
+
+    /**
+     * @return the fraction of chunk requests that failed, from 0 to 1
+     */
+    public double getFailureRate() {
+        return requests == 0 ? 0.0 : (double) (checksumFailures + timeouts) / requests;
+    }
+
+    @Override
+    public String toString() {
+        return chunks + " chunks, " + getRetries() + " retried (" + checksumFailures + " bad checksums, "
+                + timeouts + " timeouts), " + usefulBytes + " of " + bytesReceived + " bytes useful";
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+import java.io.IOException;
+
+/**
+ * The byte pipe under a SerialChannel. Normally this is an RXTX serial port,
+ * but anything that can carry bytes both ways will do, such as the
+ * simulated PINPoints in com.pinpoint.sim. Other transports are made
+ * available under a port name with SerialChannel.addVirtualPort.
+ */
+public interface Transport {
+
+    /**
+     * Opens a transport for a port name.
+     */
+    interface Factory {
+
+        /**
+         * @param portName the name the port was registered under
+         * @param baudRate the baud rate asked for
+         * @param flowControl whether RTS/CTS flow control was asked for
+         * @return the open transport, not yet started
+         * @throws IOException if the port can't be opened, including when it
+         * is already in use
+         */
+        Transport open(String portName, int baudRate, boolean flowControl) throws IOException;
+    }
+
+    /**
+     * Takes incoming bytes as they arrive.
+     */
+    interface Receiver {
+
+        /**
+         * Called from the transport's own thread, never more than one call
+         * at a time. May block if the receiver is full.
+         */
+        void received(byte[] bytes, int offset, int length);
+    }
+
+    /**
+     * Starts passing incoming bytes to the receiver.
+     *
+     * @param receiver
+     * @throws IOException
+     */
+    void start(Receiver receiver) throws IOException;
+
+    /**
+     * Sends bytes, returning once they have been handed to the device.
+     *
+     * @param bytes
+     * @param offset
+     * @param length
+     * @throws IOException
+     */
+    void write(byte[] bytes, int offset, int length) throws IOException;
+
+    /**
+     * Stops delivery and releases the port.
+     */
+    void close();
+}
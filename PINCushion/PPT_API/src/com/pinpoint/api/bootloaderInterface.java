@@ -30,9 +30,7 @@ package com.pinpoint.api;
 import com.pinpoint.exceptions.IncorrectDeviceException;
 import com.pinpoint.exceptions.InvalidHexException;
 import com.pinpoint.exceptions.NoConnectionException;
-import java.io.BufferedReader;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 
@@ -98,41 +96,31 @@ public class bootloaderInterface {
     }
 
     public void FlashBootloader(String file) throws InvalidHexException {
-        try {
-            int count = 0;
-
-
-            BufferedReader reader = new BufferedReader(new FileReader(file));
-
-            String curString;
+        FlashBootloader(file, null);
+    }
 
-            ArrayList<Byte> bytes;
-            ArrayList<String> lines = new ArrayList<String>();
+    /**
+     * Flashes the firmware in a HEX file, reporting progress as it goes.
+     *
+     * @param file path to the .hex file
+     * @param listener told after each record, or null
+     * @throws InvalidHexException if the file or the bootloader finds a bad
+     * record
+     */
+    public void FlashBootloader(String file, FlashListener listener) throws InvalidHexException {
+        try {
+            long start = System.currentTimeMillis();
 
-            //Read in the file 
-            while ((curString = reader.readLine()) != null) {
-                lines.add(curString);
+            //Cached after the first flash, so the check costs a small read.
+            if (!FirmwareImage.forHex(file).isContiguous()) {
+                System.err.println(file + " does not run on from address 0; "
+                        + "the bootloader will write it where its addresses don't say");
             }
 
-            //Pepare lines for individual transmission.
-            for (int i = 0; i < lines.size(); i++) {
-                bytes = new ArrayList<Byte>();
-                String tmp = lines.get(i);
-                for (int j = 0; j < tmp.length(); j++) {
-                    bytes.add((byte) tmp.charAt(j));
-                }
-                bytes.add((byte) '\r');
-                bytes.add((byte) '\n');
-
-
-                boolean x = bootpoint.SendLine(bytes);
-
-                if (!x) {
-                    System.out.println("Finished");
-                    return;
-                } else {
-                    count++;
-                }
+            HexImage image = HexImage.load(file);
+            if (bootpoint.flash(image, listener)) {
+                System.out.println("Finished: " + image.getRecordCount() + " records in "
+                        + (System.currentTimeMillis() - start) + " ms");
             }
 
         } catch (FileNotFoundException ex) {
@@ -32,11 +32,13 @@ import com.pinpoint.exceptions.IncorrectDeviceException;
 import com.pinpoint.exceptions.InvalidHexException;
 import com.pinpoint.exceptions.NoConnectionException;
 import com.pinpoint.exceptions.NoDataException;
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
 import java.util.HashMap;
 import java.util.prefs.BackingStoreException;
 import java.util.prefs.Preferences;
@@ -57,6 +59,16 @@ public class pinpointInterface {
     // The number of pages of flash memory.
     private static final int FLASH_PAGES = 4096;
     private boolean attempted = true;
+    // The converter used for the last download, for its sensor names.
+    private volatile PinpointConverter converter = null;
+    // Where the connection came from, if it is shared between actions.
+    private ConnectionManager manager = null;
+    // Set once the PINPoint has been reset, so its connection isn't reused.
+    private boolean discardConnection = false;
+    private boolean disconnected = false;
+    private File spoolDirectory = DownloadSpool.getDefaultDirectory();
+    // The raw records of the last download or opened session.
+    private volatile SessionFile session = null;
 
     /**
      * The constructor for the interface will try to initiate the
@@ -103,6 +115,19 @@ public class pinpointInterface {
         }
     }
 
+    /**
+     * Uses the PINPoint kept open by a connection manager instead of
+     * detecting one. disconnect() gives it back to the manager.
+     *
+     * @param manager the application's connection manager
+     * @throws NoConnectionException
+     */
+    public pinpointInterface(ConnectionManager manager) throws NoConnectionException {
+        this.manager = manager;
+        this.pinpoint = manager.acquire();
+        myPrefs = Preferences.userNodeForPackage(this.getClass());
+    }
+
     /**
      * Get all of the data from the connected PINPoint. Runs all of the data
      * through known conversions to provide human readable output.
@@ -115,23 +140,47 @@ public class pinpointInterface {
      */
     public ArrayList<String[]> getData() throws NoDataException, IncompatibleConversionException, BackingStoreException {
 
-        HashMap<Integer, Integer> settings = null;
-        System.out.println("Getting records");
-        ArrayList<String[]> conversions = null;
+        final ArrayList<String[]> records = new ArrayList<String[]>();
+
+        boolean valid = getData(new RecordSink() {
 
-        ArrayList<String[]> records = new ArrayList<String[]>();
+            public void rowConverted(String[] values) {
+                records.add(values);
+            }
+
+            public void conversionFinished(boolean checksumValid) {
+            }
+        });
+
+        return valid ? records : null;
+    }
+
+    /**
+     * Streams all of the data from the connected PINPoint to a sink. Each
+     * record is converted as soon as it comes off the serial line, so the
+     * sink sees rows while the download is still running.
+     *
+     * @param sink where converted rows are sent
+     * @return true if every record arrived intact
+     * @throws NoDataException
+     * @throws IncompatibleConversionException
+     * @throws BackingStoreException
+     */
+    public boolean getData(RecordSink sink) throws NoDataException, IncompatibleConversionException, BackingStoreException {
+
+        System.out.println("Getting records");
 
         try {
             //Get the settings from the pinpoint
-
-            settings = pinpoint.GetSettings();
+            HashMap<Integer, Integer> settings = pinpoint.GetSettings();
 
             //Get the conversions from the conversions file.
             System.out.println("Getting conversions");
-            conversions = this.GetConversions();
+            ArrayList<String[]> conversions = this.GetConversions();
 
             //Create an instance of the Pinpoint converter
             PinpointConverter pc = new PinpointConverter(settings, conversions);
+            converter = pc;
 
             //Get the data header from the pinpoint.
             byte[] dh = pinpoint.getDataHeader();
@@ -139,20 +188,292 @@ public class pinpointInterface {
             //Figure out how many records are stored on the pinpoint.
             int numRecords = (((dh[0]) << 16) + ((dh[1] & 255) << 8) + (dh[2] & 255)) / 32;
 
-            //Request all data from the pinpoint.
-            System.out.println("Getting settings");
-            ArrayList<byte[]> rawData = pinpoint.requestData(dh, numRecords);
+            //Convert records as they arrive from the pinpoint.
+            RecordPipeline pipeline = new RecordPipeline(pc, settings.get(PinComm.SAMPLE_RATE), sink);
+            return pinpoint.requestData(dh, numRecords, pipeline);
+
+        } catch (NoConnectionException ex) {
+            System.err.println("NoConnectionException thrown while getting data");
+        } catch (IOException ex) {
+            System.err.println("IOException thrown while getting data");
+        }
+
+        return false;
+    }
+
+    /**
+     * Streams all of the data from the connected PINPoint to a sink, keeping
+     * a copy of the raw records on disk. Records already spooled by an
+     * earlier download are not fetched again, so a download that failed part
+     * way resumes from its last good chunk, and one made after more
+     * recording only fetches the new records. The spool is started over if
+     * the PINPoint has been cleared since.
+     *
+     * Nothing is sent to the sink unless every record is in the spool.
+     *
+     * @param sink where converted rows are sent
+     * @return true if every record is now spooled and was converted
+     * @throws NoDataException
+     * @throws IncompatibleConversionException
+     * @throws BackingStoreException
+     */
+    public boolean getDataResumable(RecordSink sink) throws NoDataException, IncompatibleConversionException, BackingStoreException {
+
+        System.out.println("Getting records");
+
+        try {
+            HashMap<Integer, Integer> settings = pinpoint.GetSettings();
+
+            System.out.println("Getting conversions");
+            ArrayList<String[]> conversions = this.GetConversions();
+
+            PinpointConverter pc = new PinpointConverter(settings, conversions);
+            converter = pc;
+
+            int serialNumber = pinpoint.getSerialNumber();
+            if (serialNumber < 0) {
+                //Without a serial number one PINPoint's spool could be taken for another's.
+                System.err.println("Could not read the serial number, downloading without a spool");
+                return getData(sink);
+            }
+
+            byte[] dh = pinpoint.getDataHeader();
+            int numRecords = (((dh[0]) << 16) + ((dh[1] & 255) << 8) + (dh[2] & 255)) / 32;
+
+            DownloadSpool spool = DownloadSpool.open(spoolDirectory, serialNumber);
+            if (!isSameSession(spool, numRecords)) {
+                System.out.println("PINPoint " + serialNumber + " has been cleared, starting a new spool");
+                spool.reset();
+            }
+            System.out.println(spool.getRecordCount() + " of " + numRecords + " records already downloaded");
+
+            if (spool.getRecordCount() < numRecords) {
+                int first = spool.getRecordCount();
+                ChunkSpooler spooler = new ChunkSpooler(spool);
+
+                boolean valid = pinpoint.requestRange(first, numRecords - first, spooler);
+                spooler.checkError();
+
+                if (!valid) {
+                    System.err.println("Records from " + spool.getRecordCount() + " on were corrupted, download again to resume");
+                    return false;
+                }
+            }
+
+            session = new SessionFile(serialNumber, settings, conversions, spool.readAll(), numRecords);
+            session.replay(new RecordPipeline(pc, settings.get(PinComm.SAMPLE_RATE), sink));
+            return true;
+
+        } catch (NoConnectionException ex) {
+            System.err.println("NoConnectionException thrown while getting data");
+        } catch (IOException ex) {
+            System.err.println("IOException thrown while getting data");
+        }
+
+        return false;
+    }
+
+    /**
+     * Adds records to a spool as PinComm hands them over. PinComm only passes
+     * on whole chunks whose checksum matched, so each chunk is spooled as
+     * soon as it arrives and a failure later in the download loses nothing
+     * already checked.
+     */
+    private static class ChunkSpooler implements RecordListener {
+
+        private final DownloadSpool spool;
+        private final byte[] chunk = new byte[PinComm.CHUNK_RECORDS * RecordDecoder.RECORD_SIZE];
+        private int received = 0;
+        private IOException error = null;
+
+        ChunkSpooler(DownloadSpool spool) {
+            this.spool = spool;
+        }
+
+        public void recordReceived(byte[] record) {
+            System.arraycopy(record, 0, chunk, received * RecordDecoder.RECORD_SIZE, RecordDecoder.RECORD_SIZE);
+            received++;
+
+            if (received == PinComm.CHUNK_RECORDS) {
+                append();
+            }
+        }
+
+        public void downloadFinished(boolean checksumValid) {
+            //The last chunk of a range can be short.
+            append();
+        }
+
+        /**
+         * Rethrows the first error met while writing the spool.
+         */
+        void checkError() throws IOException {
+            if (error != null) {
+                throw error;
+            }
+        }
+
+        private void append() {
+            if (received > 0 && error == null) {
+                try {
+                    spool.append(chunk, received);
+                } catch (IOException e) {
+                    error = e;
+                }
+            }
+            received = 0;
+        }
+    }
+
+    /**
+     * Checks that a spool holds the start of what is on the PINPoint now: it
+     * can't hold more records than the PINPoint, and its first record must
+     * match the PINPoint's.
+     */
+    private boolean isSameSession(DownloadSpool spool, int numRecords) throws NoConnectionException, IOException {
+        if (spool.getRecordCount() == 0) {
+            return true;
+        }
+        if (spool.getRecordCount() > numRecords) {
+            return false;
+        }
+
+        final byte[][] first = new byte[1][];
+        boolean valid = pinpoint.requestRange(0, 1, new RecordListener() {
+
+            public void recordReceived(byte[] record) {
+                first[0] = record;
+            }
+
+            public void downloadFinished(boolean checksumValid) {
+            }
+        });
+
+        if (!valid) {
+            //Can't tell, so keep the spool for the next try.
+            throw new IOException();
+        }
+        return Arrays.equals(first[0], spool.getFirstRecord());
+    }
+
+    /**
+     * Sets where getDataResumable keeps its spools.
+     *
+     * @param directory defaults to DownloadSpool.getDefaultDirectory()
+     */
+    public void setSpoolDirectory(File directory) {
+        spoolDirectory = directory;
+    }
+
+    /**
+     * Gets all of the data from the connected PINPoint, downloading the raw
+     * records first and then converting them on every processor. Gives the
+     * same rows as getData() but is quicker for large dumps on multi-core
+     * machines.
+     *
+     * @return ArrayList<String[]>, or null if the download failed or was corrupt
+     * @throws NoDataException
+     * @throws IncompatibleConversionException
+     * @throws BackingStoreException
+     */
+    public ArrayList<String[]> getDataParallel() throws NoDataException, IncompatibleConversionException, BackingStoreException {
+
+        System.out.println("Getting records");
+
+        try {
+            HashMap<Integer, Integer> settings = pinpoint.GetSettings();
+
+            System.out.println("Getting conversions");
+            ArrayList<String[]> conversions = this.GetConversions();
+
+            ParallelConverter parallel = new ParallelConverter(settings, conversions);
+            converter = parallel.getConverter();
+
+            byte[] dh = pinpoint.getDataHeader();
+            final int numRecords = (((dh[0]) << 16) + ((dh[1] & 255) << 8) + (dh[2] & 255)) / 32;
+
+            final byte[] dump = new byte[numRecords * RecordDecoder.RECORD_SIZE];
+            final int[] received = new int[1];
+
+            boolean valid = pinpoint.requestData(dh, numRecords, new RecordListener() {
+
+                public void recordReceived(byte[] record) {
+                    System.arraycopy(record, 0, dump, received[0] * RecordDecoder.RECORD_SIZE, RecordDecoder.RECORD_SIZE);
+                    received[0]++;
+                }
+
+                public void downloadFinished(boolean checksumValid) {
+                }
+            });
 
-            //Convert all data recieved from the pinpoint.
-            for (int i = 0; i < numRecords; i++) {
-                records.add(pc.convertAll(rawData.get(i)));
+            if (!valid) {
+                return null;
             }
 
-            if (settings.get(PinComm.SAMPLE_RATE) < 1000) {
-                pc.fixTime(records, settings.get(PinComm.SAMPLE_RATE));
+            return parallel.convert(dump, numRecords);
+
+        } catch (NoConnectionException ex) {
+            System.err.println("NoConnectionException thrown while getting data");
+        } catch (IOException ex) {
+            System.err.println("IOException thrown while getting data");
+        } catch (InterruptedException ex) {
+            System.err.println("Interrupted while converting data");
+            Thread.currentThread().interrupt();
+        }
+
+        return null;
+    }
+
+    /**
+     * Downloads all of the data from the connected PINPoint into a columnar
+     * table of numbers instead of rows of strings. Records are decoded as
+     * they arrive and times are spread within their second when the PINPoint
+     * samples faster than once a second.
+     *
+     * @return SessionTable, or null if the download failed or was corrupt
+     * @throws NoDataException
+     * @throws IncompatibleConversionException
+     * @throws BackingStoreException
+     */
+    public SessionTable getSession() throws NoDataException, IncompatibleConversionException, BackingStoreException {
+
+        System.out.println("Getting records");
+
+        try {
+            HashMap<Integer, Integer> settings = pinpoint.GetSettings();
+
+            System.out.println("Getting conversions");
+            ArrayList<String[]> conversions = this.GetConversions();
+
+            converter = new PinpointConverter(settings, conversions);
+            final RecordDecoder decoder = converter.getDecoder();
+
+            byte[] dh = pinpoint.getDataHeader();
+            int numRecords = (((dh[0]) << 16) + ((dh[1] & 255) << 8) + (dh[2] & 255)) / 32;
+
+            final SessionTable table = new SessionTable(numRecords);
+            final double[] scratch = new double[RecordDecoder.CHANNELS];
+            final byte[] raw = new byte[numRecords * RecordDecoder.RECORD_SIZE];
+
+            boolean valid = pinpoint.requestData(dh, numRecords, new RecordListener() {
+
+                public void recordReceived(byte[] record) {
+                    System.arraycopy(record, 0, raw, table.size() * RecordDecoder.RECORD_SIZE, RecordDecoder.RECORD_SIZE);
+                    table.add(decoder, record, 0, scratch);
+                }
+
+                public void downloadFinished(boolean checksumValid) {
+                }
+            });
+
+            if (!valid) {
+                return null;
             }
 
-            return records;
+            session = new SessionFile(pinpoint.getSerialNumber(), settings, conversions, raw, numRecords);
+            table.fixTime(settings.get(PinComm.SAMPLE_RATE));
+            return table;
+
         } catch (NoConnectionException ex) {
             System.err.println("NoConnectionException thrown while getting data");
         } catch (IOException ex) {
@@ -160,7 +481,126 @@ public class pinpointInterface {
         }
 
         return null;
+    }
+
+    /**
+     * Downloads all of the data from the connected PINPoint straight into an
+     * iSENSE data file. Each record is written as it arrives, so the
+     * download never has to fit in memory.
+     *
+     * @param out where the file goes; it is flushed but left open
+     * @return true if the whole download arrived and its checksum matched
+     * @throws NoDataException
+     * @throws IncompatibleConversionException
+     * @throws BackingStoreException
+     * @throws IOException if the PINPoint stopped answering or the file
+     * couldn't be written
+     */
+    public boolean exportData(Writer out) throws NoDataException, IncompatibleConversionException, BackingStoreException, IOException {
+
+        System.out.println("Getting records");
+
+        try {
+            HashMap<Integer, Integer> settings = pinpoint.GetSettings();
+
+            System.out.println("Getting conversions");
+            ArrayList<String[]> conversions = this.GetConversions();
+
+            converter = new PinpointConverter(settings, conversions);
+
+            byte[] dh = pinpoint.getDataHeader();
+            int numRecords = (((dh[0]) << 16) + ((dh[1] & 255) << 8) + (dh[2] & 255)) / 32;
+
+            CsvWriter csv = new CsvWriter(out, converter, settings.get(PinComm.SAMPLE_RATE));
+            csv.writeComment("DOU:" + Calendar.getInstance().getTime());
+            csv.writeHeader(converter.getFileHeaders());
+
+            boolean valid = pinpoint.requestData(dh, numRecords, csv);
+
+            csv.flush();
+            if (csv.getError() != null) {
+                throw csv.getError();
+            }
+            return valid;
+
+        } catch (NoConnectionException ex) {
+            System.err.println("NoConnectionException thrown while getting data");
+        }
+
+        return false;
+    }
 
+    /**
+     * The raw records of the last session downloaded with getSession or
+     * getDataResumable, or opened with openSession, along with the settings
+     * and conversions needed to convert them again. Save it to reopen the
+     * session later without the PINPoint.
+     *
+     * @return SessionFile, or null if nothing has been downloaded or opened
+     */
+    public SessionFile getLastSession() {
+        return session;
+    }
+
+    /**
+     * Opens a saved session and converts it into a table without needing a
+     * PINPoint. Sensors are converted with the current conversions where
+     * there are any, so a session picks up conversions updated since it was
+     * saved.
+     *
+     * @param file a file written by SessionFile.save
+     * @return SessionTable
+     * @throws IOException if the file can't be read or isn't a session
+     * @throws IncompatibleConversionException
+     * @throws BackingStoreException
+     */
+    public SessionTable openSession(File file) throws IOException, IncompatibleConversionException, BackingStoreException {
+        SessionFile opened = SessionFile.open(file);
+        PinpointConverter pc = opened.getConverter(this.GetConversions());
+
+        converter = pc;
+        session = opened;
+        return opened.toTable(pc);
+    }
+
+    /**
+     * Opens a saved session and streams its converted rows to a sink, as
+     * getData(RecordSink) does for a download.
+     *
+     * @param file a file written by SessionFile.save
+     * @param sink where converted rows are sent
+     * @throws IOException if the file can't be read or isn't a session
+     * @throws IncompatibleConversionException
+     * @throws BackingStoreException
+     */
+    public void openSession(File file, RecordSink sink) throws IOException, IncompatibleConversionException, BackingStoreException {
+        SessionFile opened = SessionFile.open(file);
+        PinpointConverter pc = opened.getConverter(this.GetConversions());
+
+        converter = pc;
+        session = opened;
+        opened.replay(new RecordPipeline(pc, opened.getSettings().get(PinComm.SAMPLE_RATE), sink));
+    }
+
+    /**
+     * Column names for display, naming the sensors of the last download.
+     *
+     * @return String[]
+     */
+    public String[] getTableHeaders() {
+        PinpointConverter last = converter;
+        return last == null ? PinpointConverter.getDefaultTableHeaders() : last.getTableHeaders();
+    }
+
+    /**
+     * Column names for iSENSE data files, naming the sensors of the last
+     * download.
+     *
+     * @return String[]
+     */
+    public String[] getFileHeaders() {
+        PinpointConverter last = converter;
+        return last == null ? PinpointConverter.getDefaultFileHeaders() : last.getFileHeaders();
     }
 
     public String getPort() {
@@ -171,6 +611,18 @@ public class pinpointInterface {
      * Disconnect the pointpoint and shut down communications cleanly.
      */
     public void disconnect() {
+        if (manager != null) {
+            if (!disconnected) {
+                if (discardConnection) {
+                    manager.discard(pinpoint);
+                } else {
+                    manager.release(pinpoint);
+                }
+                disconnected = true;
+            }
+            return;
+        }
+
         try {
             pinpoint.close();
         } catch (IOException ex) {
@@ -223,6 +675,7 @@ public class pinpointInterface {
      * Resets the connected PINPoint.
      */
     public void resetPinpoint() {
+        discardConnection = true;
         try {
             pinpoint.resetPinpoint();
         } catch (NoConnectionException ex) {
@@ -274,12 +727,19 @@ public class pinpointInterface {
         return pinpoint.GetSettings();
     }
 
-    public void SetMultipleSettings(HashMap<Integer, Integer> changes) {
+    /**
+     * Writes all of the changed settings at once and checks them.
+     *
+     * @param changes new values keyed by PinComm.XXXXX
+     * @return true if every setting was written and read back correctly
+     */
+    public boolean SetMultipleSettings(HashMap<Integer, Integer> changes) {
         try {
-            pinpoint.SetMultipleSettings(changes);
+            return pinpoint.SetMultipleSettings(changes);
         } catch (NoConnectionException ex) {
             System.err.println("NoConnectionException thrown while trying to set multiple settings");
         }
+        return false;
     }
 
     public int getSerialNumber() {
@@ -295,6 +755,7 @@ public class pinpointInterface {
     }
 
     public void initiateBootloader() {
+        discardConnection = true;
         try {
             System.out.println("Made it into initiateBootloader");
             pinpoint.initiateBootloader();
@@ -349,62 +810,16 @@ public class pinpointInterface {
         }
     }
 
+    /**
+     * Checks every line of a HEX file before it is sent to the bootloader.
+     *
+     * @param file path to the .hex file
+     * @throws FileNotFoundException
+     * @throws IOException
+     * @throws InvalidHexException describing the first bad line
+     */
     public void verifyHex(String file) throws FileNotFoundException, IOException, InvalidHexException {
-
-        int COLON = 1;
-        int NUM_BYTES_H = 2;
-        int NUM_BYTES_L = 3;
-
-        BufferedReader reader = new BufferedReader(new FileReader(file));
-
-        ArrayList<String> lines = new ArrayList<String>();
-        String curline;
-        while ((curline = reader.readLine()) != null) {
-            lines.add(curline);
-        }
-
-        System.out.println("Length " + lines.size());
-
-        for (String s : lines) {
-            String[] hexline = s.split("");
-
-            //Check for :
-            if (hexline[COLON].compareTo(":") != 0) {
-                throw new InvalidHexException(InvalidHexException.NO_COLON);
-            }
-
-            //Check num bytes
-            int numbytes = (Integer.parseInt(hexline[NUM_BYTES_H], 16) << 4) + Integer.parseInt(hexline[NUM_BYTES_L], 16);
-
-            if ((numbytes * 2) + 11 != hexline.length - 1) {
-                throw new InvalidHexException(InvalidHexException.BYTE_COUNT_ERROR);
-            }
-
-            //Validate checksum
-            byte b = (byte) 0x00;
-            for (int i = 2; i < hexline.length - 2; i += 2) {
-                String x = hexline[i] + "" + hexline[i + 1];
-                b += Integer.parseInt(x, 16);
-            }
-            String ComputedChecksum = Integer.toHexString((byte) 0x100 - b);
-
-
-            if (ComputedChecksum.length() > 2) {
-                ComputedChecksum = ComputedChecksum.substring(ComputedChecksum.length() - 2, ComputedChecksum.length());
-            }
-            if (ComputedChecksum.length() == 1) {
-                ComputedChecksum = "0" + ComputedChecksum;
-            }
-
-            String checksum = s.substring(s.length() - 2, s.length());
-
-            System.out.println(checksum + "<->" + ComputedChecksum);
-            if (ComputedChecksum.compareToIgnoreCase(checksum) != 0) {
-                throw new InvalidHexException(InvalidHexException.INVALID_CHECKSUM);
-            }
-        }
-
-
+        HexImage.load(file);
     }
 
     public int getNumReadings() throws NoConnectionException, NoDataException {
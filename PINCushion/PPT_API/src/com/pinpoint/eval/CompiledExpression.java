@@ -0,0 +1,250 @@
+package com.pinpoint.eval;
+
+/*
+ * Copyright 2008  Reg Whitton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Extensions Copyright (c) 2008, iSENSE Project.
+ */
+
+
+import java.math.BigDecimal;
+
+/**
+ * An {@link Expression} of a single variable compiled to work on doubles.
+ * <P>
+ * Evaluation walks a tree of nodes built once from the parsed expression, so
+ * it allocates nothing and may be shared between threads. Results follow
+ * double arithmetic rather than the 34 digit {@link BigDecimal} arithmetic
+ * of {@link Expression#eval(java.util.Map)}, so they can differ in the last
+ * few bits.
+ * <P>
+ * Example of use:
+ * 
+ * <PRE>
+ * CompiledExpression exp = new Expression(&quot;(x/1023)*5&quot;).compile(&quot;x&quot;);
+ * 
+ * double result = exp.eval(512);
+ * </PRE>
+ */
+public final class CompiledExpression
+{
+	private final Node root;
+	private final String variable;
+
+	CompiledExpression(Operation operation, String variable)
+	{
+		this.variable = variable;
+		this.root = build(operation, variable);
+	}
+
+	/**
+	 * Evaluate the expression.
+	 * 
+	 * @param value
+	 *            the value of the variable the expression was compiled for.
+	 * @return the result of the evaluation
+	 */
+	public double eval(double value)
+	{
+		return this.root.eval(value);
+	}
+
+	/**
+	 * The name of the variable the expression was compiled for.
+	 */
+	public String getVariable()
+	{
+		return this.variable;
+	}
+
+	@Override
+	public String toString()
+	{
+		return this.root.toString();
+	}
+
+	private static Node build(Object operand, String variable)
+	{
+		if (operand instanceof Operation)
+		{
+			Operation operation = (Operation) operand;
+			switch (operation.operator.numberOfOperands)
+			{
+				case 3:
+					return new Ternary(build(operation.operand1, variable),
+							build(operation.operand2, variable), build(
+									operation.operand3, variable));
+				case 2:
+					return new Binary(operation.operator, build(
+							operation.operand1, variable), build(
+							operation.operand2, variable));
+				default:
+					if (operation.operator == Operator.NOP)
+					{
+						return build(operation.operand1, variable);
+					}
+					return new Unary(operation.operator, build(
+							operation.operand1, variable));
+			}
+		}
+		else if (operand instanceof String)
+		{
+			if (!operand.equals(variable))
+			{
+				throw new RuntimeException("no value for variable \"" + operand
+						+ "\"");
+			}
+			return new Variable(variable);
+		}
+		else
+		{
+			return new Constant((BigDecimal) operand);
+		}
+	}
+
+	private static abstract class Node
+	{
+		abstract double eval(double value);
+	}
+
+	private static final class Constant extends Node
+	{
+		private final double value;
+		private final String string;
+
+		Constant(BigDecimal value)
+		{
+			this.value = value.doubleValue();
+			this.string = value.toString();
+		}
+
+		@Override
+		double eval(double ignored)
+		{
+			return this.value;
+		}
+
+		@Override
+		public String toString()
+		{
+			return this.string;
+		}
+	}
+
+	private static final class Variable extends Node
+	{
+		private final String name;
+
+		Variable(String name)
+		{
+			this.name = name;
+		}
+
+		@Override
+		double eval(double value)
+		{
+			return value;
+		}
+
+		@Override
+		public String toString()
+		{
+			return this.name;
+		}
+	}
+
+	private static final class Unary extends Node
+	{
+		private final Operator operator;
+		private final Node operand;
+
+		Unary(Operator operator, Node operand)
+		{
+			this.operator = operator;
+			this.operand = operand;
+		}
+
+		@Override
+		double eval(double value)
+		{
+			return this.operator.perform(this.operand.eval(value), 0, 0);
+		}
+
+		@Override
+		public String toString()
+		{
+			return "(" + this.operator.string + this.operand + ")";
+		}
+	}
+
+	private static final class Binary extends Node
+	{
+		private final Operator operator;
+		private final Node operand1;
+		private final Node operand2;
+
+		Binary(Operator operator, Node operand1, Node operand2)
+		{
+			this.operator = operator;
+			this.operand1 = operand1;
+			this.operand2 = operand2;
+		}
+
+		@Override
+		double eval(double value)
+		{
+			return this.operator.perform(this.operand1.eval(value),
+					this.operand2.eval(value), 0);
+		}
+
+		@Override
+		public String toString()
+		{
+			return "(" + this.operand1 + this.operator.string + this.operand2
+					+ ")";
+		}
+	}
+
+	/**
+	 * Only the chosen branch is evaluated.
+	 */
+	private static final class Ternary extends Node
+	{
+		private final Node condition;
+		private final Node ifTrue;
+		private final Node ifFalse;
+
+		Ternary(Node condition, Node ifTrue, Node ifFalse)
+		{
+			this.condition = condition;
+			this.ifTrue = ifTrue;
+			this.ifFalse = ifFalse;
+		}
+
+		@Override
+		double eval(double value)
+		{
+			return this.condition.eval(value) != 0 ? this.ifTrue.eval(value)
+					: this.ifFalse.eval(value);
+		}
+
+		@Override
+		public String toString()
+		{
+			return "(" + this.condition + "?" + this.ifTrue + ":"
+					+ this.ifFalse + ")";
+		}
+	}
+}
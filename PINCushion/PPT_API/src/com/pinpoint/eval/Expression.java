@@ -175,6 +175,23 @@ public class Expression
 		return this.eval((Map<String, BigDecimal>) null);
 	}
 
+	/**
+	 * Compile the expression to evaluate quickly on doubles. This is meant for
+	 * expressions evaluated many times over, such as sensor equations, where
+	 * the exact {@link BigDecimal} arithmetic of {@link #eval(Map)} is not
+	 * needed.
+	 * 
+	 * @param variable
+	 *            the name of the only variable the expression may reference.
+	 * @return the compiled expression
+	 * @throws RuntimeException
+	 *             if the expression references any other variable.
+	 */
+	public CompiledExpression compile(String variable)
+	{
+		return new CompiledExpression(this.rootOperation, variable);
+	}
+
 	/**
 	 * A convenience method that constructs an {@link Expression} and evaluates
 	 * it.
@@ -33,6 +33,11 @@ enum Operator {
                 BigDecimal value3) {
             throw new RuntimeException("END is a dummy operation");
         }
+
+        @Override
+        double perform(double value1, double value2, double value3) {
+            throw new RuntimeException("END is a dummy operation");
+        }
     },
     /**
      * condition ? (expression if true) : (expression if false)
@@ -44,6 +49,11 @@ enum Operator {
                 BigDecimal value3) {
             return (value1.signum() != 0) ? value2 : value3;
         }
+
+        @Override
+        double perform(double value1, double value2, double value3) {
+            return (value1 != 0) ? value2 : value3;
+        }
     },
     /**
      * &amp;&amp;
@@ -56,6 +66,11 @@ enum Operator {
             return value1.signum() != 0 && value2.signum() != 0 ? BigDecimal.ONE
                     : BigDecimal.ZERO;
         }
+
+        @Override
+        double perform(double value1, double value2, double value3) {
+            return value1 != 0 && value2 != 0 ? 1 : 0;
+        }
     },
     /**
      * ||
@@ -68,6 +83,11 @@ enum Operator {
             return value1.signum() != 0 || value2.signum() != 0 ? BigDecimal.ONE
                     : BigDecimal.ZERO;
         }
+
+        @Override
+        double perform(double value1, double value2, double value3) {
+            return value1 != 0 || value2 != 0 ? 1 : 0;
+        }
     },
     /**
      * &gt;
@@ -80,6 +100,11 @@ enum Operator {
             return value1.compareTo(value2) > 0 ? BigDecimal.ONE
                     : BigDecimal.ZERO;
         }
+
+        @Override
+        double perform(double value1, double value2, double value3) {
+            return value1 > value2 ? 1 : 0;
+        }
     },
     /**
      * &gt;=
@@ -92,6 +117,11 @@ enum Operator {
             return value1.compareTo(value2) >= 0 ? BigDecimal.ONE
                     : BigDecimal.ZERO;
         }
+
+        @Override
+        double perform(double value1, double value2, double value3) {
+            return value1 >= value2 ? 1 : 0;
+        }
     },
     /**
      * &lt;
@@ -104,6 +134,11 @@ enum Operator {
             return value1.compareTo(value2) < 0 ? BigDecimal.ONE
                     : BigDecimal.ZERO;
         }
+
+        @Override
+        double perform(double value1, double value2, double value3) {
+            return value1 < value2 ? 1 : 0;
+        }
     },
     /**
      * &lt;=
@@ -116,6 +151,11 @@ enum Operator {
             return value1.compareTo(value2) <= 0 ? BigDecimal.ONE
                     : BigDecimal.ZERO;
         }
+
+        @Override
+        double perform(double value1, double value2, double value3) {
+            return value1 <= value2 ? 1 : 0;
+        }
     },
     /**
      * ==
@@ -128,6 +168,11 @@ enum Operator {
             return value1.compareTo(value2) == 0 ? BigDecimal.ONE
                     : BigDecimal.ZERO;
         }
+
+        @Override
+        double perform(double value1, double value2, double value3) {
+            return value1 == value2 ? 1 : 0;
+        }
     },
     /**
      * != or &lt;&gt;
@@ -140,6 +185,11 @@ enum Operator {
             return value1.compareTo(value2) != 0 ? BigDecimal.ONE
                     : BigDecimal.ZERO;
         }
+
+        @Override
+        double perform(double value1, double value2, double value3) {
+            return value1 != value2 ? 1 : 0;
+        }
     },
     /**
      * +
@@ -151,6 +201,11 @@ enum Operator {
                 BigDecimal value3) {
             return value1.add(value2);
         }
+
+        @Override
+        double perform(double value1, double value2, double value3) {
+            return value1 + value2;
+        }
     },
     /**
      * -
@@ -162,6 +217,11 @@ enum Operator {
                 BigDecimal value3) {
             return value1.subtract(value2);
         }
+
+        @Override
+        double perform(double value1, double value2, double value3) {
+            return value1 - value2;
+        }
     },
     /**
      * /
@@ -173,6 +233,14 @@ enum Operator {
                 BigDecimal value3) {
             return value1.divide(value2, MathContext.DECIMAL128);
         }
+
+        @Override
+        double perform(double value1, double value2, double value3) {
+            if (value2 == 0) {
+                throw new ArithmeticException("Division by zero");
+            }
+            return value1 / value2;
+        }
     },
     /**
      * %
@@ -184,6 +252,14 @@ enum Operator {
                 BigDecimal value3) {
             return value1.remainder(value2, MathContext.DECIMAL128);
         }
+
+        @Override
+        double perform(double value1, double value2, double value3) {
+            if (value2 == 0) {
+                throw new ArithmeticException("Division by zero");
+            }
+            return value1 % value2;
+        }
     },
     /**
      * *
@@ -195,6 +271,11 @@ enum Operator {
                 BigDecimal value3) {
             return value1.multiply(value2);
         }
+
+        @Override
+        double perform(double value1, double value2, double value3) {
+            return value1 * value2;
+        }
     },
     /**
      * -negate
@@ -206,6 +287,11 @@ enum Operator {
                 BigDecimal value3) {
             return value1.negate();
         }
+
+        @Override
+        double perform(double value1, double value2, double value3) {
+            return -value1;
+        }
     },
     /**
      * +plus
@@ -217,6 +303,11 @@ enum Operator {
                 BigDecimal value3) {
             return value1;
         }
+
+        @Override
+        double perform(double value1, double value2, double value3) {
+            return value1;
+        }
     },
     /**
      * abs
@@ -228,6 +319,11 @@ enum Operator {
                 BigDecimal value3) {
             return value1.abs();
         }
+
+        @Override
+        double perform(double value1, double value2, double value3) {
+            return Math.abs(value1);
+        }
     },
     /**
      * pow
@@ -243,6 +339,14 @@ enum Operator {
                 throw new RuntimeException("pow argument: " + ae.getMessage());
             }
         }
+
+        @Override
+        double perform(double value1, double value2, double value3) {
+            if (value2 != Math.rint(value2) || Math.abs(value2) > 999999999) {
+                throw new RuntimeException("pow argument: Rounding necessary");
+            }
+            return Math.pow(value1, value2);
+        }
     },
     /**
      * int
@@ -254,6 +358,11 @@ enum Operator {
                 BigDecimal value3) {
             return new BigDecimal(value1.toBigInteger());
         }
+
+        @Override
+        double perform(double value1, double value2, double value3) {
+            return value1 < 0 ? Math.ceil(value1) : Math.floor(value1);
+        }
     },
     /**
      * scaleByPow10
@@ -264,6 +373,11 @@ enum Operator {
                 BigDecimal value3) {
             return value1.scaleByPowerOfTen(value2.intValue());
         }
+
+        @Override
+        double perform(double value1, double value2, double value3) {
+            return value1 * Math.pow(10, (int) value2);
+        }
     },
 
     LN(4,1,"ln",Type.ARITHMETIC, Type.ARITHMETIC){
@@ -273,6 +387,11 @@ enum Operator {
             double x = value1.doubleValue();
             return new BigDecimal (Math.log(x));
         }
+
+        @Override
+        double perform(double value1, double value2, double value3) {
+            return Math.log(value1);
+        }
     },
     /**
      * No operation - used internally when expression contains only a reference
@@ -285,6 +404,11 @@ enum Operator {
                 BigDecimal value3) {
             return value1;
         }
+
+        @Override
+        double perform(double value1, double value2, double value3) {
+            return value1;
+        }
     };
     final int precedence;
     final int numberOfOperands;
@@ -303,4 +427,10 @@ enum Operator {
 
     abstract BigDecimal perform(BigDecimal value1, BigDecimal value2,
             BigDecimal value3);
+
+    /**
+     * The same operation on doubles, for compiled expressions. Comparisons
+     * and boolean operations yield 1 for true and 0 for false.
+     */
+    abstract double perform(double value1, double value2, double value3);
 }
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.sim;
+
+import com.pinpoint.api.Transport;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * One end of a simulated serial cable. Bytes written by the host are handed
+ * to the device one at a time on the writing thread; bytes the device sends
+ * back are queued and delivered on a thread of their own, after the link's
+ * latency and no faster than its baud rate allows, with bit errors added if
+ * asked for.
+ */
+public abstract class Link implements Transport {
+
+    // Replies are paced in slices this big rather than byte by byte.
+    private static final int SLICE_BYTES = 64;
+    private static final int BITS_PER_BYTE = 10;
+    private static final byte[] STOP = new byte[0];
+    private final BlockingQueue<byte[]> outgoing = new LinkedBlockingQueue<byte[]>();
+    private final int latencyMillis;
+    private final int baudRate;
+    private final double bitErrorRate;
+    private final Random random;
+    private Thread delivery;
+    private volatile boolean closed = false;
+    private long bitsDelivered = 0;
+    private long bitsFlipped = 0;
+
+    /**
+     * @param latencyMillis how long each reply takes to start arriving
+     * @param baudRate the rate replies are paced at, or 0 to deliver them as
+     * fast as they are made
+     * @param bitErrorRate the chance that any one bit sent to the host is
+     * flipped
+     * @param seed seeds the bit errors, so that a run can be repeated
+     */
+    protected Link(int latencyMillis, int baudRate, double bitErrorRate, long seed) {
+        this.latencyMillis = latencyMillis;
+        this.baudRate = baudRate;
+        this.bitErrorRate = bitErrorRate;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Handles one byte from the host.
+     */
+    protected abstract void deviceReceived(byte b);
+
+    /**
+     * Called once when the host closes the link.
+     */
+    protected abstract void deviceClosed();
+
+    /**
+     * Sends bytes to the host.
+     */
+    protected void reply(byte[] bytes) {
+        if (!closed && bytes.length > 0) {
+            outgoing.add(bytes);
+        }
+    }
+
+    /**
+     * Sends one byte to the host.
+     */
+    protected void reply(int b) {
+        reply(new byte[]{(byte) b});
+    }
+
+    public synchronized void start(final Receiver receiver) throws IOException {
+        if (delivery != null) {
+            throw new IOException("Link already started");
+        }
+
+        delivery = new Thread(new Runnable() {
+
+            public void run() {
+                deliver(receiver);
+            }
+        }, "Simulated link");
+        delivery.setDaemon(true);
+        delivery.start();
+    }
+
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("Link closed");
+        }
+
+        // The host can't send faster than the line either.
+        pace(length);
+
+        synchronized (this) {
+            for (int i = offset; i < offset + length; i++) {
+                deviceReceived(bytes[i]);
+            }
+        }
+    }
+
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            deviceClosed();
+        }
+        outgoing.add(STOP);
+    }
+
+    /**
+     * @return how many bits sent to the host have been flipped so far
+     */
+    public synchronized long getBitsFlipped() {
+        return bitsFlipped;
+    }
+
+    /**
+     * @return how many bits have been sent to the host so far, counting
+     * start and stop bits
+     */
+    public synchronized long getBitsDelivered() {
+        return bitsDelivered;
+    }
+
+    private void deliver(Receiver receiver) {
+        try {
+            while (true) {
+                byte[] bytes = outgoing.take();
+                if (bytes == STOP) {
+                    return;
+                }
+
+                if (latencyMillis > 0) {
+                    Thread.sleep(latencyMillis);
+                }
+
+                for (int off = 0; off < bytes.length; off += SLICE_BYTES) {
+                    int len = Math.min(SLICE_BYTES, bytes.length - off);
+                    pace(len);
+                    if (closed) {
+                        return;
+                    }
+
+                    byte[] slice = new byte[len];
+                    System.arraycopy(bytes, off, slice, 0, len);
+                    corrupt(slice);
+                    receiver.received(slice, 0, len);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void pace(int bytes) {
+        if (baudRate <= 0) {
+            return;
+        }
+
+        long nanos = bytes * BITS_PER_BYTE * 1000000000L / baudRate;
+        try {
+            Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void corrupt(byte[] slice) {
+        bitsDelivered += slice.length * BITS_PER_BYTE;
+        if (bitErrorRate <= 0) {
+            return;
+        }
+
+        // Jump straight to the next flipped bit instead of rolling for each one.
+        long bits = slice.length * 8L;
+        long bit = nextGap();
+        while (bit < bits) {
+            slice[(int) (bit / 8)] ^= 1 << (bit % 8);
+            bitsFlipped++;
+            bit += 1 + nextGap();
+        }
+    }
+
+    private long nextGap() {
+        if (bitErrorRate >= 1) {
+            return 0;
+        }
+        double u = 1 - random.nextDouble();
+        return (long) Math.floor(Math.log(u) / Math.log(1 - bitErrorRate));
+    }
+}
@@ -0,0 +1,528 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.sim;
+
+import com.pinpoint.api.BootComm;
+import com.pinpoint.api.PinComm;
+import com.pinpoint.api.SerialChannel;
+import com.pinpoint.api.Transport;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * A PINPoint that lives in memory and answers the same commands as the
+ * ISENSE2 firmware, and the bootloader protocol when its bootloader flag is
+ * set. Plug it in under a port name and PinComm, BootComm and the rest of the
+ * API will find it the same way they find a real one.
+ *
+ * Flash memory holds whatever records it is given, and reads past the end of
+ * them come back erased. Latency, baud rate pacing and bit errors apply to
+ * every connection opened after they are set.
+ */
+public class SimulatedPINPoint implements Transport.Factory {
+
+    public static final int EEPROM_SIZE = 1024;
+    public static final int MAJOR_VERSION = 0x06;
+    public static final int MINOR_VERSION = 0x07;
+    private static final int BOOTLOADER_FLAG = 1019;
+    private static final int SERIAL_NUMBER = 1020;
+    private static final int FLAG_ON = 0xFF;
+    private static final int FLAG_OFF = 0x00;
+    private static final int PAGE_SIZE = 128;
+    private static final byte[] CONFIRM = {'C', 'O', 'N', 'F', 'I', 'R', 'M'};
+    private final int[] eeprom = new int[EEPROM_SIZE];
+    private final int[] clock = new int[7];
+    private byte[] flash = new byte[0];
+    private byte[] program = new byte[0];
+    private boolean bootloader = false;
+    private boolean recording = false;
+    private boolean liveData = false;
+    private int resets = 0;
+    private int latencyMillis = 0;
+    // 0 for no pacing, or -1 to pace at the rate each port is opened at.
+    private int pacedBaudRate = 0;
+    private double bitErrorRate = 0;
+    private long seed = 0;
+    private String portName;
+    private Connection connection;
+
+    /**
+     * Creates a PINPoint with factory default settings, no data and the
+     * given serial number.
+     */
+    public SimulatedPINPoint(int serialNumber) {
+        for (int i = 0; i < EEPROM_SIZE; i++) {
+            eeprom[i] = 0xFF;
+        }
+        eeprom[0] = 0x03;
+        eeprom[1] = 0xE8;
+        eeprom[12] = 0x01;
+        eeprom[15] = 0x01;
+        eeprom[18] = 0x01;
+        eeprom[21] = 0x01;
+        eeprom[22] = 0x05;
+        eeprom[29] = 0x09;
+        eeprom[30] = FLAG_OFF;
+        eeprom[BOOTLOADER_FLAG] = FLAG_OFF;
+        eeprom[SERIAL_NUMBER] = (serialNumber >> 24) & 255;
+        eeprom[SERIAL_NUMBER + 1] = (serialNumber >> 16) & 255;
+        eeprom[SERIAL_NUMBER + 2] = (serialNumber >> 8) & 255;
+        eeprom[SERIAL_NUMBER + 3] = serialNumber & 255;
+    }
+
+    /**
+     * Makes this PINPoint available under a port name, as if it had been
+     * plugged in there.
+     */
+    public synchronized void plugIn(String portName) {
+        unplug();
+        this.portName = portName;
+        SerialChannel.addVirtualPort(portName, this);
+    }
+
+    /**
+     * Removes this PINPoint from its port, cutting off anyone talking to it.
+     */
+    public void unplug() {
+        Connection open;
+        synchronized (this) {
+            if (portName == null) {
+                return;
+            }
+            SerialChannel.removeVirtualPort(portName);
+            portName = null;
+            open = connection;
+        }
+        if (open != null) {
+            open.close();
+        }
+    }
+
+    public synchronized String getPortName() {
+        return portName;
+    }
+
+    /**
+     * Delays the start of every reply.
+     */
+    public synchronized void setLatency(int millis) {
+        latencyMillis = millis;
+    }
+
+    /**
+     * Limits traffic in both directions to the rate of the baud rate the
+     * port was opened at, ten bits to the byte.
+     */
+    public synchronized void setBaudPacing(boolean pacing) {
+        pacedBaudRate = pacing ? -1 : 0;
+    }
+
+    /**
+     * Limits traffic in both directions to a fixed baud rate, whatever rate
+     * the port is opened at. This is for hosts whose baud rate setting has
+     * no effect, such as the end of a pseudo-terminal.
+     *
+     * @param baudRate the rate, or 0 for no pacing
+     */
+    public synchronized void setBaudPacing(int baudRate) {
+        pacedBaudRate = baudRate;
+    }
+
+    /**
+     * Flips bits in replies at random.
+     *
+     * @param rate the chance of any one bit being flipped
+     * @param seed seeds the choice of bits
+     */
+    public synchronized void setBitErrorRate(double rate, long seed) {
+        this.bitErrorRate = rate;
+        this.seed = seed;
+    }
+
+    /**
+     * Replaces the data in flash.
+     *
+     * @param records whole 32 byte records, such as those from SyntheticFlash
+     */
+    public synchronized void setFlash(byte[] records) {
+        flash = records.clone();
+    }
+
+    /**
+     * Logs more records after the ones already in flash.
+     */
+    public synchronized void record(byte[] records) {
+        byte[] grown = new byte[flash.length + records.length];
+        System.arraycopy(flash, 0, grown, 0, flash.length);
+        System.arraycopy(records, 0, grown, flash.length, records.length);
+        flash = grown;
+    }
+
+    public synchronized int getRecordCount() {
+        return flash.length / SyntheticFlash.RECORD_SIZE;
+    }
+
+    public synchronized int getEeprom(int address) {
+        return eeprom[address];
+    }
+
+    public synchronized void setEeprom(int address, int value) {
+        eeprom[address] = value & 255;
+    }
+
+    /**
+     * @return the seconds, minutes, hours, day of week, date, month and year
+     * last written to the real time clock
+     */
+    public synchronized int[] getClock() {
+        return clock.clone();
+    }
+
+    public synchronized boolean isRecording() {
+        return recording;
+    }
+
+    public synchronized boolean isLiveData() {
+        return liveData;
+    }
+
+    public synchronized boolean isBootloader() {
+        return bootloader;
+    }
+
+    /**
+     * @return how many times the PINPoint has been reset since it was made
+     */
+    public synchronized int getResets() {
+        return resets;
+    }
+
+    /**
+     * @return the program last written by the bootloader, padded to a whole
+     * page, or an empty array if it has never been flashed
+     */
+    public synchronized byte[] getProgram() {
+        return program.clone();
+    }
+
+    /**
+     * Sets the bootloader flag and resets, leaving the PINPoint waiting for
+     * a BootPoint connection.
+     */
+    public synchronized void enterBootloader() {
+        eeprom[BOOTLOADER_FLAG] = FLAG_ON;
+        reset();
+    }
+
+    public synchronized Transport open(String portName, int baudRate, boolean flowControl) throws IOException {
+        if (connection != null) {
+            throw new IOException(portName + " is in use");
+        }
+
+        int paceBaud = pacedBaudRate < 0 ? baudRate : pacedBaudRate;
+        connection = new Connection(baudRate, latencyMillis, paceBaud, bitErrorRate, seed);
+        return connection;
+    }
+
+    private void reset() {
+        resets++;
+        recording = false;
+        liveData = false;
+        bootloader = eeprom[BOOTLOADER_FLAG] == FLAG_ON;
+        if (!bootloader) {
+            eeprom[BOOTLOADER_FLAG] = FLAG_OFF;
+        }
+
+        if (connection != null) {
+            connection.booted();
+        }
+    }
+
+    private synchronized void disconnected(Connection closed) {
+        if (connection == closed) {
+            connection = null;
+        }
+    }
+
+    /**
+     * Handles a complete application command, which starts with its command
+     * byte.
+     */
+    private synchronized byte[] command(byte[] c) {
+        switch (c[0]) {
+            case 0x01:
+                liveData = false;
+                return new byte[]{0x02, MAJOR_VERSION, MINOR_VERSION};
+            case 0x02:
+                recording = false;
+                liveData = false;
+                return readFlash(u24(c, 1), u24(c, 4));
+            case 0x03:
+                recording = false;
+                liveData = false;
+                for (int i = 0; i < clock.length; i++) {
+                    clock[i] = c[i + 1] & 255;
+                }
+                return new byte[]{0x06};
+            case 0x04:
+                recording = false;
+                liveData = false;
+                return new byte[]{(byte) eeprom[eepromAddress(c)]};
+            case 0x05:
+                recording = false;
+                liveData = false;
+                eeprom[eepromAddress(c)] = c[3] & 255;
+                return new byte[]{0x0A};
+            case 0x06:
+                recording = false;
+                liveData = true;
+                return new byte[]{0x0C};
+            case 0x07:
+                int used = flash.length;
+                return new byte[]{(byte) (used >> 16), (byte) (used >> 8), (byte) used, (byte) SyntheticFlash.RECORD_SIZE};
+            case 0x08:
+                //The watchdog resets the PINPoint without a reply.
+                if (confirmed(c)) {
+                    reset();
+                }
+                return new byte[0];
+            case 0x09:
+                if (confirmed(c)) {
+                    flash = new byte[0];
+                }
+                return new byte[]{0x12};
+            case 0x0A:
+                if (confirmed(c)) {
+                    recording = true;
+                    liveData = false;
+                }
+                return new byte[]{0x14};
+        }
+        return new byte[0];
+    }
+
+    private byte[] readFlash(int start, int size) {
+        byte[] reply = new byte[size + 1];
+        byte checksum = 0;
+
+        for (int i = 0; i < size; i++) {
+            int address = start + i;
+            reply[i] = address < flash.length ? flash[address] : (byte) 0xFF;
+            checksum += reply[i];
+        }
+        reply[size] = checksum;
+        return reply;
+    }
+
+    private synchronized void flashed(byte[] data) {
+        program = data;
+        eeprom[BOOTLOADER_FLAG] = FLAG_OFF;
+        bootloader = false;
+    }
+
+    private synchronized void quitBootloader() {
+        eeprom[BOOTLOADER_FLAG] = FLAG_OFF;
+        bootloader = false;
+    }
+
+    private static int commandLength(byte command) {
+        switch (command) {
+            case 0x01:
+            case 0x06:
+            case 0x07:
+                return 1;
+            case 0x02:
+                return 7;
+            case 0x03:
+            case 0x08:
+            case 0x09:
+            case 0x0A:
+                return 8;
+            case 0x04:
+                return 3;
+            case 0x05:
+                return 4;
+        }
+        return 0;
+    }
+
+    private static int eepromAddress(byte[] c) {
+        return (((c[1] & 255) << 8) + (c[2] & 255)) % EEPROM_SIZE;
+    }
+
+    private static boolean confirmed(byte[] c) {
+        for (int i = 0; i < CONFIRM.length; i++) {
+            if (c[i + 1] != CONFIRM[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int u24(byte[] b, int o) {
+        return ((b[o] & 255) << 16) + ((b[o + 1] & 255) << 8) + (b[o + 2] & 255);
+    }
+
+    /**
+     * Converts an ASCII hex digit the way the bootloader does, which only
+     * understands upper case.
+     */
+    private static int hexToBin(int in) {
+        return (in < 'A' ? in - '0' : in - ('A' - 10)) & 255;
+    }
+
+    /**
+     * One host's connection. Input at any baud rate but the one the current
+     * mode listens at is lost, the way a real PINPoint would hear noise.
+     */
+    private class Connection extends Link {
+
+        private final int baudRate;
+        private final byte[] command = new byte[8];
+        private int commandSize = 0;
+        // Where the bootloader is: waiting after BL, or reading a HEX line.
+        private boolean awaitingLine = false;
+        private final byte[] line = new byte[2 * 255 + 14];
+        private int lineSize = 0;
+        private final ByteArrayOutputStream pages = new ByteArrayOutputStream();
+
+        Connection(int baudRate, int latencyMillis, int paceBaud, double bitErrorRate, long seed) {
+            super(latencyMillis, paceBaud, bitErrorRate, seed);
+            this.baudRate = baudRate;
+        }
+
+        private boolean listening() {
+            return baudRate == (bootloader ? BootComm.BAUD_RATE : PinComm.BAUD_RATE);
+        }
+
+        /**
+         * Called when the PINPoint comes out of a reset.
+         */
+        void booted() {
+            commandSize = 0;
+            awaitingLine = false;
+            if (bootloader && listening()) {
+                reply(new byte[]{'B', 'L'});
+            }
+        }
+
+        protected void deviceReceived(byte b) {
+            synchronized (SimulatedPINPoint.this) {
+                if (!listening()) {
+                    return;
+                }
+
+                if (bootloader) {
+                    bootloaderReceived(b);
+                } else {
+                    applicationReceived(b);
+                }
+            }
+        }
+
+        protected void deviceClosed() {
+            disconnected(this);
+        }
+
+        private void applicationReceived(byte b) {
+            if (commandSize == 0 && commandLength(b) == 0) {
+                return;
+            }
+
+            command[commandSize++] = b;
+            if (commandSize == commandLength(command[0])) {
+                commandSize = 0;
+                reply(command(command));
+            }
+        }
+
+        private void bootloaderReceived(byte b) {
+            if (!awaitingLine) {
+                if (b == 'Q') {
+                    quitBootloader();
+                } else if (b == 'P') {
+                    pages.reset();
+                    awaitingLine = true;
+                    lineSize = 0;
+                    reply('R');
+                } else {
+                    reply(new byte[]{'B', 'L'});
+                }
+                return;
+            }
+
+            if (lineSize == 0 && b != ':') {
+                fail(2);
+                return;
+            }
+
+            line[lineSize++] = b;
+            // ':', count, address, type, data, checksum, then CR and LF.
+            if (lineSize < 3 || lineSize < 13 + 2 * count()) {
+                return;
+            }
+
+            int count = count();
+            int type = hexByte(7);
+            int sum = count + hexByte(3) + hexByte(5) + type;
+            for (int i = 0; i < count; i++) {
+                int data = hexByte(9 + 2 * i);
+                pages.write(data);
+                sum += data;
+            }
+            sum += hexByte(9 + 2 * count);
+            lineSize = 0;
+
+            if ((sum & 255) != 0) {
+                fail(3);
+            } else if (type == 1) {
+                while (pages.size() % PAGE_SIZE != 0) {
+                    pages.write(0xFF);
+                }
+                awaitingLine = false;
+                flashed(pages.toByteArray());
+            } else {
+                reply('R');
+            }
+        }
+
+        private int count() {
+            return hexByte(1);
+        }
+
+        private int hexByte(int at) {
+            return ((hexToBin(line[at]) << 4) | hexToBin(line[at + 1])) & 255;
+        }
+
+        private void fail(int error) {
+            awaitingLine = false;
+            lineSize = 0;
+            reply(new byte[]{'E', (byte) error, 'B', 'L'});
+        }
+    }
+}
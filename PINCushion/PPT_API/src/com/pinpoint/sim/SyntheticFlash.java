@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.sim;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Makes up 32 byte records shaped like the ones a PINPoint logs: a time
+ * stamp that advances by the sample rate, no GPS fix, pressure and
+ * temperature near room conditions and noise on every other sensor.
+ */
+public class SyntheticFlash {
+
+    public static final int RECORD_SIZE = 32;
+    private static final int NO_GPS_ALTITUDE = 60000;
+
+    private SyntheticFlash() {
+    }
+
+    /**
+     * @param count how many records to make
+     * @param startMillis the time of the first record
+     * @param sampleRateMillis the time between records
+     * @param seed seeds the sensor noise, so the same arguments always give
+     * the same bytes
+     * @return count records back to back
+     */
+    public static byte[] records(int count, long startMillis, long sampleRateMillis, long seed) {
+        byte[] flash = new byte[count * RECORD_SIZE];
+        Random random = new Random(seed);
+        Calendar cal = new GregorianCalendar(TimeZone.getTimeZone("GMT"));
+
+        for (int i = 0; i < count; i++) {
+            cal.setTimeInMillis(startMillis + i * sampleRateMillis);
+            record(flash, i * RECORD_SIZE, cal, random);
+        }
+        return flash;
+    }
+
+    private static void record(byte[] r, int o, Calendar cal, Random random) {
+        for (int i = 0; i < RECORD_SIZE; i++) {
+            r[o + i] = (byte) random.nextInt(256);
+        }
+
+        //Latitude and longitude are left as noise, with no GPS altitude.
+        r[o + 8] = (byte) NO_GPS_ALTITUDE;
+        r[o + 9] = (byte) (NO_GPS_ALTITUDE >> 8);
+
+        //Pressure in pascals, little endian.
+        int pressure = 101325 + random.nextInt(2001) - 1000;
+        r[o + 10] = (byte) pressure;
+        r[o + 11] = (byte) (pressure >> 8);
+        r[o + 12] = (byte) (pressure >> 16);
+        r[o + 13] = (byte) (pressure >> 24);
+
+        //Temperature in tenths of a degree.
+        int temperature = 200 + random.nextInt(51) - 25;
+        r[o + 14] = (byte) temperature;
+        r[o + 15] = (byte) (temperature >> 8);
+
+        //27 = SSSS 2222, 28 = MMMM MMSS, 29 = DDDH HHHH
+        //30 = MMMT TTTT, 31 = YYYY YYYM
+        int seconds = cal.get(Calendar.SECOND);
+        int month = cal.get(Calendar.MONTH) + 1;
+        r[o + 27] = (byte) ((r[o + 27] & 0x0F) | ((seconds & 0x0F) << 4));
+        r[o + 28] = (byte) ((seconds >> 4) | (cal.get(Calendar.MINUTE) << 2));
+        r[o + 29] = (byte) (cal.get(Calendar.HOUR_OF_DAY) | (cal.get(Calendar.DAY_OF_WEEK) << 5));
+        r[o + 30] = (byte) (cal.get(Calendar.DATE) | ((month & 0x07) << 5));
+        r[o + 31] = (byte) ((month >> 3) | ((cal.get(Calendar.YEAR) - 2000) << 1));
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.TimeZone;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CsvWriterTest {
+
+    private static final TimeZone ZONE = TimeZone.getTimeZone("America/New_York");
+    private static final int COUNT = 20000;
+
+    @Test
+    public void recordsMatchConvertedRows() throws Exception {
+        for (int sampleRate : new int[]{1000, 250, 100}) {
+            PinpointConverter converter = new PinpointConverter(TestData.settings(sampleRate), TestData.conversions());
+            byte[] records = TestData.records(COUNT, sampleRate);
+
+            StringWriter fromRecords = new StringWriter();
+            CsvWriter writer = new CsvWriter(fromRecords, converter, sampleRate, ZONE);
+            for (int i = 0; i < COUNT; i++) {
+                writer.writeRecord(records, i * RecordDecoder.RECORD_SIZE);
+            }
+            writer.close();
+
+            StringWriter fromRows = new StringWriter();
+            writer = new CsvWriter(fromRows, null, 0, ZONE);
+            for (String[] row : TestData.convert(converter, records, COUNT, sampleRate)) {
+                assertTrue(writer.writeRow(row));
+            }
+            writer.close();
+
+            assertLinesEqual("Sample rate " + sampleRate, fromRows.toString(), fromRecords.toString());
+        }
+    }
+
+    @Test
+    public void rowsMatchLegacyFormatting() throws Exception {
+        PinpointConverter converter = new PinpointConverter(TestData.settings(1000), TestData.conversions());
+        ArrayList<String[]> rows = TestData.convert(converter, TestData.records(COUNT, 1000), COUNT, 1000);
+        //Short milliseconds, a spring forward gap and a time edited by hand.
+        rows.add(new String[]{"11/10/2010 00:00:00:5", "1", "2"});
+        rows.add(new String[]{"03/14/2010 02:30:00:000", "1", "2"});
+        rows.add(new String[]{"1/2/2010 3:04:05:6", "1", "2"});
+
+        StringWriter legacy = new StringWriter();
+        StringWriter csv = new StringWriter();
+        CsvWriter writer = new CsvWriter(csv, null, 0, ZONE);
+        for (String[] row : rows) {
+            legacy.write(fmtData(row));
+            assertTrue(writer.writeRow(row));
+        }
+        writer.close();
+
+        assertLinesEqual("Legacy", legacy.toString(), csv.toString());
+    }
+
+    @Test
+    public void skipsRowsWithUnreadableTimes() throws IOException {
+        StringWriter csv = new StringWriter();
+        CsvWriter writer = new CsvWriter(csv, null, 0, ZONE);
+
+        assertFalse(writer.writeRow(new String[]{"not a time", "1"}));
+        writer.close();
+        assertEquals("", csv.toString());
+    }
+
+    @Test
+    public void writesCommentsAndHeader() throws IOException {
+        StringWriter csv = new StringWriter();
+        CsvWriter writer = new CsvWriter(csv);
+
+        writer.writeComment("PINPoint 4242");
+        writer.writeHeader(new String[]{"Time", "BTA1", "BTA2"});
+        writer.close();
+        assertEquals("#PINPoint 4242\nTime,BTA1,BTA2\n", csv.toString());
+    }
+
+    @Test
+    public void recordsStreamedFromListener() throws Exception {
+        PinpointConverter converter = new PinpointConverter(TestData.settings(100), TestData.conversions());
+        byte[] records = TestData.records(1000, 100);
+
+        StringWriter direct = new StringWriter();
+        CsvWriter writer = new CsvWriter(direct, converter, 100, ZONE);
+        for (int i = 0; i < 1000; i++) {
+            writer.writeRecord(records, i * RecordDecoder.RECORD_SIZE);
+        }
+        writer.close();
+
+        StringWriter streamed = new StringWriter();
+        writer = new CsvWriter(streamed, converter, 100, ZONE);
+        for (int i = 0; i < 1000; i++) {
+            writer.recordReceived(TestData.slice(records, i, i + 1));
+        }
+        writer.downloadFinished(true);
+
+        assertNull(writer.getError());
+        assertEquals(direct.toString(), streamed.toString());
+    }
+
+    /**
+     * Formats a row the way GoldenEye's FileSaver did before CsvWriter.
+     */
+    private static String fmtData(String[] temp) throws ParseException {
+        DateFormat format = new SimpleDateFormat("MM/dd/yyyy HH:mm:ss:SSS");
+        format.setTimeZone(ZONE);
+
+        String dataString = format.parse(temp[0]).getTime() + ",";
+        for (int i = 1; i < temp.length; i++) {
+            dataString += temp[i] + (i == temp.length - 1 ? "\n" : ",");
+        }
+        return dataString;
+    }
+
+    /**
+     * Compares line by line, so that a failure shows the first line that
+     * differs rather than two whole files.
+     */
+    private static void assertLinesEqual(String message, String expected, String actual) {
+        String[] want = expected.split("\n", -1);
+        String[] got = actual.split("\n", -1);
+        for (int i = 0; i < Math.min(want.length, got.length); i++) {
+            assertEquals(message + ", line " + (i + 1), want[i], got[i]);
+        }
+        assertEquals(message + ", lines", want.length, got.length);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DownloadSpoolTest {
+
+    private static final int SERIAL_NUMBER = 4242;
+    private static final int SIZE = RecordDecoder.RECORD_SIZE;
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = TestData.directory();
+    }
+
+    @After
+    public void tearDown() {
+        TestData.delete(dir);
+    }
+
+    @Test
+    public void startsEmpty() throws IOException {
+        DownloadSpool spool = DownloadSpool.open(new File(dir, "spool"), SERIAL_NUMBER);
+
+        assertEquals(0, spool.getRecordCount());
+        assertNull(spool.getFirstRecord());
+        assertEquals(0, spool.readAll().length);
+    }
+
+    @Test
+    public void appendsAndResumes() throws IOException {
+        byte[] records = TestData.records(10, 1000);
+        DownloadSpool spool = DownloadSpool.open(dir, SERIAL_NUMBER);
+        spool.append(records, 4);
+        spool.append(TestData.slice(records, 4, 10), 6);
+
+        DownloadSpool resumed = DownloadSpool.open(dir, SERIAL_NUMBER);
+        assertEquals(10, resumed.getRecordCount());
+        assertArrayEquals(records, resumed.readAll());
+        assertArrayEquals(TestData.slice(records, 0, 1), resumed.getFirstRecord());
+        assertEquals(new File(dir, SERIAL_NUMBER + ".spool"), resumed.getFile());
+    }
+
+    @Test
+    public void dropsPartialRecord() throws IOException {
+        byte[] records = TestData.records(3, 1000);
+        DownloadSpool.open(dir, SERIAL_NUMBER).append(records, 3);
+
+        //As if the last write was cut off part way through a record.
+        FileOutputStream out = new FileOutputStream(new File(dir, SERIAL_NUMBER + ".spool"), true);
+        try {
+            out.write(records, 0, SIZE / 2);
+        } finally {
+            out.close();
+        }
+
+        DownloadSpool spool = DownloadSpool.open(dir, SERIAL_NUMBER);
+        assertEquals(3, spool.getRecordCount());
+        assertEquals(3 * SIZE, spool.getFile().length());
+        assertArrayEquals(records, spool.readAll());
+    }
+
+    @Test
+    public void resetEmptiesSpool() throws IOException {
+        DownloadSpool spool = DownloadSpool.open(dir, SERIAL_NUMBER);
+        spool.append(TestData.records(5, 1000), 5);
+        spool.reset();
+
+        assertEquals(0, spool.getRecordCount());
+        assertEquals(0, DownloadSpool.open(dir, SERIAL_NUMBER).getRecordCount());
+    }
+
+    @Test
+    public void replaysRecordsInOrder() throws IOException {
+        final byte[] records = TestData.records(7, 1000);
+        DownloadSpool spool = DownloadSpool.open(dir, SERIAL_NUMBER);
+        spool.append(records, 7);
+
+        final int[] received = new int[1];
+        final boolean[] finished = new boolean[1];
+        spool.replay(new RecordListener() {
+
+            public void recordReceived(byte[] record) {
+                int index = received[0]++;
+                assertArrayEquals(TestData.slice(records, index, index + 1), record);
+            }
+
+            public void downloadFinished(boolean checksumValid) {
+                assertTrue(checksumValid);
+                finished[0] = true;
+            }
+        });
+
+        assertEquals(7, received[0]);
+        assertTrue(finished[0]);
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class FirmwareImageTest {
+
+    private static final int PAGE = FirmwareImage.PAGE_SIZE;
+    private File dir;
+    private File hex;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = TestData.directory();
+        hex = new File(dir, "firmware.hex");
+    }
+
+    @After
+    public void tearDown() {
+        TestData.delete(dir);
+    }
+
+    @Test
+    public void crcIsXmodem() throws IOException {
+        assertEquals(0x31C3, FirmwareImage.crc16("123456789".getBytes("US-ASCII")));
+    }
+
+    @Test
+    public void padsLastPage() throws Exception {
+        write(data(0, 0, 64), data(64, 64, 64), data(128, 128, 2), eof());
+        FirmwareImage image = FirmwareImage.fromHex(HexImage.load(hex.getPath()));
+
+        assertTrue(image.isContiguous());
+        assertEquals(2, image.getPageCount());
+        assertEquals(2 * PAGE, image.getSize());
+
+        byte[] second = image.getPage(1);
+        assertEquals((byte) 128, second[0]);
+        assertEquals((byte) 129, second[1]);
+        assertEquals((byte) 0xFF, second[2]);
+        assertEquals((byte) 0xFF, second[PAGE - 1]);
+        assertEquals(FirmwareImage.crc16(second), image.getPageCrc(1));
+    }
+
+    @Test
+    public void laysRecordsOutAsBootloaderWrites() throws Exception {
+        //The bootloader ignores the gap and writes the second record
+        //straight after the first.
+        write(data(0, 0, 16), data(0x100, 16, 16), eof());
+        FirmwareImage image = FirmwareImage.fromHex(HexImage.load(hex.getPath()));
+
+        assertFalse(image.isContiguous());
+        assertEquals(1, image.getPageCount());
+        assertEquals(2, image.getAddressMap().size());
+        assertEquals(0x100, image.getAddressMap().get(1)[0]);
+        byte[] page = image.getPage(0);
+        for (int i = 0; i < 32; i++) {
+            assertEquals((byte) i, page[i]);
+        }
+        assertEquals((byte) 0xFF, page[32]);
+    }
+
+    @Test
+    public void emptyFileIsOneBlankPage() throws Exception {
+        write(eof());
+        FirmwareImage image = FirmwareImage.fromHex(HexImage.load(hex.getPath()));
+
+        assertEquals(1, image.getPageCount());
+        assertEquals((byte) 0xFF, image.getPage(0)[0]);
+    }
+
+    @Test
+    public void cachesImage() throws Exception {
+        write(data(0, 0, 200), eof());
+        FirmwareImage built = FirmwareImage.forHex(hex.getPath());
+        File cache = new File(hex.getPath() + FirmwareImage.CACHE_SUFFIX);
+        assertTrue(cache.exists());
+
+        //Spoil the HEX file without changing its length or time, so only
+        //the cache can give the image.
+        long modified = hex.lastModified();
+        char[] junk = new char[(int) hex.length()];
+        Arrays.fill(junk, 'Z');
+        write(new String(junk));
+        hex.setLastModified(modified);
+        assertSameImage(built, FirmwareImage.forHex(hex.getPath()));
+    }
+
+    @Test
+    public void rebuildsDamagedCache() throws Exception {
+        write(data(0, 0, 200), eof());
+        FirmwareImage built = FirmwareImage.forHex(hex.getPath());
+        File cache = new File(hex.getPath() + FirmwareImage.CACHE_SUFFIX);
+
+        RandomAccessFile raf = new RandomAccessFile(cache, "rw");
+        try {
+            raf.seek(raf.length() - 1);
+            raf.write(raf.read() ^ 1);
+        } finally {
+            raf.close();
+        }
+        assertSameImage(built, FirmwareImage.forHex(hex.getPath()));
+    }
+
+    @Test
+    public void rebuildsStaleCache() throws Exception {
+        write(data(0, 0, 200), eof());
+        FirmwareImage.forHex(hex.getPath());
+
+        write(data(0, 50, 200), eof());
+        hex.setLastModified(hex.lastModified() + 2000);
+        assertEquals((byte) 50, FirmwareImage.forHex(hex.getPath()).getPage(0)[0]);
+    }
+
+    private static void assertSameImage(FirmwareImage expected, FirmwareImage actual) {
+        assertEquals(expected.isContiguous(), actual.isContiguous());
+        assertEquals(expected.getPageCount(), actual.getPageCount());
+        for (int i = 0; i < expected.getPageCount(); i++) {
+            assertArrayEquals(expected.getPage(i), actual.getPage(i));
+            assertEquals(expected.getPageCrc(i), actual.getPageCrc(i));
+        }
+        assertEquals(expected.getAddressMap().size(), actual.getAddressMap().size());
+    }
+
+    /**
+     * Data records of up to 16 bytes from address, counting up from first.
+     */
+    private static String data(int address, int first, int count) {
+        StringBuilder lines = new StringBuilder();
+        for (int done = 0; done < count; done += 16) {
+            int length = Math.min(16, count - done);
+            byte[] record = new byte[length + 4];
+            record[0] = (byte) length;
+            record[1] = (byte) ((address + done) >> 8);
+            record[2] = (byte) (address + done);
+            for (int i = 0; i < length; i++) {
+                record[4 + i] = (byte) (first + done + i);
+            }
+            lines.append(line(record));
+        }
+        return lines.toString();
+    }
+
+    private static String eof() {
+        return line(new byte[]{0, 0, 0, HexImage.END_OF_FILE});
+    }
+
+    private static String line(byte[] record) {
+        StringBuilder line = new StringBuilder(":");
+        int sum = 0;
+        for (byte b : record) {
+            line.append(String.format("%02X", b & 255));
+            sum += b;
+        }
+        return line.append(String.format("%02X", -sum & 255)).append("\r\n").toString();
+    }
+
+    private void write(String... lines) throws IOException {
+        FileOutputStream out = new FileOutputStream(hex);
+        try {
+            for (String line : lines) {
+                out.write(line.getBytes("US-ASCII"));
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
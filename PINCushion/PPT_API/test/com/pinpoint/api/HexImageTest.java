@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+import com.pinpoint.exceptions.InvalidHexException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class HexImageTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = TestData.directory();
+    }
+
+    @After
+    public void tearDown() {
+        TestData.delete(dir);
+    }
+
+    @Test
+    public void loadsRecordsAndAddresses() throws Exception {
+        HexImage image = load(":0400100001020304E2\r\n"
+                + "\r\n"
+                + ":020000040001F9\n"
+                + ":02002000ABCD66\n"
+                + ":00000001FF\n"
+                + "anything after the end is ignored\n");
+
+        assertEquals(4, image.getRecordCount());
+        assertTrue(image.isComplete());
+        assertEquals(8, image.getDataBytes());
+
+        HexImage.Record first = image.getRecord(0);
+        assertEquals(HexImage.DATA, first.type);
+        assertEquals(0x10, first.address);
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, first.data);
+
+        HexImage.Record extended = image.getRecord(2);
+        assertEquals(0x10020, extended.address);
+        assertArrayEquals(new byte[]{(byte) 0xAB, (byte) 0xCD}, extended.data);
+    }
+
+    @Test
+    public void framesAreUpperCaseWithCrLf() throws Exception {
+        HexImage image = load(":02002000abcd66\n:00000001ff\n");
+
+        assertEquals(":02002000ABCD66\r\n", new String(image.getRecord(0).frame, "US-ASCII"));
+        assertEquals(":00000001FF\r\n", new String(image.getRecord(1).frame, "US-ASCII"));
+        assertEquals(17 + 13, image.getFrameBytes());
+    }
+
+    @Test
+    public void incompleteWithoutEndOfFile() throws Exception {
+        assertFalse(load(":0400100001020304E2\n").isComplete());
+    }
+
+    @Test
+    public void badChecksum() throws Exception {
+        assertError(InvalidHexException.INVALID_CHECKSUM, ":0400100001020304E3\n:00000001FF\n");
+    }
+
+    @Test
+    public void missingColon() throws Exception {
+        assertError(InvalidHexException.NO_COLON, ":0400100001020304E2\n0400100001020304E2\n");
+    }
+
+    @Test
+    public void byteCountDisagreesWithLine() throws Exception {
+        assertError(InvalidHexException.BYTE_COUNT_ERROR, ":0500100001020304E1\n");
+        assertError(InvalidHexException.BYTE_COUNT_ERROR, ":00000001\n");
+    }
+
+    @Test
+    public void oddOrBadDigits() throws Exception {
+        assertError(InvalidHexException.BYTE_COUNT_ERROR, ":0400100001020304E\n");
+        assertError(InvalidHexException.BYTE_COUNT_ERROR, ":04001000010203G4E2\n");
+    }
+
+    private HexImage load(String text) throws Exception {
+        File file = new File(dir, "image.hex");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(text.getBytes("US-ASCII"));
+        } finally {
+            out.close();
+        }
+        return HexImage.load(file.getPath());
+    }
+
+    private void assertError(int error, String text) throws Exception {
+        try {
+            load(text);
+            fail("Loaded an invalid file");
+        } catch (InvalidHexException e) {
+            assertEquals(error, e.error);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+import java.util.ArrayList;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ParallelConverterTest {
+
+    //Three whole chunks and part of a fourth.
+    private static final int COUNT = 3 * 4096 + 123;
+
+    @Test
+    public void matchesSequentialConversion() throws Exception {
+        //At 100 and 200 ms the chunk boundaries fall part way through a
+        //second; at 250 they fall between seconds, and at 1000 times aren't
+        //spread at all.
+        for (int sampleRate : new int[]{100, 200, 250, 1000}) {
+            for (int threads : new int[]{1, 2, 3}) {
+                assertMatches(sampleRate, threads);
+            }
+        }
+    }
+
+    @Test
+    public void convertsLessThanAChunk() throws Exception {
+        ParallelConverter parallel = new ParallelConverter(TestData.settings(100), TestData.conversions(), 4);
+        byte[] records = TestData.records(10, 100);
+
+        ArrayList<String[]> rows = parallel.convert(records, 10);
+        assertEquals(10, rows.size());
+        assertEquals("11/10/2010 00:00:00:900", rows.get(9)[0]);
+    }
+
+    private static void assertMatches(int sampleRate, int threads) throws Exception {
+        ParallelConverter parallel = new ParallelConverter(TestData.settings(sampleRate), TestData.conversions(), threads);
+        byte[] records = TestData.records(COUNT, sampleRate);
+
+        ArrayList<String[]> expected = TestData.convert(parallel.getConverter(), records, COUNT, sampleRate);
+        ArrayList<String[]> actual = parallel.convert(records, COUNT);
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < COUNT; i++) {
+            assertArrayEquals(sampleRate + " ms, " + threads + " threads, row " + i, expected.get(i), actual.get(i));
+        }
+    }
+}
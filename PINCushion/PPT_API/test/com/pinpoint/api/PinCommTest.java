@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+import com.pinpoint.sim.SimulatedPINPoint;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Talks to a SimulatedPINPoint, so covers the protocol but not RXTX.
+ */
+public class PinCommTest {
+
+    private static final String PORT = "test.sim";
+    private static final int SERIAL_NUMBER = 4242;
+    private static final int COUNT = 3000;
+    private SimulatedPINPoint pinpoint;
+    private PinComm device;
+    private byte[] records;
+
+    @Before
+    public void setUp() {
+        records = TestData.records(COUNT, 1000);
+        pinpoint = new SimulatedPINPoint(SERIAL_NUMBER);
+        pinpoint.setFlash(records);
+        pinpoint.plugIn(PORT);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (device != null) {
+            device.close();
+        }
+        pinpoint.unplug();
+    }
+
+    @Test
+    public void identifiesPinpoint() throws Exception {
+        device = PinComm.instantiate(PORT);
+
+        assertTrue(device.isResponding());
+        assertEquals(SERIAL_NUMBER, device.getSerialNumber());
+        assertEquals(PORT, device.getPort());
+    }
+
+    @Test
+    public void downloadsEveryRecord() throws Exception {
+        device = PinComm.instantiate(PORT);
+        Collector collector = new Collector();
+
+        assertTrue(device.requestData(device.getDataHeader(), COUNT, collector));
+        assertArrayEquals(records, collector.bytes.toByteArray());
+        assertTrue(collector.finished);
+    }
+
+    @Test
+    public void downloadsRange() throws Exception {
+        device = PinComm.instantiate(PORT);
+        Collector collector = new Collector();
+
+        assertTrue(device.requestRange(1000, 1500, collector));
+        assertArrayEquals(TestData.slice(records, 1000, 2500), collector.bytes.toByteArray());
+    }
+
+    @Test
+    public void retriesDamagedChunks() throws Exception {
+        //A flipped bit in every few chunks.
+        pinpoint.setBitErrorRate(2e-6, TestData.SEED);
+        device = PinComm.instantiate(PORT);
+        Collector collector = new Collector();
+
+        assertTrue(device.requestData(device.getDataHeader(), COUNT, collector));
+        assertArrayEquals(records, collector.bytes.toByteArray());
+        assertTrue(device.getLastTransferStats().getRetries() > 0);
+    }
+
+    @Test
+    public void writesSettings() throws Exception {
+        device = PinComm.instantiate(PORT);
+        HashMap<Integer, Integer> changes = new HashMap<Integer, Integer>();
+        changes.put(PinComm.SAMPLE_RATE, 250);
+        changes.put(PinComm.BTA1, 7);
+        changes.put(PinComm.MINI2, 8);
+
+        assertTrue(device.SetMultipleSettings(changes));
+        device.close();
+
+        //A new connection reads them from the EEPROM again.
+        device = PinComm.instantiate(PORT);
+        assertEquals(250, device.getSetting(PinComm.SAMPLE_RATE));
+        assertEquals(7, device.getSetting(PinComm.BTA1));
+        assertEquals(8, device.getSetting(PinComm.MINI2));
+    }
+
+    @Test
+    public void writesNothingForUnknownSetting() throws Exception {
+        device = PinComm.instantiate(PORT);
+        int before = device.getSetting(PinComm.BTA1);
+        HashMap<Integer, Integer> changes = new HashMap<Integer, Integer>();
+        changes.put(PinComm.BTA1, before + 1);
+        changes.put(-1, 0);
+
+        assertFalse(device.SetMultipleSettings(changes));
+        device.close();
+
+        device = PinComm.instantiate(PORT);
+        assertEquals(before, device.getSetting(PinComm.BTA1));
+    }
+
+    private static class Collector implements RecordListener {
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        boolean finished = false;
+
+        public void recordReceived(byte[] record) {
+            bytes.write(record, 0, record.length);
+        }
+
+        public void downloadFinished(boolean checksumValid) {
+            finished = checksumValid;
+        }
+    }
+}
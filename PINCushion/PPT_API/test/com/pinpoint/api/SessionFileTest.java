@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SessionFileTest {
+
+    private static final int SERIAL_NUMBER = 4242;
+    private static final int COUNT = 5000;
+    private File dir;
+    private File file;
+    private byte[] records;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = TestData.directory();
+        file = new File(dir, "session." + SessionFile.EXTENSION);
+        records = TestData.records(COUNT, 1000);
+    }
+
+    @After
+    public void tearDown() {
+        TestData.delete(dir);
+    }
+
+    @Test
+    public void savesAndOpens() throws IOException {
+        SessionFile saved = session();
+        saved.save(file);
+
+        assertSameSession(saved, SessionFile.open(file));
+    }
+
+    @Test
+    public void takesOnlyCountRecords() throws IOException {
+        new SessionFile(SERIAL_NUMBER, TestData.settings(1000), TestData.conversions(), records, 10).save(file);
+
+        SessionFile opened = SessionFile.open(file);
+        assertEquals(10, opened.getRecordCount());
+        assertArrayEquals(TestData.slice(records, 0, 10), bytes(opened.getRecords()));
+    }
+
+    @Test
+    public void savesOverItsOwnFile() throws IOException {
+        SessionFile saved = session();
+        saved.save(file);
+
+        SessionFile opened = SessionFile.open(file);
+        opened.save(file);
+        opened.save(file);
+        assertSameSession(saved, opened);
+        assertSameSession(saved, SessionFile.open(file));
+
+        //Nothing is left behind by the temporary and backup files.
+        assertEquals(1, dir.listFiles().length);
+    }
+
+    @Test
+    public void savesElsewhereFromOpenedFile() throws IOException {
+        SessionFile saved = session();
+        saved.save(file);
+
+        File copy = new File(dir, "copy." + SessionFile.EXTENSION);
+        SessionFile.open(file).save(copy);
+        assertSameSession(saved, SessionFile.open(copy));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.write(records);
+        } finally {
+            raf.close();
+        }
+        SessionFile.open(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedFiles() throws IOException {
+        session().save(file);
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() - 1);
+        } finally {
+            raf.close();
+        }
+        SessionFile.open(file);
+    }
+
+    @Test
+    public void newerConversionsReplaceSaved() throws Exception {
+        ArrayList<String[]> newer = new ArrayList<String[]>();
+        newer.add(new String[]{"1", "BTA", "Voltage", "Voltage", "x*5/1023"});
+
+        PinpointConverter converter = session().getConverter(newer);
+        assertEquals("5.000", converter.analogConversion(RecordDecoder.BTA1, 1023));
+        assertEquals("1023.000", converter.analogConversion(RecordDecoder.BTA2, 1023));
+    }
+
+    @Test
+    public void replaysEveryRecord() throws IOException {
+        session().save(file);
+
+        final ByteBuffer received = ByteBuffer.allocate(records.length);
+        final boolean[] finished = new boolean[1];
+        SessionFile.open(file).replay(new RecordListener() {
+
+            public void recordReceived(byte[] record) {
+                received.put(record);
+            }
+
+            public void downloadFinished(boolean checksumValid) {
+                finished[0] = checksumValid;
+            }
+        });
+
+        assertArrayEquals(records, received.array());
+        assertTrue(finished[0]);
+    }
+
+    private SessionFile session() {
+        return new SessionFile(SERIAL_NUMBER, TestData.settings(1000), TestData.conversions(), records, COUNT);
+    }
+
+    private static void assertSameSession(SessionFile expected, SessionFile actual) {
+        assertEquals(expected.getSerialNumber(), actual.getSerialNumber());
+        assertEquals(expected.getDownloadTime(), actual.getDownloadTime());
+        assertEquals(expected.getSettings(), actual.getSettings());
+        assertEquals(expected.getRecordCount(), actual.getRecordCount());
+        assertArrayEquals(bytes(expected.getRecords()), bytes(actual.getRecords()));
+
+        ArrayList<String[]> conversions = expected.getConversions();
+        assertEquals(conversions.size(), actual.getConversions().size());
+        for (int i = 0; i < conversions.size(); i++) {
+            assertArrayEquals(conversions.get(i), actual.getConversions().get(i));
+        }
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
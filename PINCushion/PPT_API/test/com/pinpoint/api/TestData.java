@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2009, iSENSE Project. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer. Redistributions in binary
+ * form must reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other materials
+ * provided with the distribution. Neither the name of the University of
+ * Massachusetts Lowell nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pinpoint.api;
+
+import com.pinpoint.sim.SyntheticFlash;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Settings, conversions and records shared by the tests, the same ones the
+ * benchmarks use.
+ */
+class TestData {
+
+    // 2010-11-10 at 00:00:00 GMT.
+    static final long START_MILLIS = 1289347200000L;
+    static final long SEED = 20101110L;
+    private static final String[][] CONVERSIONS = {
+        {"0", "BTA", "Counter Type", "Counts", "x"},
+        {"1", "BTA", "Voltage", "Voltage", "x*3.3/1023"},
+        {"7", "Mini", "Vernier pH Sensor", "PH", "7+(-1*(x-375))/52.5"},
+        {"8", "Mini", "Vernier Salinity Sensor", "ppt", "0.0224*((x*3.3)/1023)+1.51"}
+    };
+
+    private TestData() {
+    }
+
+    static HashMap<Integer, Integer> settings(int sampleRate) {
+        HashMap<Integer, Integer> settings = new HashMap<Integer, Integer>();
+        settings.put(PinComm.SAMPLE_RATE, sampleRate);
+        settings.put(PinComm.BTA1, 1);
+        settings.put(PinComm.BTA2, 0);
+        settings.put(PinComm.MINI1, 7);
+        settings.put(PinComm.MINI2, 8);
+        return settings;
+    }
+
+    static ArrayList<String[]> conversions() {
+        ArrayList<String[]> conversions = new ArrayList<String[]>();
+        for (String[] conversion : CONVERSIONS) {
+            conversions.add(conversion.clone());
+        }
+        return conversions;
+    }
+
+    static byte[] records(int count, int sampleRate) {
+        return SyntheticFlash.records(count, START_MILLIS, sampleRate, SEED);
+    }
+
+    /**
+     * Records from first up to but not including end.
+     */
+    static byte[] slice(byte[] records, int first, int end) {
+        byte[] slice = new byte[(end - first) * RecordDecoder.RECORD_SIZE];
+        System.arraycopy(records, first * RecordDecoder.RECORD_SIZE, slice, 0, slice.length);
+        return slice;
+    }
+
+    /**
+     * Converts records one after another and, at rates under a second,
+     * fixes their times, the way getSession always has.
+     */
+    static ArrayList<String[]> convert(PinpointConverter converter, byte[] records, int count, int sampleRate) {
+        ArrayList<String[]> rows = new ArrayList<String[]>();
+        for (int i = 0; i < count; i++) {
+            rows.add(converter.convertAll(records, i * RecordDecoder.RECORD_SIZE));
+        }
+        if (sampleRate < 1000) {
+            converter.fixTime(rows, sampleRate);
+        }
+        return rows;
+    }
+
+    /**
+     * An empty directory of its own, for a test to write files in.
+     */
+    static File directory() throws IOException {
+        File dir = File.createTempFile("pinpoint-test", "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("Could not create " + dir);
+        }
+        return dir;
+    }
+
+    static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -3,15 +3,21 @@
  */
 package rac;
 
+import com.pinpoint.api.ConnectionManager;
 import com.pinpoint.api.PinpointConverter;
+import com.pinpoint.api.RecordFormatter;
+import com.pinpoint.api.SessionFile;
+import com.pinpoint.api.SessionTable;
 import com.pinpoint.api.pinpointInterface;
 import com.pinpoint.exceptions.IncompatibleConversionException;
 import com.pinpoint.exceptions.NoConnectionException;
 import com.pinpoint.exceptions.NoDataException;
 import java.awt.Cursor;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.prefs.BackingStoreException;
+import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
 import javax.swing.JTable;
 import javax.swing.table.DefaultTableModel;
@@ -23,11 +29,14 @@ import org.jdesktop.application.FrameView;
  */
 public class RACView extends FrameView {
 
-    public ArrayList<String[]> data;
+    public SessionTable data;
     private pinpointInterface pinpoint;
     private DefaultTableModel tmodel;
     private int SensorPort = PinpointConverter.BTA1;
+    private String[] headers = PinpointConverter.getDefaultTableHeaders();
     private boolean SensorsKnown = false;
+    // Raw records of what is in the table, for saving the session.
+    private SessionFile session = null;
 
     public RACView(SingleFrameApplication app) {
         super(app);
@@ -37,47 +46,30 @@ public class RACView extends FrameView {
         tmodel = new DefaultTableModel();
         tmodel.setColumnIdentifiers(new String[]{"Time", "Sensor"});
         dataTable.setModel(tmodel);
+        saveSession.setEnabled(false);
         this.getFrame().setTitle("River As A Classroom (v1.1)");
 
     }
 
     public void updateStats() {
 
-        typeLabel.setText(PinpointConverter.tableHeaders[SensorPort]);
+        typeLabel.setText(headers[SensorPort]);
 
-        double min;
-        double max;
-        double median = 0.0;
-        min = max = Double.parseDouble(data.get(0)[SensorPort]);
-
-
-        double total = 0.0;
-        int count = data.size();
-
-        ArrayList<Double> values = new ArrayList<Double>();
-
-        for (String[] x : data) {
-            values.add(Double.parseDouble(x[SensorPort]));
+        SessionTable.Column column = data.column(SensorPort);
+        if (column.size() == 0) {
+            return;
         }
 
-        Collections.sort(values);
+        double[] values = column.toArray();
+        Arrays.sort(values);
 
-        for (Double x : values) {
-            median = values.get((int) values.size() / 2);
-            total += x;
-            if (x < min) {
-                min = x;
-            }
-            if (x > max) {
-                max = x;
-            }
-        }
-        medianLabel.setText(median + "");
-        minLabel.setText(min + "");
-        maxLabel.setText(max + "");
+        double median = values[values.length / 2];
+        medianLabel.setText(RecordFormatter.format(SensorPort, median));
+        minLabel.setText(RecordFormatter.format(SensorPort, column.min()));
+        maxLabel.setText(RecordFormatter.format(SensorPort, column.max()));
 
         if (!typeLabel.getText().contains("pH")) {
-            avgLabel.setText(total / count + "");
+            avgLabel.setText(column.mean() + "");
         } else {
             avgLabel.setText("N/A");
         }
@@ -96,6 +88,8 @@ public class RACView extends FrameView {
         ControlPanel = new javax.swing.JPanel();
         jLabel1 = new javax.swing.JLabel();
         uploadData = new javax.swing.JButton();
+        openSession = new javax.swing.JButton();
+        saveSession = new javax.swing.JButton();
         selectSensorButton = new javax.swing.JButton();
         DataPanel = new javax.swing.JPanel();
         jLabel2 = new javax.swing.JLabel();
@@ -134,6 +128,22 @@ public class RACView extends FrameView {
             }
         });
 
+        openSession.setText(resourceMap.getString("openSession.text")); // NOI18N
+        openSession.setName("openSession"); // NOI18N
+        openSession.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                openSessionActionPerformed(evt);
+            }
+        });
+
+        saveSession.setText(resourceMap.getString("saveSession.text")); // NOI18N
+        saveSession.setName("saveSession"); // NOI18N
+        saveSession.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                saveSessionActionPerformed(evt);
+            }
+        });
+
         selectSensorButton.setText(resourceMap.getString("selectSensorButton.text")); // NOI18N
         selectSensorButton.setName("selectSensorButton"); // NOI18N
         selectSensorButton.addActionListener(new java.awt.event.ActionListener() {
@@ -150,6 +160,8 @@ public class RACView extends FrameView {
                 .addContainerGap()
                 .addGroup(ControlPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                     .addComponent(uploadData, javax.swing.GroupLayout.DEFAULT_SIZE, 76, Short.MAX_VALUE)
+                    .addComponent(openSession, javax.swing.GroupLayout.DEFAULT_SIZE, 76, Short.MAX_VALUE)
+                    .addComponent(saveSession, javax.swing.GroupLayout.DEFAULT_SIZE, 76, Short.MAX_VALUE)
                     .addComponent(jLabel1, javax.swing.GroupLayout.DEFAULT_SIZE, 76, Short.MAX_VALUE)
                     .addComponent(selectSensorButton, javax.swing.GroupLayout.DEFAULT_SIZE, 76, Short.MAX_VALUE))
                 .addContainerGap())
@@ -161,7 +173,11 @@ public class RACView extends FrameView {
                 .addComponent(jLabel1)
                 .addGap(18, 18, 18)
                 .addComponent(uploadData)
-                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED, 195, Short.MAX_VALUE)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(openSession)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(saveSession)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED, 137, Short.MAX_VALUE)
                 .addComponent(selectSensorButton, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                 .addContainerGap())
         );
@@ -337,15 +353,14 @@ public class RACView extends FrameView {
             try {
                 tmodel.setRowCount(0);
                 RACApp.getApplication().getMainFrame().setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-                data = pinpoint.getData();
-                updateStats();
-                
-                for (String[] x : data) {
-                    tmodel.addRow(new String[]{x[0], x[SensorPort]});
+                data = pinpoint.getSession();
+                if (data == null) {
+                    //The download failed part way or its checksum didn't match.
+                    RACApp.getApplication().getMainFrame().setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
+                    JOptionPane.showMessageDialog(this.getFrame(), "The data was corrupted during the upload, please try again.", "Upload Error", JOptionPane.ERROR_MESSAGE);
+                    return;
                 }
-                tmodel.setColumnIdentifiers(new String[]{"Time", PinpointConverter.tableHeaders[SensorPort]});
-                RACApp.getApplication().getMainFrame().setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
-                SensorsKnown = true;
+                showSession();
             } catch (NoDataException ex) {
                 RACApp.getApplication().getMainFrame().setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
                 JOptionPane.showMessageDialog(this.getFrame(), "No data was found on the pinpoint.", "No Data", JOptionPane.ERROR_MESSAGE);
@@ -355,11 +370,86 @@ public class RACView extends FrameView {
             } catch (BackingStoreException ex) {
                 RACApp.getApplication().getMainFrame().setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
                 JOptionPane.showMessageDialog(this.getFrame(), "Conversions not found.", "Conversions Error", JOptionPane.ERROR_MESSAGE);
+            } finally {
+                pinpoint.disconnect();
             }
-            pinpoint.disconnect();
         }
     }//GEN-LAST:event_uploadDataActionPerformed
 
+    private void openSessionActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_openSessionActionPerformed
+        JFileChooser fc = new JFileChooser();
+        fc.setFileFilter(new SessionFilter());
+
+        if (fc.showOpenDialog(this.getFrame()) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        try {
+            tmodel.setRowCount(0);
+            RACApp.getApplication().getMainFrame().setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+            pinpoint = new pinpointInterface(false);
+            data = pinpoint.openSession(fc.getSelectedFile());
+            showSession();
+        } catch (NoConnectionException ex) {
+            RACApp.getApplication().getMainFrame().setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
+        } catch (IOException ex) {
+            RACApp.getApplication().getMainFrame().setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
+            JOptionPane.showMessageDialog(this.getFrame(), "Could not open " + fc.getSelectedFile().getName() + ".\n" + ex.getMessage(), "Open Error", JOptionPane.ERROR_MESSAGE);
+        } catch (IncompatibleConversionException ex) {
+            RACApp.getApplication().getMainFrame().setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
+            JOptionPane.showMessageDialog(this.getFrame(), "Incompatible Conversions.", "Conversions Error", JOptionPane.ERROR_MESSAGE);
+        } catch (BackingStoreException ex) {
+            RACApp.getApplication().getMainFrame().setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
+            JOptionPane.showMessageDialog(this.getFrame(), "Conversions not found.", "Conversions Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }//GEN-LAST:event_openSessionActionPerformed
+
+    private void saveSessionActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_saveSessionActionPerformed
+        JFileChooser fc = new JFileChooser();
+        fc.setFileFilter(new SessionFilter());
+        fc.setSelectedFile(new File("session." + SessionFile.EXTENSION));
+
+        if (fc.showSaveDialog(this.getFrame()) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        File file = fc.getSelectedFile();
+        if (!file.getName().contains(".")) {
+            file = new File(file.getPath() + "." + SessionFile.EXTENSION);
+        }
+        if (file.exists() && JOptionPane.showConfirmDialog(this.getFrame(),
+                "The file already exists would you like to replace it?",
+                "File Exists",
+                JOptionPane.YES_NO_OPTION) != JOptionPane.YES_OPTION) {
+            return;
+        }
+
+        try {
+            session.save(file);
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(this.getFrame(), "Could not save the session! Please check permissions.", "Error Saving File", JOptionPane.ERROR_MESSAGE);
+        }
+    }//GEN-LAST:event_saveSessionActionPerformed
+
+    /**
+     * Fills the table and statistics from data, once it has been downloaded
+     * or opened.
+     */
+    private void showSession() {
+        headers = pinpoint.getTableHeaders();
+        session = pinpoint.getLastSession();
+        saveSession.setEnabled(session != null);
+        updateStats();
+
+        for (int i = 0; i < data.size(); i++) {
+            String[] x = data.getFormattedRow(i);
+            tmodel.addRow(new String[]{x[0], x[SensorPort]});
+        }
+        tmodel.setColumnIdentifiers(new String[]{"Time", headers[SensorPort]});
+        RACApp.getApplication().getMainFrame().setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
+        SensorsKnown = true;
+    }
+
     private void selectSensorButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_selectSensorButtonActionPerformed
         Object[] choices = {
             "BTA 1",
@@ -369,10 +459,10 @@ public class RACView extends FrameView {
         };
 
         if (SensorsKnown) {
-            choices[0] = (String) choices[0] + " : " + PinpointConverter.tableHeaders[PinpointConverter.BTA1];
-            choices[1] = (String) choices[1] + " : " + PinpointConverter.tableHeaders[PinpointConverter.BTA2];
-            choices[2] = (String) choices[2] + " : " + PinpointConverter.tableHeaders[PinpointConverter.MINI1];
-            choices[3] = (String) choices[3] + " : " + PinpointConverter.tableHeaders[PinpointConverter.MINI2];
+            choices[0] = (String) choices[0] + " : " + headers[PinpointConverter.BTA1];
+            choices[1] = (String) choices[1] + " : " + headers[PinpointConverter.BTA2];
+            choices[2] = (String) choices[2] + " : " + headers[PinpointConverter.MINI1];
+            choices[3] = (String) choices[3] + " : " + headers[PinpointConverter.MINI2];
         }
 
         String selection = (String) JOptionPane.showInputDialog(
@@ -416,6 +506,8 @@ public class RACView extends FrameView {
     private javax.swing.JLabel maxLabel;
     private javax.swing.JLabel medianLabel;
     private javax.swing.JLabel minLabel;
+    private javax.swing.JButton openSession;
+    private javax.swing.JButton saveSession;
     private javax.swing.JButton selectSensorButton;
     private javax.swing.JLabel typeLabel;
     private javax.swing.JButton uploadData;
@@ -423,7 +515,7 @@ public class RACView extends FrameView {
 
     private boolean pptIsAvailable() {
         try {
-            pinpoint = new pinpointInterface(true);
+            pinpoint = new pinpointInterface(ConnectionManager.getInstance());
         } catch (NoConnectionException ex) {
             JOptionPane.showMessageDialog(RACApp.getApplication().getMainFrame(),
                     "No PIN Points were found.\nPlease make sure it is plugged in and turned on.",
@@ -435,4 +527,18 @@ public class RACView extends FrameView {
         }
         return true;
     }
+
+    /**
+     * Shows only saved sessions in a file chooser.
+     */
+    private static class SessionFilter extends javax.swing.filechooser.FileFilter {
+
+        public boolean accept(File f) {
+            return f.isDirectory() || f.getName().toLowerCase().endsWith("." + SessionFile.EXTENSION);
+        }
+
+        public String getDescription() {
+            return "PINPoint sessions (*." + SessionFile.EXTENSION + ")";
+        }
+    }
 }